@@ -0,0 +1,76 @@
+package com.justin.videoencryption.benchmark;
+
+import nu.pattern.OpenCV;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试用的合成视频帧，不依赖外部视频文件
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class BenchmarkFrames {
+
+    static {
+        // 加载 openpnp 自带的 OpenCV 本地库
+        OpenCV.loadLocally();
+    }
+
+    /**
+     * 按分辨率名称生成一帧随机 BGR 图像
+     * @param resolution 480p、1080p 或 4K
+     * @return 随机内容的视频帧
+     */
+    public static Mat random(String resolution) {
+        int[] size = size(resolution);
+        Mat frame = new Mat(size[0], size[1], CvType.CV_8UC3);
+        Core.randu(frame, 0, 256);
+        return frame;
+    }
+
+    /**
+     * 生成多帧随机 BGR 图像
+     */
+    public static List<Mat> random(String resolution, int count) {
+        List<Mat> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            frames.add(random(resolution));
+        }
+        return frames;
+    }
+
+    /**
+     * 把 BGR 字节打包为 batchEncryptWithLSB 使用的 0xRRGGBB 整数
+     */
+    public static int[] pack(Mat frame) {
+        byte[] data = new byte[(int) (frame.total() * frame.channels())];
+        frame.get(0, 0, data);
+
+        int[] pixels = new int[(int) frame.total()];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = ((data[i * 3 + 2] & 0xFF) << 16) | ((data[i * 3 + 1] & 0xFF) << 8) | (data[i * 3] & 0xFF);
+        }
+        return pixels;
+    }
+
+    /**
+     * @return {rows, cols}
+     */
+    private static int[] size(String resolution) {
+        switch (resolution) {
+            case "480p":
+                return new int[]{480, 854};
+            case "1080p":
+                return new int[]{1080, 1920};
+            case "4K":
+                return new int[]{2160, 3840};
+            default:
+                throw new IllegalArgumentException("未知的分辨率：" + resolution);
+        }
+    }
+}
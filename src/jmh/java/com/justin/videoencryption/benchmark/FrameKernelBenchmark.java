@@ -0,0 +1,73 @@
+package com.justin.videoencryption.benchmark;
+
+import com.justin.videoencryption.util.DecryptUtil;
+import com.justin.videoencryption.util.EncryptUtil;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单帧 LSB 加密、解密的吞吐量（帧/秒）
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class FrameKernelBenchmark {
+
+    @Param({"480p", "1080p", "4K"})
+    public String resolution;
+
+    private Mat originalFrame;
+
+    private Mat secretFrame;
+
+    private Mat encryptedFrame;
+
+    private Mat outputFrame;
+
+    private int[] originalPixels;
+
+    private int[] secretPixels;
+
+    @Setup
+    public void setUp() throws Exception {
+        originalFrame = BenchmarkFrames.random(resolution);
+        secretFrame = BenchmarkFrames.random(resolution);
+        encryptedFrame = EncryptUtil.encryptFrameWithLSB(originalFrame, secretFrame);
+        outputFrame = new Mat();
+        originalPixels = BenchmarkFrames.pack(originalFrame);
+        secretPixels = BenchmarkFrames.pack(secretFrame);
+    }
+
+    @TearDown
+    public void tearDown() {
+        originalFrame.release();
+        secretFrame.release();
+        encryptedFrame.release();
+        outputFrame.release();
+    }
+
+    @Benchmark
+    public int[] batchEncryptWithLSB() {
+        return EncryptUtil.batchEncryptWithLSB(originalPixels, secretPixels);
+    }
+
+    @Benchmark
+    public Mat encryptFrameWithLSB() throws Exception {
+        EncryptUtil.encryptFrameWithLSB(originalFrame, secretFrame, outputFrame);
+        return outputFrame;
+    }
+
+    @Benchmark
+    public Mat decryptFrameWithLSB() throws Exception {
+        DecryptUtil.decryptFrameWithLSB(encryptedFrame, outputFrame);
+        return outputFrame;
+    }
+}
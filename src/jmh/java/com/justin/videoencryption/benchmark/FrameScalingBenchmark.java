@@ -0,0 +1,62 @@
+package com.justin.videoencryption.benchmark;
+
+import com.justin.videoencryption.util.EncryptUtil;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * encryptFramesWithLSB 随线程数的扩展性，结果单位为帧/秒
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@OperationsPerInvocation(FrameScalingBenchmark.FRAMES)
+public class FrameScalingBenchmark {
+
+    static final int FRAMES = 32;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"1080p"})
+    public String resolution;
+
+    private List<Mat> originalFrames;
+
+    private List<Mat> secretFrames;
+
+    private ExecutorService executorService;
+
+    @Setup
+    public void setUp() {
+        originalFrames = BenchmarkFrames.random(resolution, FRAMES);
+        secretFrames = BenchmarkFrames.random(resolution, FRAMES);
+        executorService = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdown();
+        originalFrames.forEach(Mat::release);
+        secretFrames.forEach(Mat::release);
+    }
+
+    @Benchmark
+    public int encryptFramesWithLSB() {
+        List<Mat> encryptedFrames = EncryptUtil.encryptFramesWithLSB(originalFrames, secretFrames, executorService);
+        // 及时释放本地内存，避免等 GC 回收
+        encryptedFrames.forEach(Mat::release);
+        return encryptedFrames.size();
+    }
+}
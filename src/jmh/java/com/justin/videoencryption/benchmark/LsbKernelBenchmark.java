@@ -0,0 +1,73 @@
+package com.justin.videoencryption.benchmark;
+
+import com.justin.videoencryption.util.LsbKernel;
+import com.justin.videoencryption.util.LsbKernels;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * scalar 与 vector 两种 LSB 字节内核的对比，只测内核本身，不含 Mat 拷贝
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class LsbKernelBenchmark {
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    /**
+     * 一帧 BGR 字节数：480p、1080p、4K
+     */
+    @Param({"1229760", "6220800", "24883200"})
+    public int length;
+
+    /**
+     * 每个字节嵌入的位数
+     */
+    @Param({"3"})
+    public int bits;
+
+    private LsbKernel lsbKernel;
+
+    private byte[] originalData;
+
+    private byte[] secretData;
+
+    private byte[] outputData;
+
+    @Setup
+    public void setUp() {
+        lsbKernel = LsbKernels.select(kernel);
+        if (!lsbKernel.name().equals(kernel)) {
+            throw new IllegalStateException(kernel + " 内核不可用");
+        }
+
+        Random random = new Random(42);
+        originalData = new byte[length];
+        secretData = new byte[length];
+        outputData = new byte[length];
+        random.nextBytes(originalData);
+        random.nextBytes(secretData);
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        lsbKernel.encrypt(originalData, secretData, outputData, length, bits);
+        return outputData;
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        lsbKernel.decrypt(originalData, outputData, length, bits);
+        return outputData;
+    }
+}
@@ -0,0 +1,111 @@
+package com.justin.videoencryption.benchmark;
+
+import com.justin.videoencryption.util.EncryptUtil;
+import com.justin.videoencryption.util.FfmpegSink;
+import com.justin.videoencryption.util.FileUtil;
+import com.justin.videoencryption.util.FrameSink;
+import com.justin.videoencryption.util.OutputCodec;
+import com.justin.videoencryption.util.PayloadVerifier;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各输出编码的体积与速度对比：把加密后的合成帧交给 FFmpeg 编码并抽样校验，结果单位为帧/秒，
+ * 同时通过辅助计数器输出每帧平均字节数（bytesPerFrame）和校验失败次数（verifyFailures）
+ * 需要 FFmpeg，通过 -Dvideo.ffmpeg.path 指定，例如
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="OutputCodec -jvmArgsAppend -Dvideo.ffmpeg.path=/usr/bin/ffmpeg"
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@OperationsPerInvocation(OutputCodecBenchmark.FRAMES)
+public class OutputCodecBenchmark {
+
+    static final int FRAMES = 30;
+
+    /**
+     * 每帧平均输出字节数与校验结果
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Result {
+
+        public long bytesPerFrame;
+
+        public long verifyFailures;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytesPerFrame = 0;
+            verifyFailures = 0;
+        }
+    }
+
+    @Param({"X264_QP0", "FFV1", "MJPEG_Q100", "RAW"})
+    public OutputCodec codec;
+
+    @Param({"1080p"})
+    public String resolution;
+
+    private List<Mat> encryptedFrames;
+
+    private Path directory;
+
+    @Setup
+    public void setUp() throws Exception {
+        // 随机噪声几乎无法压缩，载体先模糊再叠加移动的色块，更接近真实画面；低 3 位仍是涉密视频的数据
+        List<Mat> originalFrames = BenchmarkFrames.random(resolution, FRAMES);
+        List<Mat> secretFrames = BenchmarkFrames.random(resolution, FRAMES);
+        encryptedFrames = new ArrayList<>(FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            Mat original = originalFrames.get(i);
+            Imgproc.GaussianBlur(original, original, new Size(31, 31), 0);
+            Imgproc.rectangle(original, new Point(i * 10, 0),
+                    new Point(i * 10 + 200, original.rows() / 2), new Scalar(40, 120, 200), -1);
+            encryptedFrames.add(EncryptUtil.encryptFrameWithLSB(original, secretFrames.get(i)));
+        }
+        originalFrames.forEach(Mat::release);
+        secretFrames.forEach(Mat::release);
+        directory = Files.createTempDirectory("codec-benchmark");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        encryptedFrames.forEach(Mat::release);
+        FileUtil.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void encode(Result result) throws IOException {
+        Path output = directory.resolve("output." + codec.getExtension());
+        PayloadVerifier verifier = new PayloadVerifier(new FfmpegSink(output, 30, List.of(), codec), FRAMES, 4);
+        try (FrameSink sink = verifier) {
+            for (Mat frame : encryptedFrames) {
+                sink.write(frame);
+            }
+        }
+        result.bytesPerFrame = Files.size(output) / FRAMES;
+        try {
+            verifier.verify(output);
+        } catch (IOException e) {
+            result.verifyFailures++;
+        }
+    }
+}
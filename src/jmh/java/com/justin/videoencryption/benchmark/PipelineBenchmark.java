@@ -0,0 +1,119 @@
+package com.justin.videoencryption.benchmark;
+
+import com.justin.videoencryption.util.DecryptUtil;
+import com.justin.videoencryption.util.EncryptUtil;
+import com.justin.videoencryption.util.FrameJob;
+import com.justin.videoencryption.util.FramePipeline;
+import com.justin.videoencryption.util.FrameSink;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 合成帧上的端到端流程：流式加密，再把加密结果流式解密，结果单位为帧/秒
+ * 不含视频编解码，用于观察管线本身（读取、调度、内核、按序写出）的开销
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@OperationsPerInvocation(PipelineBenchmark.FRAMES)
+public class PipelineBenchmark {
+
+    static final int FRAMES = 30;
+
+    /**
+     * 生成的不同帧数，读取时循环使用
+     */
+    private static final int DISTINCT_FRAMES = 4;
+
+    @Param({"480p", "1080p"})
+    public String resolution;
+
+    private List<Mat> originalFrames;
+
+    private List<Mat> secretFrames;
+
+    private List<Mat> encryptedFrames;
+
+    private ExecutorService executorService;
+
+    private FrameJob job;
+
+    @Setup
+    public void setUp() {
+        originalFrames = BenchmarkFrames.random(resolution, DISTINCT_FRAMES);
+        secretFrames = BenchmarkFrames.random(resolution, DISTINCT_FRAMES);
+        encryptedFrames = new ArrayList<>(FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            encryptedFrames.add(new Mat());
+        }
+        executorService = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        job = new FrameJob(executorService, FramePipeline.DEFAULT_QUEUE_DEPTH);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdown();
+        originalFrames.forEach(Mat::release);
+        secretFrames.forEach(Mat::release);
+        encryptedFrames.forEach(Mat::release);
+    }
+
+    @Benchmark
+    public long encryptThenDecrypt(Blackhole blackhole) throws Exception {
+        int[] readIndex = {0};
+        int[] writeIndex = {0};
+
+        // 加密：模拟解码把帧拷进管线，加密结果拷到 encryptedFrames 充当编码输出
+        FramePipeline.run(inputs -> {
+            if (readIndex[0] == FRAMES) {
+                return false;
+            }
+            originalFrames.get(readIndex[0] % DISTINCT_FRAMES).copyTo(inputs[0]);
+            secretFrames.get(readIndex[0] % DISTINCT_FRAMES).copyTo(inputs[1]);
+            readIndex[0]++;
+            return true;
+        }, (frameIndex, inputs, output) -> EncryptUtil.encryptFrameWithLSB(inputs[0], inputs[1], output),
+                sink(frame -> frame.copyTo(encryptedFrames.get(writeIndex[0]++))),
+                2, job);
+
+        // 解密：读取加密结果，解密后交给 Blackhole
+        readIndex[0] = 0;
+        return FramePipeline.run(inputs -> {
+            if (readIndex[0] == FRAMES) {
+                return false;
+            }
+            encryptedFrames.get(readIndex[0]++).copyTo(inputs[0]);
+            return true;
+        }, (frameIndex, inputs, output) -> DecryptUtil.decryptFrameWithLSB(inputs[0], output),
+                sink(blackhole::consume),
+                1, job);
+    }
+
+    private static FrameSink sink(Consumer<Mat> consumer) {
+        return new FrameSink() {
+            @Override
+            public void write(Mat frame) {
+                consumer.accept(frame);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package com.justin.videoencryption.config;
+
+import com.justin.videoencryption.util.FfmpegProcess;
+import com.justin.videoencryption.util.FrameArena;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 启动时设置所有请求共享的帧内存上限（FrameArena）和 FFmpeg 进程数上限、超时时间（FfmpegProcess）
+ * 两者都是静态的共享资源，引用它们的 Bean（例如注册指标的 PipelineMetrics）需要在这之后创建
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@Configuration
+public class FrameResourceConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(FrameResourceConfig.class);
+
+    @Resource
+    private VideoProperties properties;
+
+    @PostConstruct
+    public void configure() {
+        VideoProperties.Executor executor = properties.getExecutor();
+        FrameArena.configure(executor.getFrameMemoryLimit().toBytes(), executor.getFramePoolSize().toBytes());
+        log.info("帧内存：{}", FrameArena.shared());
+
+        VideoProperties.Ffmpeg ffmpeg = properties.getFfmpeg();
+        FfmpegProcess.configure(ffmpeg.getMaxProcesses(), ffmpeg.getAcquireTimeout(), ffmpeg.getRunTimeout());
+        log.info("FFmpeg 进程数上限：{}，等待名额 {}，运行超时 {}", FfmpegProcess.getMaxProcesses(),
+                ffmpeg.getAcquireTimeout(), ffmpeg.getRunTimeout().isZero() ? "不限制" : ffmpeg.getRunTimeout());
+    }
+}
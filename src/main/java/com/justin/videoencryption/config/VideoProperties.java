@@ -0,0 +1,311 @@
+package com.justin.videoencryption.config;
+
+import com.justin.videoencryption.util.EmbeddingMode;
+import com.justin.videoencryption.util.EmbeddingRegion;
+import com.justin.videoencryption.util.FrameAlignment;
+import com.justin.videoencryption.util.Interpolation;
+import com.justin.videoencryption.util.OutputCodec;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 视频加密解密的配置项，前缀 video
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@Data
+@ConfigurationProperties(prefix = "video")
+public class VideoProperties {
+
+    /**
+     * 帧处理线程池
+     */
+    private Executor executor = new Executor();
+
+    /**
+     * 异步任务
+     */
+    private Jobs jobs = new Jobs();
+
+    /**
+     * 临时工作目录
+     */
+    private Scratch scratch = new Scratch();
+
+    /**
+     * 加密视频的输出编码
+     */
+    private Output output = new Output();
+
+    /**
+     * 原视频与涉密视频的帧对齐方式，默认按时间戳对齐，帧率不同时涉密视频的播放速度保持不变
+     */
+    private FrameAlignment alignment = FrameAlignment.TIMESTAMP;
+
+    /**
+     * 涉密视频帧的缩放
+     */
+    private Scaling scaling = new Scaling();
+
+    /**
+     * 嵌入方式与每个通道的嵌入位数
+     */
+    private Embedding embedding = new Embedding();
+
+    /**
+     * 分段处理
+     */
+    private Chunking chunking = new Chunking();
+
+    /**
+     * 分段分发到多个实例
+     */
+    private Cluster cluster = new Cluster();
+
+    /**
+     * 批量加密
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * 原视频解码帧的缓存
+     */
+    private Cache cache = new Cache();
+
+    /**
+     * FFmpeg 进程
+     */
+    private Ffmpeg ffmpeg = new Ffmpeg();
+
+    @Data
+    public static class Executor {
+
+        /**
+         * 帧处理线程数，所有请求共享，默认为 CPU 核数
+         */
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * 每个请求最多同时在途的帧数，决定单个请求能占用多少线程池容量以及帧缓冲内存
+         */
+        private int queueDepth = Runtime.getRuntime().availableProcessors() * 2;
+
+        /**
+         * 所有请求的帧内存（帧槽和解码器提前解码的帧）上限，超出时后来的请求等待，0 表示不限制
+         */
+        private DataSize frameMemoryLimit = DataSize.ofGigabytes(2);
+
+        /**
+         * 请求结束后保留以供复用的空闲帧内存，0 表示不复用
+         */
+        private DataSize framePoolSize = DataSize.ofMegabytes(256);
+    }
+
+    @Data
+    public static class Jobs {
+
+        /**
+         * 同时运行的任务数
+         */
+        private int concurrency = 2;
+
+        /**
+         * 排队等待的任务数上限，超出时拒绝提交
+         */
+        private int queueCapacity = 16;
+
+        /**
+         * 任务结束后保留状态和结果文件的时长
+         */
+        private Duration retention = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Scratch {
+
+        /**
+         * 工作目录的根目录，为空时使用 java.io.tmpdir 下的 video-encryption
+         */
+        private Path directory;
+
+        /**
+         * 未指定根目录时优先使用 /dev/shm（tmpfs），上传和中间文件不落到磁盘，但会占用内存
+         */
+        private boolean preferTmpfs = false;
+    }
+
+    @Data
+    public static class Output {
+
+        /**
+         * 视频编码，默认 H.264 RGB 无损；有损编码会破坏 LSB 数据
+         */
+        private OutputCodec codec = OutputCodec.X264_QP0;
+
+        /**
+         * 编码完成后解码校验的抽样帧数，0 表示不校验
+         */
+        private int verifySamples = 8;
+
+        /**
+         * 加密帧先写入工作目录中内存映射的中转文件，再由单独的线程按顺序交给 FFmpeg，
+         * 加密不会被编码速度拖住；用于单个视频加密和分段加密的各段，
+         * 批量加密的各输出由同一个线程按行拆分后顺序写入，不使用中转
+         */
+        private boolean spool = false;
+
+        /**
+         * 中转文件中帧数据的大小上限，文件按这个大小循环使用，编码落后这么多数据时加密等待；
+         * 1080p 每帧约 6MB，默认约 340 帧，创建时检查工作目录所在磁盘的剩余空间
+         */
+        private DataSize spoolMaxSize = DataSize.ofGigabytes(2);
+    }
+
+    @Data
+    public static class Scaling {
+
+        /**
+         * 涉密帧缩放到原视频尺寸时的插值方式：nearest 最快，area 缩小时质量最好，linear 与之前的结果一致
+         */
+        private Interpolation interpolation = Interpolation.LINEAR;
+
+        /**
+         * 涉密视频需要循环播放时，缩放后整段缓存在内存中的大小上限，超过时改为每轮重新解码缩放；0 表示不缓存
+         */
+        private DataSize cacheMaxSize = DataSize.ofMegabytes(256);
+    }
+
+    @Data
+    public static class Embedding {
+
+        /**
+         * 嵌入方式：pixel 逐像素嵌入缩放后的涉密帧；packed 把上传的涉密文件按位打包嵌入，解密得到原文件
+         */
+        private EmbeddingMode mode = EmbeddingMode.PIXEL;
+
+        /**
+         * B、G、R 三个通道各自的嵌入位数（0-4），0 表示该通道不嵌入；位数越多容量越大，载体画面的失真也越明显
+         */
+        private int[] channelBits = {3, 3, 3};
+
+        /**
+         * 逐像素嵌入的区域：full 缩放到整帧；native 保持涉密视频的原始分辨率，只占用载体左上角的区域
+         */
+        private EmbeddingRegion region = EmbeddingRegion.FULL;
+    }
+
+    @Data
+    public static class Chunking {
+
+        /**
+         * 是否分段处理：输出按固定帧数切成若干段，每段单独编码并记录在清单中，
+         * 失败重试或进程重启后只重做未完成的段，最后无损拼接；需要视频容器记录帧数
+         */
+        private boolean enabled = false;
+
+        /**
+         * 每段的帧数，每段都从关键帧开始
+         */
+        private int chunkFrames = 600;
+
+        /**
+         * 一个任务同时处理的段数，每段占用 video.executor.queue-depth 个帧槽
+         */
+        private int parallelChunks = 1;
+
+        /**
+         * 每段最多尝试的次数
+         */
+        private int maxAttempts = 2;
+    }
+
+    @Data
+    public static class Cluster {
+
+        /**
+         * worker 实例的地址（如 http://10.0.0.2:8080），不为空时分段处理的各段分发给这些实例，需要同时开启 video.chunking.enabled
+         */
+        private List<String> workers = new ArrayList<>();
+
+        /**
+         * 本机是否也处理分段，槽数为 video.chunking.parallel-chunks
+         */
+        private boolean includeLocal = true;
+
+        /**
+         * 每个 worker 同时处理的段数
+         */
+        private int slotsPerWorker = 1;
+
+        /**
+         * 是否作为 worker 接受其他实例分发的分段，关闭时 /api/worker 接口不可用
+         */
+        private boolean worker = false;
+
+        /**
+         * 连接 worker 的超时时间
+         */
+        private Duration connectTimeout = Duration.ofSeconds(5);
+
+        /**
+         * 上传输入文件或处理一段的超时时间，超时后该段按重试次数交给其他节点
+         */
+        private Duration chunkTimeout = Duration.ofMinutes(30);
+    }
+
+    @Data
+    public static class Batch {
+
+        /**
+         * 一次批量加密最多的视频数；一个原视频嵌入多个涉密视频时，每个帧槽的输出帧是单个视频的这么多倍
+         */
+        private int maxItems = 8;
+    }
+
+    @Data
+    public static class Cache {
+
+        /**
+         * 是否缓存原视频解码后的原始帧，同一个原视频再次加密时不再解码
+         */
+        private boolean enabled = false;
+
+        /**
+         * 缓存目录，为空时使用临时工作目录下的 cache
+         */
+        private Path directory;
+
+        /**
+         * 缓存总大小上限，超过后按最近使用时间淘汰；原始帧不压缩，1080p 每帧约 6MB
+         */
+        private DataSize maxSize = DataSize.ofGigabytes(20);
+    }
+
+    @Data
+    public static class Ffmpeg {
+
+        /**
+         * 同时运行的 FFmpeg 进程数上限，所有请求共享，默认为 CPU 核数；
+         * 一个原视频批量嵌入多个涉密视频时每个输出各用一个进程，一次预留全部名额，批量数量不能超过该值
+         */
+        private int maxProcesses = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * 等待空闲进程名额的超时时间，批量加密一次等待全部输出的名额
+         */
+        private Duration acquireTimeout = Duration.ofMinutes(10);
+
+        /**
+         * 等待 FFmpeg 结束的超时时间（分段拼接等命令从启动算起，编码输出从输入结束算起），超时后强制终止；
+         * 0 表示不限制，长视频的编码收尾和拼接可能需要很久
+         */
+        private Duration runTimeout = Duration.ZERO;
+    }
+}
@@ -0,0 +1,28 @@
+package com.justin.videoencryption.controller;
+
+import com.justin.videoencryption.service.InputCacheService;
+
+import jakarta.annotation.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 原视频帧缓存的状态：命中次数、未命中次数、淘汰次数、条目数和占用空间
+ */
+@RestController
+@RequestMapping("/api/cache")
+public class CacheController {
+
+    @Resource
+    private InputCacheService inputCacheService;
+
+    @GetMapping
+    public ResponseEntity<InputCacheService.Stats> getStats() {
+        if (!inputCacheService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(inputCacheService.getStats());
+    }
+}
@@ -0,0 +1,27 @@
+package com.justin.videoencryption.controller;
+
+import com.justin.videoencryption.service.ClusterService;
+
+import jakarta.annotation.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 分段分发的节点状态：每个节点处理的段数、帧数、失败次数和帧率
+ */
+@RestController
+@RequestMapping("/api/cluster")
+public class ClusterController {
+
+    @Resource
+    private ClusterService clusterService;
+
+    @GetMapping("/workers")
+    public ResponseEntity<List<ClusterService.Node>> getWorkers() {
+        return ResponseEntity.ok(clusterService.getNodes());
+    }
+}
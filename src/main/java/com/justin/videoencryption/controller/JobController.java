@@ -0,0 +1,120 @@
+package com.justin.videoencryption.controller;
+
+import com.justin.videoencryption.service.JobService;
+import com.justin.videoencryption.service.VideoJob;
+
+import com.justin.videoencryption.util.DownloadUtil;
+import com.justin.videoencryption.util.FrameRange;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 异步任务接口：提交后立即返回任务 id，通过轮询查询进度，完成后下载结果
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private static final Logger log = LoggerFactory.getLogger(JobController.class);
+
+    @Resource
+    private JobService jobService;
+
+    @PostMapping("/encrypt")
+    public ResponseEntity<VideoJob> encryptVideo(
+            @RequestParam("originalVideo") MultipartFile originalVideo,
+            @RequestParam("secretVideo") MultipartFile secretVideo) {
+
+        try {
+            return accepted(jobService.submitEncrypt(originalVideo, secretVideo));
+        } catch (RejectedExecutionException e) {
+            return new ResponseEntity<>(null, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (IOException e) {
+            log.error("无法提交任务", e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @PostMapping("/encrypt/batch")
+    public ResponseEntity<VideoJob> encryptBatch(
+            @RequestParam("originalVideo") MultipartFile[] originalVideos,
+            @RequestParam("secretVideo") MultipartFile[] secretVideos) {
+
+        try {
+            return accepted(jobService.submitBatch(originalVideos, secretVideos));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        } catch (RejectedExecutionException e) {
+            return new ResponseEntity<>(null, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (IOException e) {
+            log.error("无法提交任务", e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @PostMapping("/decrypt")
+    public ResponseEntity<VideoJob> decryptVideo(
+            @RequestParam("encryptedVideo") MultipartFile encryptedVideo,
+            @RequestParam(value = "start", defaultValue = "0") long start,
+            @RequestParam(value = "end", defaultValue = "-1") long end,
+            @RequestParam(value = "stride", defaultValue = "1") long stride) {
+
+        try {
+            return accepted(jobService.submitDecrypt(encryptedVideo, FrameRange.of(start, end, stride)));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        } catch (RejectedExecutionException e) {
+            return new ResponseEntity<>(null, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (IOException e) {
+            log.error("无法提交任务", e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // 查询任务状态、已处理帧数、帧率和预计剩余时间
+    @GetMapping("/{id}")
+    public ResponseEntity<VideoJob> getJob(@PathVariable("id") String id) {
+        VideoJob job = jobService.getJob(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    // 下载任务结果，支持 Range 断点续传，任务未成功完成时返回 409
+    @GetMapping("/{id}/result")
+    public ResponseEntity<StreamingResponseBody> getResult(@PathVariable("id") String id,
+                                                           @RequestHeader HttpHeaders requestHeaders)
+            throws IOException {
+        VideoJob job = jobService.getJob(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (job.getState() != VideoJob.State.SUCCEEDED) {
+            return new ResponseEntity<>(null, HttpStatus.CONFLICT);
+        }
+
+        // 结果文件在任务保留期内可以重复下载，由任务清理时删除
+        String baseName = "batch".equals(job.getType()) ? "encrypted_videos" : job.getType() + "ed_video";
+        return DownloadUtil.stream(job.getResultPath(),
+                DownloadUtil.fileName(baseName, job.getResultPath()), requestHeaders, null);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<VideoJob> cancelJob(@PathVariable("id") String id) {
+        VideoJob job = jobService.cancel(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    private static ResponseEntity<VideoJob> accepted(VideoJob job) {
+        return ResponseEntity.accepted().location(URI.create("/api/jobs/" + job.getId())).body(job);
+    }
+}
@@ -1,16 +1,25 @@
 package com.justin.videoencryption.controller;
 
+import com.justin.videoencryption.service.FrameScheduler;
 import com.justin.videoencryption.service.VideoService;
+import com.justin.videoencryption.service.WorkspaceService;
 
+import com.justin.videoencryption.util.DownloadUtil;
+import com.justin.videoencryption.util.FrameJob;
+import com.justin.videoencryption.util.FrameRange;
+import com.justin.videoencryption.util.Workspace;
 import jakarta.annotation.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
 @RestController
 @RequestMapping("/api")
@@ -19,44 +28,134 @@ public class VideoController {
     @Resource
     private VideoService videoService;
 
+    @Resource
+    private FrameScheduler frameScheduler;
+
+    @Resource
+    private WorkspaceService workspaceService;
+
     @PostMapping("/encrypt")
-    public ResponseEntity<byte[]> encryptVideo(
+    public WebAsyncTask<ResponseEntity<StreamingResponseBody>> encryptVideo(
             @RequestParam("originalVideo") MultipartFile originalVideo,
-            @RequestParam("secretVideo") MultipartFile secretVideo) {
-
-        try {
-            byte[] encryptedVideos = videoService.encryptVideos(originalVideo, secretVideo);
-
-            // 设置响应头，指定返回的视频文件类型
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.valueOf("video/mp4")); // 设置视频类型
-            headers.setContentDispositionFormData("attachment", "encrypted_video.mp4"); // 文件名
-
-            // 返回加密视频的字节数据
-            return new ResponseEntity<>(encryptedVideos, headers, HttpStatus.OK);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+            @RequestParam("secretVideo") MultipartFile secretVideo,
+            @RequestHeader HttpHeaders requestHeaders) {
+
+        FrameJob job = frameScheduler.newJob();
+        WebAsyncTask<ResponseEntity<StreamingResponseBody>> task = new WebAsyncTask<>(() -> {
+            Workspace workspace = workspaceService.create();
+            try {
+                Path encryptedVideo = videoService.encryptVideos(originalVideo, secretVideo, workspace, job);
+
+                // 流式返回加密视频，传输结束后删除工作目录
+                return DownloadUtil.stream(encryptedVideo,
+                        DownloadUtil.fileName("encrypted_video", encryptedVideo), requestHeaders, workspace);
+            } catch (IOException e) {
+                e.printStackTrace();
+                workspace.close();
+                return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+            } catch (RuntimeException e) {
+                workspace.close();
+                throw e;
+            }
+        });
+
+        // 客户端断开、超时或请求结束时取消任务，停止占用帧处理线程
+        task.onCompletion(job::cancel);
+        return task;
+    }
+
+    // 批量加密：一个原视频和多个涉密视频，或多个原视频和一个涉密视频，返回按上传顺序编号的 zip
+    @PostMapping("/encrypt/batch")
+    public WebAsyncTask<ResponseEntity<StreamingResponseBody>> encryptBatch(
+            @RequestParam("originalVideo") MultipartFile[] originalVideos,
+            @RequestParam("secretVideo") MultipartFile[] secretVideos,
+            @RequestHeader HttpHeaders requestHeaders) {
+
+        FrameJob job = frameScheduler.newJob();
+        WebAsyncTask<ResponseEntity<StreamingResponseBody>> task = new WebAsyncTask<>(() -> {
+            Workspace workspace = workspaceService.create();
+            try {
+                Path archive = videoService.encryptBatch(originalVideos, secretVideos, workspace, job);
+                return DownloadUtil.stream(archive, "encrypted_videos.zip", requestHeaders, workspace);
+            } catch (IOException e) {
+                e.printStackTrace();
+                workspace.close();
+                return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+            } catch (IllegalArgumentException e) {
+                workspace.close();
+                return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+            } catch (RuntimeException e) {
+                workspace.close();
+                throw e;
+            }
+        });
+
+        task.onCompletion(job::cancel);
+        return task;
     }
 
+    // 可以只解密部分帧：start（含）到 end（不含，-1 表示到结尾），每隔 stride 帧取一帧
     @PostMapping("/decrypt")
-    public ResponseEntity<byte[]> decryptVideo(
-            @RequestParam("encryptedVideo") MultipartFile encryptedVideo) {
-
-        try {
-            byte[] decryptedVideos = videoService.decryptVideos(encryptedVideo);
-
-            // 设置响应头，指定返回的视频文件类型
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.valueOf("video/mp4")); // 设置视频类型
-            headers.setContentDispositionFormData("attachment", "encrypted_video.mp4"); // 文件名
-
-            // 返回加密视频的字节数据
-            return new ResponseEntity<>(decryptedVideos, headers, HttpStatus.OK);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+    public WebAsyncTask<ResponseEntity<StreamingResponseBody>> decryptVideo(
+            @RequestParam("encryptedVideo") MultipartFile encryptedVideo,
+            @RequestParam(value = "start", defaultValue = "0") long start,
+            @RequestParam(value = "end", defaultValue = "-1") long end,
+            @RequestParam(value = "stride", defaultValue = "1") long stride,
+            @RequestHeader HttpHeaders requestHeaders) {
+
+        FrameJob job = frameScheduler.newJob();
+        WebAsyncTask<ResponseEntity<StreamingResponseBody>> task = new WebAsyncTask<>(() -> {
+            Workspace workspace = workspaceService.create();
+            try {
+                Path decryptedVideo = videoService.decryptVideos(encryptedVideo, FrameRange.of(start, end, stride),
+                        workspace, job);
+
+                // 流式返回解密视频，传输结束后删除工作目录
+                return DownloadUtil.stream(decryptedVideo,
+                        DownloadUtil.fileName("decrypted_video", decryptedVideo), requestHeaders, workspace);
+            } catch (IOException e) {
+                e.printStackTrace();
+                workspace.close();
+                return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+            } catch (IllegalArgumentException e) {
+                workspace.close();
+                return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+            } catch (RuntimeException e) {
+                workspace.close();
+                throw e;
+            }
+        });
+
+        // 客户端断开、超时或请求结束时取消任务，停止占用帧处理线程
+        task.onCompletion(job::cancel);
+        return task;
+    }
+
+    // 预览：只解密几帧拼成一张 PNG，默认在整段视频中均匀取 frames 帧；指定 stride 时按 start/end/stride 取帧
+    @PostMapping("/decrypt/preview")
+    public WebAsyncTask<ResponseEntity<byte[]>> previewVideo(
+            @RequestParam("encryptedVideo") MultipartFile encryptedVideo,
+            @RequestParam(value = "frames", defaultValue = "4") int frames,
+            @RequestParam(value = "start", defaultValue = "0") long start,
+            @RequestParam(value = "end", defaultValue = "-1") long end,
+            @RequestParam(value = "stride", required = false) Long stride,
+            @RequestParam(value = "width", defaultValue = "320") int width) {
+
+        FrameJob job = frameScheduler.newJob();
+        WebAsyncTask<ResponseEntity<byte[]>> task = new WebAsyncTask<>(() -> {
+            try (Workspace workspace = workspaceService.create()) {
+                FrameRange range = stride == null ? null : FrameRange.of(start, end, stride);
+                byte[] png = videoService.previewVideo(encryptedVideo, frames, range, width, workspace, job);
+                return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG).body(png);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+            } catch (IllegalArgumentException e) {
+                return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+            }
+        });
+
+        task.onCompletion(job::cancel);
+        return task;
     }
 }
@@ -0,0 +1,122 @@
+package com.justin.videoencryption.controller;
+
+import com.justin.videoencryption.service.ClusterService;
+import com.justin.videoencryption.service.FrameScheduler;
+import com.justin.videoencryption.service.WorkerService;
+
+import com.justin.videoencryption.util.ChunkSpec;
+import com.justin.videoencryption.util.DownloadUtil;
+import com.justin.videoencryption.util.FrameJob;
+import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * worker 接口：接收协调节点上传的输入文件，处理分发过来的段并返回分段文件
+ * 只有开启 video.cluster.worker 的实例才提供这些接口，否则返回 404
+ */
+@RestController
+@RequestMapping("/api/worker/sessions")
+public class WorkerController {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerController.class);
+
+    @Resource
+    private WorkerService workerService;
+
+    @Resource
+    private FrameScheduler frameScheduler;
+
+    // 请求体就是文件内容，直接写入会话工作目录
+    @PutMapping("/{session}/inputs/{name}")
+    public ResponseEntity<Void> putInput(@PathVariable("session") String session,
+                                         @PathVariable("name") String name,
+                                         HttpServletRequest request) {
+        if (!workerService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            workerService.saveInput(session, name, request.getInputStream());
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+            log.error("无法保存分段输入：{}", name, e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // 处理一段，帧数放在响应头中，分段文件传输结束后删除；没有帧时响应体为空
+    @PostMapping("/{session}/chunks")
+    public WebAsyncTask<ResponseEntity<StreamingResponseBody>> runChunk(@PathVariable("session") String session,
+                                                                        @RequestBody ChunkSpec spec) {
+        if (!workerService.isEnabled()) {
+            return new WebAsyncTask<>(() -> ResponseEntity.notFound().build());
+        }
+
+        FrameJob job = frameScheduler.newJob();
+        WebAsyncTask<ResponseEntity<StreamingResponseBody>> task = new WebAsyncTask<>(() -> {
+            Path segment = null;
+            try {
+                segment = workerService.newSegment(session, spec);
+                long frames = workerService.runChunk(session, spec, segment, job);
+                if (frames == 0) {
+                    Files.deleteIfExists(segment);
+                    return ResponseEntity.ok().header(ClusterService.FRAME_COUNT_HEADER, "0").build();
+                }
+
+                Path file = segment;
+                ResponseEntity<StreamingResponseBody> response = DownloadUtil.stream(file,
+                        file.getFileName().toString(), new HttpHeaders(), () -> Files.deleteIfExists(file));
+                HttpHeaders headers = new HttpHeaders();
+                headers.putAll(response.getHeaders());
+                headers.set(ClusterService.FRAME_COUNT_HEADER, Long.toString(frames));
+                return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+            } catch (IllegalArgumentException e) {
+                deleteSegment(segment);
+                return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+            } catch (IOException e) {
+                log.error("分段处理失败", e);
+                deleteSegment(segment);
+                return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+            } catch (RuntimeException e) {
+                deleteSegment(segment);
+                throw e;
+            }
+        });
+
+        // 协调节点断开或超时时取消，停止占用帧处理线程
+        task.onCompletion(job::cancel);
+        return task;
+    }
+
+    @DeleteMapping("/{session}")
+    public ResponseEntity<Void> closeSession(@PathVariable("session") String session) {
+        if (!workerService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return workerService.close(session) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    private static void deleteSegment(Path segment) {
+        if (segment == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            log.warn("分段文件无法删除：{}", segment, e);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.justin.videoencryption.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.justin.videoencryption.config.VideoProperties;
+import com.justin.videoencryption.util.ChunkSpec;
+import com.justin.videoencryption.util.FrameJob;
+import com.justin.videoencryption.util.Workspace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分段处理的横向扩展（协调节点一侧）：把一个任务的各段分发给 video.cluster.workers 中的 worker 节点，
+ * 本机也可以作为一个节点参与；每个节点有固定数量的槽，空闲的槽领取下一段
+ * worker 是同一个应用开启 video.cluster.worker 后的实例，输入文件按任务只上传一次，
+ * 分段通过 HTTP 返回，由 ChunkRunner 记入清单并按顺序拼接；某个节点失败时该段按重试次数交给其他空闲的槽
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@Service
+public class ClusterService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterService.class);
+
+    /**
+     * 本机节点的名称
+     */
+    public static final String LOCAL = "local";
+
+    /**
+     * worker 返回的分段帧数
+     */
+    public static final String FRAME_COUNT_HEADER = "X-Frame-Count";
+
+    /**
+     * 一个节点及其吞吐量统计，序列化后作为节点查询接口的返回值
+     */
+    public static class Node {
+
+        private final String url;
+
+        private final int slots;
+
+        // 已上传输入文件的任务，同一任务的多个段并发时只上传一次
+        private final Map<String, CompletableFuture<Void>> uploads = new ConcurrentHashMap<>();
+
+        private final AtomicLong chunks = new AtomicLong();
+
+        private final AtomicLong frames = new AtomicLong();
+
+        private final AtomicLong failures = new AtomicLong();
+
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        private final AtomicLong bytesReceived = new AtomicLong();
+
+        private Node(String url, int slots) {
+            this.url = url;
+            this.slots = slots;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getSlots() {
+            return slots;
+        }
+
+        public long getChunks() {
+            return chunks.get();
+        }
+
+        public long getFrames() {
+            return frames.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        /**
+         * @return 处理分段期间的平均帧率（按各槽处理时间之和计算，即单个槽的帧率）
+         */
+        public double getFps() {
+            double seconds = busyNanos.get() / 1e9;
+            return seconds > 0 ? frames.get() / seconds : 0;
+        }
+
+        private boolean isLocal() {
+            return url.equals(LOCAL);
+        }
+    }
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    // 每个空闲槽在队列中放一个所属节点的引用
+    private final BlockingQueue<Node> freeSlots = new LinkedBlockingQueue<>();
+
+    private final int slots;
+
+    // 区分不同协调节点的任务，worker 上的会话名为 实例 id + 工作目录名
+    private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+
+    private final HttpClient httpClient;
+
+    private final ObjectMapper objectMapper;
+
+    private final Duration chunkTimeout;
+
+    public ClusterService(VideoProperties properties, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        VideoProperties.Cluster cluster = properties.getCluster();
+        this.chunkTimeout = cluster.getChunkTimeout();
+        this.httpClient = HttpClient.newBuilder().connectTimeout(cluster.getConnectTimeout()).build();
+
+        if (!cluster.getWorkers().isEmpty()) {
+            if (cluster.isIncludeLocal()) {
+                nodes.add(new Node(LOCAL, properties.getChunking().getParallelChunks()));
+            }
+            for (String worker : cluster.getWorkers()) {
+                nodes.add(new Node(worker.replaceAll("/+$", ""), cluster.getSlotsPerWorker()));
+            }
+        }
+        int total = 0;
+        for (Node node : nodes) {
+            for (int i = 0; i < node.slots; i++) {
+                freeSlots.add(node);
+            }
+            total += node.slots;
+        }
+        this.slots = total;
+        if (isEnabled()) {
+            log.info("分段分发节点：{}，共 {} 个槽", nodes.stream().map(Node::getUrl).toList(), slots);
+        }
+    }
+
+    /**
+     * @return 是否配置了 worker 节点
+     */
+    public boolean isEnabled() {
+        return !nodes.isEmpty();
+    }
+
+    /**
+     * @return 所有节点的槽数之和，即同时处理的段数
+     */
+    public int getSlots() {
+        return slots;
+    }
+
+    /**
+     * @return 各节点及其吞吐量统计
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return 一个任务在 worker 上的会话名
+     */
+    public String session(Workspace workspace) {
+        return instanceId + "-" + workspace.getDirectory().getFileName();
+    }
+
+    /**
+     * 等待一个空闲的槽并在该节点上处理一段
+     * @param session 任务的会话名
+     * @param spec 处理参数
+     * @param inputs 输入文件，首次在某个 worker 上处理该任务时上传
+     * @param segment 分段文件
+     * @param job 任务上下文，由 worker 处理的帧在该段完成后计入进度
+     * @param local 分到本机时的处理逻辑
+     * @return 写出的帧数
+     */
+    public long runChunk(String session, ChunkSpec spec, List<Path> inputs, Path segment, FrameJob job,
+                         Callable<Long> local) throws Exception {
+        Node node = freeSlots.take();
+        long start = System.nanoTime();
+        try {
+            long frames;
+            if (node.isLocal()) {
+                frames = local.call();
+            } else {
+                frames = runRemote(node, session, spec, inputs, segment);
+                job.framesProcessed(frames);
+            }
+            long elapsed = System.nanoTime() - start;
+            node.chunks.incrementAndGet();
+            node.frames.addAndGet(frames);
+            node.busyNanos.addAndGet(elapsed);
+            log.info("第 {} 帧开始的分段由 {} 完成，{} 帧，{} fps", spec.getFirstFrame(), node.url, frames,
+                    String.format("%.1f", elapsed > 0 ? frames * 1e9 / elapsed : 0));
+            return frames;
+        } catch (Exception e) {
+            node.failures.incrementAndGet();
+            throw e;
+        } finally {
+            freeSlots.add(node);
+        }
+    }
+
+    private long runRemote(Node node, String session, ChunkSpec spec, List<Path> inputs, Path segment)
+            throws IOException, InterruptedException {
+        upload(node, session, inputs);
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(node.url + "/api/worker/sessions/" + session + "/chunks"))
+                .timeout(chunkTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(spec)))
+                .build();
+        HttpResponse<Path> response = httpClient.send(request, HttpResponse.BodyHandlers.ofFile(segment));
+        if (response.statusCode() != 200) {
+            Files.deleteIfExists(segment);
+            throw new IOException(node.url + " 处理分段失败，状态码：" + response.statusCode());
+        }
+        long frames = response.headers().firstValueAsLong(FRAME_COUNT_HEADER)
+                .orElseThrow(() -> new IOException(node.url + " 没有返回分段帧数"));
+        if (frames == 0) {
+            Files.deleteIfExists(segment);
+        } else {
+            node.bytesReceived.addAndGet(Files.size(segment));
+        }
+        return frames;
+    }
+
+    /**
+     * 把任务的输入文件上传到 worker，同一节点同一任务只上传一次；上传失败时下次重新上传
+     */
+    private void upload(Node node, String session, List<Path> inputs) throws IOException, InterruptedException {
+        CompletableFuture<Void> created = new CompletableFuture<>();
+        CompletableFuture<Void> upload = node.uploads.putIfAbsent(session, created);
+        if (upload == null) {
+            try {
+                for (Path input : inputs) {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(node.url + "/api/worker/sessions/"
+                                    + session + "/inputs/" + input.getFileName()))
+                            .timeout(chunkTimeout)
+                            .PUT(HttpRequest.BodyPublishers.ofFile(input))
+                            .build();
+                    HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() / 100 != 2) {
+                        throw new IOException(node.url + " 接收输入文件失败，状态码：" + response.statusCode());
+                    }
+                }
+                created.complete(null);
+                return;
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                node.uploads.remove(session);
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            upload.get();
+        } catch (ExecutionException e) {
+            throw new IOException(node.url + " 接收输入文件失败", e.getCause());
+        }
+    }
+
+    /**
+     * 任务结束后通知上传过输入文件的 worker 删除会话
+     */
+    public void release(String session) {
+        for (Node node : nodes) {
+            if (node.uploads.remove(session) == null) {
+                continue;
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create(node.url + "/api/worker/sessions/" + session))
+                    .timeout(chunkTimeout)
+                    .DELETE()
+                    .build();
+            try {
+                httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            } catch (IOException e) {
+                // worker 会在会话空闲超时后自行清理
+                log.warn("无法通知 {} 删除会话：{}", node.url, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
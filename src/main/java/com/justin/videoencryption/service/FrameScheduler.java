@@ -0,0 +1,66 @@
+package com.justin.videoencryption.service;
+
+import com.justin.videoencryption.config.VideoProperties;
+import com.justin.videoencryption.util.FrameArena;
+import com.justin.videoencryption.util.FrameJob;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 所有请求共享的帧处理调度器
+ * 使用 FIFO 模式的 ForkJoinPool（工作窃取），每个请求通过 FrameJob 限制自己的在途帧数，
+ * 多个请求的帧任务交错排队，避免按请求创建线程池导致的 CPU 超额订阅和线程启动开销
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@Component
+public class FrameScheduler {
+
+    private final ForkJoinPool pool;
+
+    private final int queueDepth;
+
+    public FrameScheduler(VideoProperties properties) {
+        VideoProperties.Executor executor = properties.getExecutor();
+        this.queueDepth = executor.getQueueDepth();
+        this.pool = new ForkJoinPool(executor.getParallelism(), forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("frame-worker-" + thread.getPoolIndex());
+            return thread;
+        }, null, true);
+    }
+
+    /**
+     * 为一次请求创建帧处理任务
+     * @return 使用共享线程池的任务上下文
+     */
+    public FrameJob newJob() {
+        return new FrameJob(pool, queueDepth);
+    }
+
+    /**
+     * @return 线程池中排队等待处理的帧任务数
+     */
+    public long getQueuedTasks() {
+        return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+    }
+
+    /**
+     * @return 正在处理帧的线程数
+     */
+    public int getActiveThreads() {
+        return pool.getActiveThreadCount();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        pool.shutdownNow();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        FrameArena.shared().clear();
+    }
+}
@@ -0,0 +1,373 @@
+package com.justin.videoencryption.service;
+
+import com.justin.videoencryption.config.VideoProperties;
+import com.justin.videoencryption.util.EncryptUtil;
+import com.justin.videoencryption.util.FileUtil;
+import com.justin.videoencryption.util.FrameDecoder;
+import com.justin.videoencryption.util.FrameStream;
+import com.justin.videoencryption.util.RawFrameStore;
+import com.justin.videoencryption.util.VideoInfo;
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 原视频的内容寻址缓存：按上传文件内容的 SHA-256 保存第一次解码得到的原始帧（RawFrameStore），
+ * 同一个原视频再次上传时直接内存映射读取这些帧，不再解码
+ * 缓存总大小超过 video.cache.max-size 时按最近使用时间淘汰；音轨由 FFmpeg 合成时直接从上传的文件中复制，不需要缓存
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@Service
+public class InputCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(InputCacheService.class);
+
+    /**
+     * 缓存的命中情况，序列化后作为缓存查询接口的返回值
+     */
+    public static class Stats {
+
+        private final long hits;
+
+        private final long misses;
+
+        private final long evictions;
+
+        private final int entries;
+
+        private final long size;
+
+        private final long maxSize;
+
+        private Stats(long hits, long misses, long evictions, int entries, long size, long maxSize) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.size = size;
+            this.maxSize = maxSize;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public double getHitRate() {
+            return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+        }
+    }
+
+    private final boolean enabled;
+
+    private final Path root;
+
+    private final long maxBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    // 正在写入的条目，淘汰时跳过
+    private final Set<String> writing = ConcurrentHashMap.newKeySet();
+
+    public InputCacheService(VideoProperties properties, WorkspaceService workspaceService) {
+        VideoProperties.Cache cache = properties.getCache();
+        this.enabled = cache.isEnabled();
+        this.root = cache.getDirectory() != null ? cache.getDirectory() : workspaceService.getRoot().resolve("cache");
+        this.maxBytes = cache.getMaxSize().toBytes();
+        if (enabled) {
+            log.info("原视频帧缓存目录：{}，上限 {}", root, cache.getMaxSize());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 原视频的帧来源，需要支持循环：缓存命中时读取缓存的原始帧；未命中时解码，并把第一遍解码的帧写入缓存
+     * 未开启缓存时与直接解码相同
+     * @param videoPath 原视频文件，按内容的 SHA-256 查找
+     * @param capture 已打开的原视频，命中时不使用
+     * @param info 原视频的信息，用来估计缓存条目的大小
+     * @return 帧来源，用完后关闭
+     */
+    public FrameStream originalFrames(Path videoPath, VideoCapture capture, VideoInfo info) throws IOException {
+        if (!enabled) {
+            return decoder(capture);
+        }
+        String key = sha256(videoPath);
+        Path entry = root.resolve(key);
+        RawFrameStore store = RawFrameStore.open(entry);
+        if (store != null) {
+            hits.incrementAndGet();
+            touch(entry);
+            log.info("原视频帧缓存命中：{}，{} 帧", key, store.getMeta().getFrameCount());
+            return store.stream(true);
+        }
+        misses.incrementAndGet();
+
+        // 超过缓存上限的视频不缓存；同一个视频正在写入时不重复写入
+        long estimated = (long) info.getWidth() * info.getHeight() * 3 * info.getFrameCount();
+        if (info.getFrameCount() <= 0 || estimated > maxBytes || !writing.add(key)) {
+            return decoder(capture);
+        }
+        try {
+            RawFrameStore.Writer writer = new RawFrameStore.Writer(entry, info.getFps());
+            return new RecordingStream(key, decoder(capture), writer);
+        } catch (IOException | RuntimeException e) {
+            writing.remove(key);
+            log.warn("无法写入原视频帧缓存：{}", e.getMessage());
+            return decoder(capture);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return 缓存的命中次数、条目数和大小
+     */
+    public Stats getStats() {
+        List<Path> entries = entries();
+        long size = 0;
+        for (Path entry : entries) {
+            size += size(entry);
+        }
+        return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), size, maxBytes);
+    }
+
+    private static FrameStream decoder(VideoCapture capture) {
+        return new FrameDecoder(capture, true, EncryptUtil.DECODE_PREFETCH, "original-decoder");
+    }
+
+    /**
+     * 按最近使用时间从旧到新删除条目，直到总大小不超过上限；正在写入或无法删除（例如正在被读取）的条目跳过
+     */
+    private synchronized void evict() {
+        List<Path> entries = entries();
+        entries.sort(Comparator.comparing(InputCacheService::lastUsed));
+        long total = 0;
+        for (Path entry : entries) {
+            total += size(entry);
+        }
+        for (Path entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (writing.contains(entry.getFileName().toString())) {
+                continue;
+            }
+            long size = size(entry);
+            try {
+                FileUtil.deleteDirectory(entry);
+                total -= size;
+                evictions.incrementAndGet();
+                log.info("淘汰原视频帧缓存：{}", entry.getFileName());
+            } catch (IOException e) {
+                log.warn("无法淘汰原视频帧缓存：{}，{}", entry.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    private List<Path> entries() {
+        List<Path> entries = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return entries;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, Files::isDirectory)) {
+            stream.forEach(entries::add);
+        } catch (IOException e) {
+            log.warn("无法读取原视频帧缓存目录：{}", root, e);
+        }
+        return entries;
+    }
+
+    private static long size(Path entry) {
+        try (Stream<Path> files = Files.list(entry)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastUsed(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // 只影响淘汰顺序
+        }
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[1 << 20];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 边解码边把第一遍的帧写入缓存，解码器第一次循环回开头（或读到结尾）时整段写完并提交
+     * 写入失败只放弃缓存，不影响加密
+     */
+    private class RecordingStream implements FrameStream {
+
+        private final String key;
+
+        private final FrameStream decoder;
+
+        private RawFrameStore.Writer writer;
+
+        private RecordingStream(String key, FrameStream decoder, RawFrameStore.Writer writer) {
+            this.key = key;
+            this.decoder = decoder;
+            this.writer = writer;
+        }
+
+        @Override
+        public boolean next(Mat[] frames, int index) throws IOException {
+            boolean available = decoder.next(frames, index);
+            if (writer == null) {
+                return available;
+            }
+            if (!available || decoder.wrapped()) {
+                finish(true);
+                return available;
+            }
+            try {
+                writer.write(frames[index], decoder.timestamp());
+                if (writer.size() > maxBytes) {
+                    finish(false);
+                }
+            } catch (IOException e) {
+                log.warn("写入原视频帧缓存失败：{}", e.getMessage());
+                finish(false);
+            }
+            return true;
+        }
+
+        private void finish(boolean commit) {
+            RawFrameStore.Writer finished = writer;
+            writer = null;
+            try {
+                if (commit && finished.commit()) {
+                    touch(root.resolve(key));
+                }
+                finished.close();
+            } catch (IOException e) {
+                log.warn("写入原视频帧缓存失败：{}", e.getMessage());
+            } finally {
+                writing.remove(key);
+            }
+            if (commit) {
+                evict();
+            }
+        }
+
+        @Override
+        public boolean wrapped() {
+            return decoder.wrapped();
+        }
+
+        @Override
+        public double timestamp() {
+            return decoder.timestamp();
+        }
+
+        @Override
+        public double frameMillis() {
+            return decoder.frameMillis();
+        }
+
+        @Override
+        public boolean shared() {
+            return decoder.shared();
+        }
+
+        @Override
+        public void close() {
+            decoder.close();
+            if (writer != null) {
+                // 没有读完第一遍（失败或取消），丢弃写了一半的帧
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    log.warn("无法丢弃写了一半的原视频帧缓存", e);
+                } finally {
+                    writer = null;
+                    writing.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.justin.videoencryption.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.justin.videoencryption.config.VideoProperties;
+import com.justin.videoencryption.util.FileUtil;
+import com.justin.videoencryption.util.FrameJob;
+import com.justin.videoencryption.util.FrameRange;
+import com.justin.videoencryption.util.Workspace;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步任务管理：提交后立即返回任务，在有界队列中按配置的并发数执行，可查询进度、下载结果和取消
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@Service
+public class JobService {
+
+    private static final Logger log = LoggerFactory.getLogger(JobService.class);
+
+    /**
+     * 任务的执行逻辑，返回结果文件
+     */
+    @FunctionalInterface
+    private interface JobTask {
+
+        Path run(FrameJob frameJob) throws Exception;
+    }
+
+    /**
+     * 分段处理时记录任务信息的文件，进程重启后据此继续未完成的任务
+     */
+    private static final String JOB_FILE = "job.json";
+
+    /**
+     * 保存在 JOB_FILE 中的任务信息，输入文件只记录文件名，位于同一个工作目录
+     */
+    @Data
+    static class SavedJob {
+
+        private String id;
+
+        private String type;
+
+        private List<String> inputs;
+
+        private long start;
+
+        private long end = -1;
+
+        private long stride = 1;
+    }
+
+    private final VideoService videoService;
+
+    private final FrameScheduler frameScheduler;
+
+    private final WorkspaceService workspaceService;
+
+    private final Duration retention;
+
+    private final ObjectMapper objectMapper;
+
+    private final boolean chunking;
+
+    private final ThreadPoolExecutor executor;
+
+    // 正在关闭时，被取消的分段任务保留工作目录，下次启动后继续
+    private volatile boolean shuttingDown;
+
+    private final Map<String, VideoJob> jobs = new ConcurrentHashMap<>();
+
+    public JobService(VideoProperties properties, VideoService videoService, FrameScheduler frameScheduler,
+                      WorkspaceService workspaceService, ObjectMapper objectMapper) {
+        this.videoService = videoService;
+        this.frameScheduler = frameScheduler;
+        this.workspaceService = workspaceService;
+        this.objectMapper = objectMapper;
+        this.chunking = properties.getChunking().isEnabled();
+
+        VideoProperties.Jobs jobsProperties = properties.getJobs();
+        this.retention = jobsProperties.getRetention();
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(jobsProperties.getConcurrency(), jobsProperties.getConcurrency(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(jobsProperties.getQueueCapacity()),
+                runnable -> new Thread(runnable, "video-job-" + threadIndex.incrementAndGet()));
+    }
+
+    /**
+     * 提交加密任务
+     * @throws RejectedExecutionException 排队的任务已满
+     */
+    public VideoJob submitEncrypt(MultipartFile originalVideo, MultipartFile secretVideo) throws IOException {
+        // 上传的文件在请求结束后就会被删除，提交前先保存到任务工作目录
+        Workspace workspace = workspaceService.create();
+        try {
+            Path originalVideoPath = workspace.spool(originalVideo, "original_video.mp4");
+            Path secretVideoPath = workspace.spool(secretVideo,
+                    "secret_video." + FileUtil.extension(secretVideo.getOriginalFilename(), "mp4"));
+            return submitEncrypt(null, workspace, originalVideoPath, secretVideoPath);
+        } catch (IOException | RuntimeException e) {
+            workspace.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 提交解密任务
+     * @throws RejectedExecutionException 排队的任务已满
+     */
+    public VideoJob submitDecrypt(MultipartFile encryptedVideo) throws IOException {
+        return submitDecrypt(encryptedVideo, FrameRange.ALL);
+    }
+
+    /**
+     * 提交只解密部分帧的任务
+     * @throws RejectedExecutionException 排队的任务已满
+     */
+    public VideoJob submitDecrypt(MultipartFile encryptedVideo, FrameRange range) throws IOException {
+        Workspace workspace = workspaceService.create();
+        try {
+            Path encryptedVideoPath = workspace.spool(encryptedVideo, "encrypted_video.mp4");
+            return submitDecrypt(null, workspace, encryptedVideoPath, range);
+        } catch (IOException | RuntimeException e) {
+            workspace.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 提交批量加密任务，结果为 zip；批量任务不分段，进程重启后不会继续
+     * @throws IllegalArgumentException 视频数量不符合要求
+     * @throws RejectedExecutionException 排队的任务已满
+     */
+    public VideoJob submitBatch(MultipartFile[] originalVideos, MultipartFile[] secretVideos) throws IOException {
+        videoService.checkBatch(originalVideos.length, secretVideos.length);
+        Workspace workspace = workspaceService.create();
+        try {
+            List<Path> originalVideoPaths = new ArrayList<>();
+            for (int i = 0; i < originalVideos.length; i++) {
+                originalVideoPaths.add(workspace.spool(originalVideos[i], "original_video_" + (i + 1) + ".mp4"));
+            }
+            List<Path> secretVideoPaths = new ArrayList<>();
+            for (int i = 0; i < secretVideos.length; i++) {
+                secretVideoPaths.add(workspace.spool(secretVideos[i], "secret_video_" + (i + 1) + "."
+                        + FileUtil.extension(secretVideos[i].getOriginalFilename(), "mp4")));
+            }
+            List<Path> inputs = new ArrayList<>(originalVideoPaths);
+            inputs.addAll(secretVideoPaths);
+            return submit(null, "batch", workspace, inputs, null,
+                    frameJob -> videoService.encryptBatch(originalVideoPaths, secretVideoPaths, workspace, frameJob));
+        } catch (IOException | RuntimeException e) {
+            workspace.close();
+            throw e;
+        }
+    }
+
+    private VideoJob submitEncrypt(String id, Workspace workspace, Path originalVideoPath, Path secretVideoPath) {
+        return submit(id, "encrypt", workspace, List.of(originalVideoPath, secretVideoPath), FrameRange.ALL,
+                frameJob -> videoService.encryptVideos(originalVideoPath, secretVideoPath, workspace, frameJob));
+    }
+
+    private VideoJob submitDecrypt(String id, Workspace workspace, Path encryptedVideoPath, FrameRange range) {
+        return submit(id, "decrypt", workspace, List.of(encryptedVideoPath), range,
+                frameJob -> videoService.decryptVideos(encryptedVideoPath, range, workspace, frameJob));
+    }
+
+    /**
+     * 启动时继续上次进程退出时未完成的分段任务：工作目录中的分段清单记录了已完成的段，只重做其余的段
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        Path root = workspaceService.getRoot();
+        if (!chunking || !Files.isDirectory(root)) {
+            return;
+        }
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(root, "job-*")) {
+            for (Path directory : directories) {
+                Path jobFile = directory.resolve(JOB_FILE);
+                if (!Files.isRegularFile(jobFile)) {
+                    continue;
+                }
+                try {
+                    resume(directory, objectMapper.readValue(jobFile.toFile(), SavedJob.class));
+                } catch (IOException | RuntimeException e) {
+                    log.warn("无法继续任务：{}，{}", directory, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.error("无法读取任务工作目录", e);
+        }
+    }
+
+    private void resume(Path directory, SavedJob saved) {
+        Workspace workspace = Workspace.open(directory);
+        List<Path> inputs = saved.getInputs().stream()
+                .map(name -> directory.resolve(Path.of(name).getFileName()))
+                .toList();
+        VideoJob job = "encrypt".equals(saved.getType())
+                ? submitEncrypt(saved.getId(), workspace, inputs.get(0), inputs.get(1))
+                : submitDecrypt(saved.getId(), workspace, inputs.get(0),
+                        FrameRange.of(saved.getStart(), saved.getEnd(), saved.getStride()));
+        log.info("继续未完成的任务：{}", job.getId());
+    }
+
+    /**
+     * @return 任务，不存在或已过期时返回 null
+     */
+    public VideoJob getJob(String id) {
+        purgeExpired();
+        return jobs.get(id);
+    }
+
+    /**
+     * 取消任务
+     * @return 任务，不存在时返回 null
+     */
+    public VideoJob cancel(String id) {
+        VideoJob job = jobs.get(id);
+        if (job != null && job.cancel()) {
+            log.info("任务已取消：{}", id);
+        }
+        return job;
+    }
+
+    /**
+     * @param id 任务 id，为 null 时生成新的 id
+     * @param range 解密的帧范围，记录在任务信息中；为 null 时不记录任务信息，进程重启后不继续
+     */
+    private VideoJob submit(String id, String type, Workspace workspace, List<Path> inputs, FrameRange range,
+                            JobTask task) {
+        purgeExpired();
+
+        VideoJob job = id == null ? new VideoJob(type, frameScheduler.newJob(), workspace, inputs)
+                : new VideoJob(id, type, frameScheduler.newJob(), workspace, inputs);
+        if (chunking && range != null) {
+            saveJob(job, range);
+        }
+        jobs.put(job.getId(), job);
+        try {
+            job.setFuture(executor.submit(() -> run(job, task)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * 记录任务信息，保存失败只影响重启后能否继续，不影响本次执行
+     */
+    private void saveJob(VideoJob job, FrameRange range) {
+        SavedJob saved = new SavedJob();
+        saved.setId(job.getId());
+        saved.setType(job.getType());
+        saved.setInputs(job.getInputs().stream().map(input -> input.getFileName().toString()).toList());
+        saved.setStart(range.getStart());
+        saved.setEnd(range.getEnd());
+        saved.setStride(range.getStride());
+        try {
+            objectMapper.writeValue(job.getWorkspace().resolve(JOB_FILE).toFile(), saved);
+        } catch (IOException e) {
+            log.warn("无法保存任务参数：{}", job.getId(), e);
+        }
+    }
+
+    private void run(VideoJob job, JobTask task) {
+        try {
+            if (!job.markRunning()) {
+                return;
+            }
+            job.succeed(task.run(job.getFrameJob()));
+        } catch (CancellationException e) {
+            job.cancel();
+        } catch (Exception e) {
+            log.error("任务失败：{}", job.getId(), e);
+            job.fail(e);
+        } finally {
+            // 成功时只删除输入，保留结果直到任务过期；失败或取消时删除整个工作目录
+            // 进程关闭导致的取消保留工作目录，分段任务在下次启动后继续
+            if (job.getState() == VideoJob.State.SUCCEEDED) {
+                deleteFiles(job.getInputs());
+                deleteFiles(List.of(job.getWorkspace().resolve(JOB_FILE)));
+            } else if (!(shuttingDown && chunking)) {
+                closeWorkspace(job);
+            }
+        }
+    }
+
+    /**
+     * 清理超过保留时长的已结束任务及其结果文件
+     */
+    private void purgeExpired() {
+        Instant expiry = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            if (!job.isFinished() || job.getFinishedAt().isAfter(expiry)) {
+                return false;
+            }
+            closeWorkspace(job);
+            return true;
+        });
+    }
+
+    private static void closeWorkspace(VideoJob job) {
+        try {
+            job.getWorkspace().close();
+        } catch (IOException e) {
+            log.warn("任务工作目录无法删除：{}", job.getId(), e);
+        }
+    }
+
+    private static void deleteFiles(List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("文件无法删除：{}", file, e);
+            }
+        }
+    }
+
+    /**
+     * @return 正在执行的任务数
+     */
+    public int getRunningCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return 排队等待执行的任务数
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        jobs.values().forEach(VideoJob::cancel);
+        executor.shutdownNow();
+    }
+}
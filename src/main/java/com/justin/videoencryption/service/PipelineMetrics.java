@@ -0,0 +1,137 @@
+package com.justin.videoencryption.service;
+
+import com.justin.videoencryption.util.FfmpegProcess;
+import com.justin.videoencryption.util.FrameArena;
+import com.justin.videoencryption.util.FrameMetrics;
+import com.justin.videoencryption.util.FramePipeline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把帧处理的指标注册到 Micrometer，通过 Actuator 的 /actuator/metrics 和 /actuator/prometheus 查看：
+ * 各阶段耗时（video.stage，按 stage 标签区分）、写出与失败的帧数、在途任务、在途帧、帧槽内存，
+ * 帧内存的预留、复用和泄漏，以及原视频帧缓存和分段分发各节点的统计
+ * 帧内存的指标引用 FrameArena.shared()，需要在 FrameResourceConfig 设置上限之后注册
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@Component
+@DependsOn("frameResourceConfig")
+public class PipelineMetrics implements FrameMetrics.Recorder {
+
+    private final Map<FrameMetrics.Stage, Timer> stageTimers = new EnumMap<>(FrameMetrics.Stage.class);
+
+    private final Counter framesProcessed;
+
+    private final Counter framesFailed;
+
+    public PipelineMetrics(MeterRegistry registry, FrameScheduler frameScheduler, JobService jobService,
+                           InputCacheService inputCacheService, ClusterService clusterService) {
+        for (FrameMetrics.Stage stage : FrameMetrics.Stage.values()) {
+            stageTimers.put(stage, Timer.builder("video.stage")
+                    .description("帧处理各阶段的耗时，解码、缩放、LSB、编码按帧记录")
+                    .tag("stage", stage.getTag())
+                    .register(registry));
+        }
+        framesProcessed = Counter.builder("video.frames.processed")
+                .description("管线写出的帧数").register(registry);
+        framesFailed = Counter.builder("video.frames.failed")
+                .description("读取、处理或写出失败的帧数").register(registry);
+
+        Gauge.builder("video.jobs.running", jobService, JobService::getRunningCount)
+                .description("正在执行的异步任务数").register(registry);
+        Gauge.builder("video.jobs.queued", jobService, JobService::getQueuedCount)
+                .description("排队等待执行的异步任务数").register(registry);
+        Gauge.builder("video.pipelines.active", FramePipeline::activeRuns)
+                .description("正在运行的帧管线数，含同步请求").register(registry);
+        Gauge.builder("video.frames.in.flight", FramePipeline::framesInFlight)
+                .description("已读取但尚未写出的帧数").register(registry);
+        Gauge.builder("video.frames.waiting", FramePipeline::framesWaiting)
+                .description("已处理完、在等待前面的帧写出的帧数").register(registry);
+        Gauge.builder("video.frames.buffer", FramePipeline::bufferedBytes)
+                .description("帧管线的帧槽占用的内存").baseUnit("bytes").register(registry);
+        Gauge.builder("video.executor.queued", frameScheduler, FrameScheduler::getQueuedTasks)
+                .description("帧处理线程池中排队的任务数").register(registry);
+        Gauge.builder("video.executor.active", frameScheduler, FrameScheduler::getActiveThreads)
+                .description("正在处理帧的线程数").register(registry);
+        Gauge.builder("video.ffmpeg.processes", FfmpegProcess::running)
+                .description("FFmpeg 进程数，按状态区分运行中和等待名额").tag("state", "running").register(registry);
+        Gauge.builder("video.ffmpeg.processes", FfmpegProcess::waiting)
+                .description("FFmpeg 进程数，按状态区分运行中和等待名额").tag("state", "waiting").register(registry);
+
+        // FrameScheduler 创建时已经按配置设置好共享的帧内存
+        FrameArena arena = FrameArena.shared();
+        Gauge.builder("video.frames.memory", arena, FrameArena::getReservedBytes)
+                .description("帧内存，按状态区分已预留、使用中和池中空闲").tag("state", "reserved")
+                .baseUnit("bytes").register(registry);
+        Gauge.builder("video.frames.memory", arena, FrameArena::getLeasedBytes)
+                .description("帧内存，按状态区分已预留、使用中和池中空闲").tag("state", "leased")
+                .baseUnit("bytes").register(registry);
+        Gauge.builder("video.frames.memory", arena, FrameArena::getPooledBytes)
+                .description("帧内存，按状态区分已预留、使用中和池中空闲").tag("state", "pooled")
+                .baseUnit("bytes").register(registry);
+        FunctionCounter.builder("video.frames.allocations", arena, FrameArena::getAllocations)
+                .tag("result", "allocated").register(registry);
+        FunctionCounter.builder("video.frames.allocations", arena, FrameArena::getReuses)
+                .tag("result", "reused").register(registry);
+        FunctionCounter.builder("video.frames.memory.waits", arena, FrameArena::getWaits)
+                .description("需要等待其他请求归还帧内存的次数").register(registry);
+        FunctionCounter.builder("video.frames.leaks", arena, FrameArena::getLeaks)
+                .description("借出后没有归还就被 GC 回收的帧数").register(registry);
+
+        if (inputCacheService.isEnabled()) {
+            FunctionCounter.builder("video.cache.requests", inputCacheService, InputCacheService::getHits)
+                    .tag("result", "hit").register(registry);
+            FunctionCounter.builder("video.cache.requests", inputCacheService, InputCacheService::getMisses)
+                    .tag("result", "miss").register(registry);
+            FunctionCounter.builder("video.cache.evictions", inputCacheService, InputCacheService::getEvictions)
+                    .register(registry);
+            Gauge.builder("video.cache.size", inputCacheService, cache -> cache.getStats().getSize())
+                    .baseUnit("bytes").register(registry);
+        }
+
+        for (ClusterService.Node node : clusterService.getNodes()) {
+            FunctionCounter.builder("video.cluster.chunks", node, ClusterService.Node::getChunks)
+                    .tag("node", node.getUrl()).register(registry);
+            FunctionCounter.builder("video.cluster.frames", node, ClusterService.Node::getFrames)
+                    .tag("node", node.getUrl()).register(registry);
+            FunctionCounter.builder("video.cluster.failures", node, ClusterService.Node::getFailures)
+                    .tag("node", node.getUrl()).register(registry);
+            Gauge.builder("video.cluster.fps", node, ClusterService.Node::getFps)
+                    .tag("node", node.getUrl()).register(registry);
+        }
+
+        FrameMetrics.setRecorder(this);
+    }
+
+    @Override
+    public void record(FrameMetrics.Stage stage, long nanos) {
+        stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void framesProcessed(long count) {
+        framesProcessed.increment(count);
+    }
+
+    @Override
+    public void framesFailed(long count) {
+        framesFailed.increment(count);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        FrameMetrics.setRecorder(null);
+    }
+}
@@ -0,0 +1,187 @@
+package com.justin.videoencryption.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.justin.videoencryption.util.FrameJob;
+import com.justin.videoencryption.util.Workspace;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+/**
+ * 异步加密/解密任务的状态，序列化后作为任务查询接口的返回值
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class VideoJob {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    private final String id;
+
+    private final String type;
+
+    private final FrameJob frameJob;
+
+    private final Workspace workspace;
+
+    private final List<Path> inputs;
+
+    private final Instant createdAt = Instant.now();
+
+    private volatile State state = State.QUEUED;
+
+    private volatile Instant startedAt;
+
+    private volatile Instant finishedAt;
+
+    private volatile String error;
+
+    private volatile Path resultPath;
+
+    private volatile Future<?> future;
+
+    public VideoJob(String type, FrameJob frameJob, Workspace workspace, List<Path> inputs) {
+        this(UUID.randomUUID().toString(), type, frameJob, workspace, inputs);
+    }
+
+    /**
+     * @param id 任务 id，进程重启后继续未完成的任务时沿用原来的 id
+     */
+    public VideoJob(String id, String type, FrameJob frameJob, Workspace workspace, List<Path> inputs) {
+        this.id = id;
+        this.type = type;
+        this.frameJob = frameJob;
+        this.workspace = workspace;
+        this.inputs = inputs;
+    }
+
+    /**
+     * 排队结束开始运行，任务已被取消时返回 false
+     */
+    synchronized boolean markRunning() {
+        if (state != State.QUEUED) {
+            return false;
+        }
+        state = State.RUNNING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    synchronized void succeed(Path resultPath) {
+        this.resultPath = resultPath;
+        finish(State.SUCCEEDED);
+    }
+
+    synchronized void fail(Throwable e) {
+        this.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        finish(State.FAILED);
+    }
+
+    /**
+     * 取消任务，已结束的任务不受影响
+     * @return 任务原本尚未结束时返回 true
+     */
+    synchronized boolean cancel() {
+        if (isFinished()) {
+            return false;
+        }
+        frameJob.cancel();
+        if (future != null) {
+            future.cancel(false);
+        }
+        finish(State.CANCELLED);
+        return true;
+    }
+
+    private void finish(State finalState) {
+        if (!isFinished()) {
+            state = finalState;
+            finishedAt = Instant.now();
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getFramesProcessed() {
+        return frameJob.getProcessedFrames();
+    }
+
+    /**
+     * @return 预计总帧数，未知时为 -1
+     */
+    public long getTotalFrames() {
+        return frameJob.getTotalFrames();
+    }
+
+    public double getFps() {
+        return state == State.RUNNING ? frameJob.getFps() : 0;
+    }
+
+    /**
+     * @return 预计剩余秒数，无法估算时为 -1
+     */
+    public long getEtaSeconds() {
+        return state == State.RUNNING ? frameJob.getEtaSeconds() : -1;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return state == State.SUCCEEDED || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    @JsonIgnore
+    public FrameJob getFrameJob() {
+        return frameJob;
+    }
+
+    @JsonIgnore
+    public Workspace getWorkspace() {
+        return workspace;
+    }
+
+    @JsonIgnore
+    public List<Path> getInputs() {
+        return inputs;
+    }
+
+    @JsonIgnore
+    public Path getResultPath() {
+        return resultPath;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+}
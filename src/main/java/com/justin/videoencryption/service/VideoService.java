@@ -1,161 +1,794 @@
 package com.justin.videoencryption.service;
 
+import com.justin.videoencryption.config.VideoProperties;
 import com.justin.videoencryption.util.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Resource;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.videoio.VideoCapture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.Duration;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 
 @Service
 public class VideoService {
 
+    private static final Logger log = LoggerFactory.getLogger(VideoService.class);
+
     static {
         // 加载OpenCV库
         System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
     }
 
-    // 视频加密逻辑
-    public byte[] encryptVideos(MultipartFile originalVideo, MultipartFile secretVideo)
-            throws IOException {
+    @Resource
+    private VideoProperties properties;
 
-        // 自定义保存音频的文件夹
-        String audioDirectory = "F:\\audios\\";
+    @Resource
+    private ClusterService clusterService;
 
-        // 将原视频文件转换为帧
-        List<Mat> originalFrames = VideoUtil.getFrames(originalVideo);
+    @Resource
+    private InputCacheService inputCacheService;
 
-        // 提取原视频的音频
-        String originalAudioFileName = "original_audio_";
-        String originalAudioType = ".mp3";
-        String originalAudioPath = VideoUtil.generateUniqueFileName(audioDirectory,
-                originalAudioFileName,
-                originalAudioType);
+    @Resource
+    private MeterRegistry meterRegistry;
 
-        AudioUtil.extractAudioFromVideo(originalAudioPath);
+    // 视频加密逻辑，上传的视频保存到任务工作目录，返回的加密视频也在工作目录中
+    public Path encryptVideos(MultipartFile originalVideo, MultipartFile secretVideo,
+                              Workspace workspace, FrameJob job)
+            throws IOException {
 
-        // 删除临时目录里的文件
-        String customTempDir = "F:\\my_custom_temp_dir";
-        FileUtil.deleteFilesInDirectory(customTempDir);
+        // 保存上传的视频，帧解码和 FFmpeg 读取音轨共用同一个文件
+        Path originalVideoPath = workspace.spool(originalVideo, "original_video.mp4");
+        Path secretVideoPath = workspace.spool(secretVideo,
+                "secret_video." + FileUtil.extension(secretVideo.getOriginalFilename(), "mp4"));
 
-        // 将涉密视频转换为帧
-        List<Mat> secretFrames = VideoUtil.getFrames(secretVideo);
+        return encryptVideos(originalVideoPath, secretVideoPath, workspace, job);
+    }
 
-        // 提取涉密视频的音频
-        String secretAudioFileName = "secret_audio_";
-        String secretAudioType = ".mp3";
-        String secretAudioPath = VideoUtil.generateUniqueFileName(audioDirectory,
-                                                                    secretAudioFileName,
-                                                                    secretAudioType);
-        AudioUtil.extractAudioFromVideo(secretAudioPath);
+    /**
+     * 加密已保存到本地的视频，中间文件和结果都写入工作目录
+     * @param originalVideoPath 原视频
+     * @param secretVideoPath 涉密视频
+     * @param workspace 任务工作目录
+     * @param job 帧处理任务
+     * @return 加密后的有声视频
+     * @throws IOException
+     */
+    public Path encryptVideos(Path originalVideoPath, Path secretVideoPath, Workspace workspace, FrameJob job)
+            throws IOException {
 
-        // 删除临时目录里的文件
-        FileUtil.deleteFilesInDirectory(customTempDir);
+        // 生成加密后有声视频文件路径，扩展名取决于输出编码
+        OutputCodec codec = properties.getOutput().getCodec();
+        Path outputVideoPath = workspace.resolve("final_encrypted_video." + codec.getExtension());
 
         // 获取开始加密的时间
-        LocalDateTime startTime = LocalDateTime.now();
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            if (!properties.getChunking().isEnabled()
+                    || !encryptVideosChunked(originalVideoPath, secretVideoPath, outputVideoPath, workspace, job)) {
+                encryptVideo(originalVideoPath, secretVideoPath, outputVideoPath, job);
+            }
+            success = true;
+        } finally {
+            //计算加密所用时间
+            double seconds = recordRequest("encrypt", startNanos, success);
+            log.info("此次加密所用时间为：{}秒", String.format("%.3f", seconds));
+        }
+        log.info("视频生成成功！");
 
-        // 使用并行加密每一帧
-        List<Mat> encryptedFrames = EncryptUtil.encryptFramesWithLSB(originalFrames, secretFrames);
+        return outputVideoPath;
+
+    }
+
+    /**
+     * 整段加密一对视频，写出到指定的路径并校验
+     */
+    private void encryptVideo(Path originalVideoPath, Path secretVideoPath, Path outputVideoPath, FrameJob job)
+            throws IOException {
+        OutputCodec codec = properties.getOutput().getCodec();
+
+        // 边解码边并行加密，加密帧直接交给 FFmpeg，与原视频和涉密视频的音轨一次合成有声视频
+        long frameCount;
+        PayloadVerifier verifier;
+        VideoCapture originalCapture = null;
+        VideoCapture secretCapture = null;
+        try {
+            originalCapture = VideoUtil.openCapture(originalVideoPath);
+            secretCapture = VideoUtil.openCapture(secretVideoPath);
+            VideoInfo originalInfo = VideoInfo.of(originalCapture);
+            VideoInfo secretInfo = VideoInfo.of(secretCapture);
+            log.info("原视频: {}，涉密视频: {}", originalInfo, secretInfo);
+
+            FrameAlignment alignment = properties.getAlignment();
+            LsbLayout layout = layout(secretVideoPath, originalInfo, secretInfo);
+            log.info("嵌入参数: {}", layout);
+
+            // 打包嵌入时涉密文件原样嵌入（自带音轨），输出帧数与原视频相同，只合成原视频的音轨
+            boolean packed = layout.getMode() == EmbeddingMode.PACKED;
+            long totalFrames = packed ? originalInfo.getFrameCount()
+                    : expectedFrameCount(originalInfo, secretInfo, alignment);
+            job.start(totalFrames);
+            List<Path> audioInputs = packed ? List.of(originalVideoPath) : List.of(originalVideoPath, secretVideoPath);
+
+            // 输出沿用原视频的帧率，音轨与画面保持同步；写出时记录抽样帧的嵌入数据，编码完成后解码比对
+            verifier = new PayloadVerifier(
+                    new FfmpegSink(outputVideoPath, originalInfo.getFps(), audioInputs, codec),
+                    totalFrames, properties.getOutput().getVerifySamples(), layout.payloadMask());
+            // 开启中转时处理线程把加密帧直接写入中转文件，编码线程按顺序读出交给 FFmpeg
+            FrameSink output = properties.getOutput().isSpool()
+                    ? spool(outputVideoPath, verifier, totalFrames, job)
+                    : verifier;
+            try (FrameSink sink = output) {
+                if (packed) {
+                    frameCount = EncryptUtil.embedPayload(originalCapture, secretVideoPath, layout, sink, job);
+                } else {
+                    // 同一个原视频再次加密时直接读取缓存的原始帧
+                    try (FrameStream originalStream = inputCacheService.originalFrames(originalVideoPath,
+                            originalCapture, originalInfo)) {
+                        frameCount = EncryptUtil.encryptFramesWithLSB(originalStream, originalInfo, secretCapture,
+                                alignment, secretScaling(), layout, sink, job);
+                    }
+                }
+            }
+        } finally {
+            if (originalCapture != null) {
+                originalCapture.release();
+            }
+            if (secretCapture != null) {
+                secretCapture.release();
+            }
+        }
 
         // 判断是否加密成功
-        if (encryptedFrames.isEmpty()) {
-            System.out.println("没有视频帧数据！");
+        if (frameCount == 0) {
+            log.warn("没有视频帧数据！");
+            throw new IOException("没有视频帧数据！");
         } else {
-            System.out.println("帧数: " + encryptedFrames.size());
+            log.info("帧数: {}", frameCount);
+        }
+
+        if (properties.getOutput().getVerifySamples() > 0) {
+            verifier.verify(outputVideoPath);
+        }
+    }
+
+    /**
+     * 批量加密：一个原视频嵌入多个涉密视频，或一个涉密视频分别嵌入多个原视频，结果打包为一个 zip
+     * 共用的视频只上传、保存一次；逐像素嵌入且原视频只有一个时，原视频只解码一遍，各涉密视频在同一条管线中加密
+     * @param originalVideos 原视频
+     * @param secretVideos 涉密视频，与原视频至少有一方只有一个
+     * @param workspace 任务工作目录
+     * @param job 帧处理任务
+     * @return zip 文件，条目按上传顺序命名为 encrypted_video_1、encrypted_video_2……
+     * @throws IllegalArgumentException 数量不符合要求
+     */
+    public Path encryptBatch(MultipartFile[] originalVideos, MultipartFile[] secretVideos,
+                             Workspace workspace, FrameJob job) throws IOException {
+        checkBatch(originalVideos.length, secretVideos.length);
+        List<Path> originalVideoPaths = new ArrayList<>();
+        for (int i = 0; i < originalVideos.length; i++) {
+            originalVideoPaths.add(workspace.spool(originalVideos[i], "original_video_" + (i + 1) + ".mp4"));
+        }
+        List<Path> secretVideoPaths = new ArrayList<>();
+        for (int i = 0; i < secretVideos.length; i++) {
+            secretVideoPaths.add(workspace.spool(secretVideos[i], "secret_video_" + (i + 1) + "."
+                    + FileUtil.extension(secretVideos[i].getOriginalFilename(), "mp4")));
+        }
+        return encryptBatch(originalVideoPaths, secretVideoPaths, workspace, job);
+    }
+
+    /**
+     * 批量加密已保存到本地的视频
+     * @see #encryptBatch(MultipartFile[], MultipartFile[], Workspace, FrameJob)
+     */
+    public Path encryptBatch(List<Path> originalVideoPaths, List<Path> secretVideoPaths, Workspace workspace,
+                             FrameJob job) throws IOException {
+        checkBatch(originalVideoPaths.size(), secretVideoPaths.size());
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        OutputCodec codec = properties.getOutput().getCodec();
+        int count = Math.max(originalVideoPaths.size(), secretVideoPaths.size());
+        try {
+            List<Path> outputs = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                outputs.add(workspace.resolve("encrypted_video_" + (i + 1) + "." + codec.getExtension()));
+            }
+
+            if (originalVideoPaths.size() == 1 && count > 1
+                    && properties.getEmbedding().getMode() == EmbeddingMode.PIXEL) {
+                encryptSharedOriginal(originalVideoPaths.get(0), secretVideoPaths, outputs, job);
+            } else {
+                // 打包嵌入不解码涉密文件，多个原视频的尺寸和帧率各不相同，逐个加密，共用的文件只保存了一次
+                for (int i = 0; i < count; i++) {
+                    encryptVideo(originalVideoPaths.get(originalVideoPaths.size() == 1 ? 0 : i),
+                            secretVideoPaths.get(secretVideoPaths.size() == 1 ? 0 : i), outputs.get(i), job);
+                }
+            }
+
+            Path archive = workspace.resolve("encrypted_videos.zip");
+            FileUtil.zip(outputs, archive);
+            for (Path output : outputs) {
+                Files.deleteIfExists(output);
+            }
+            success = true;
+            return archive;
+        } finally {
+            double seconds = recordRequest("batch", startNanos, success);
+            log.info("此次批量加密 {} 个视频所用时间为：{}秒", count, String.format("%.3f", seconds));
+        }
+    }
+
+    /**
+     * 检查批量加密的视频数量
+     * @throws IllegalArgumentException 两方都有多个视频、有一方为空，或超过 video.batch.max-items、video.ffmpeg.max-processes
+     */
+    public void checkBatch(int originalCount, int secretCount) {
+        int maxItems = properties.getBatch().getMaxItems();
+        if (originalCount == 0 || secretCount == 0 || (originalCount > 1 && secretCount > 1)) {
+            throw new IllegalArgumentException("批量加密需要一个原视频和多个涉密视频，或多个原视频和一个涉密视频");
+        }
+        if (Math.max(originalCount, secretCount) > maxItems) {
+            throw new IllegalArgumentException("批量加密最多 " + maxItems + " 个视频");
+        }
+        // 原视频只解码一遍时所有输出同时编码，每个输出占用一个 FFmpeg 进程名额
+        int maxProcesses = FfmpegProcess.getMaxProcesses();
+        if (originalCount == 1 && properties.getEmbedding().getMode() == EmbeddingMode.PIXEL
+                && secretCount > maxProcesses) {
+            throw new IllegalArgumentException("同一个原视频批量加密最多 " + maxProcesses
+                    + " 个涉密视频（video.ffmpeg.max-processes）");
+        }
+    }
+
+    /**
+     * 同一个原视频逐像素嵌入多个涉密视频，原视频只解码一遍；各输出分别合成原视频和各自涉密视频的音轨并校验
+     */
+    private void encryptSharedOriginal(Path originalVideoPath, List<Path> secretVideoPaths, List<Path> outputs,
+                                       FrameJob job) throws IOException {
+        OutputCodec codec = properties.getOutput().getCodec();
+        FrameAlignment alignment = properties.getAlignment();
+        int verifySamples = properties.getOutput().getVerifySamples();
+        List<PayloadVerifier> verifiers = new ArrayList<>();
+        long[] frameCounts;
+        VideoCapture originalCapture = null;
+        List<VideoCapture> secretCaptures = new ArrayList<>();
+        FfmpegProcess.Slots ffmpegSlots = null;
+        try {
+            // 各输出的 FFmpeg 进程同时运行，一次预留全部名额，避免两个批次各占一部分后互相等待
+            ffmpegSlots = FfmpegProcess.reserve(secretVideoPaths.size());
+            originalCapture = VideoUtil.openCapture(originalVideoPath);
+            VideoInfo originalInfo = VideoInfo.of(originalCapture);
+            log.info("原视频: {}，涉密视频数: {}", originalInfo, secretVideoPaths.size());
+
+            List<LsbLayout> layouts = new ArrayList<>();
+            long totalFrames = 0;
+            for (int i = 0; i < secretVideoPaths.size(); i++) {
+                Path secretVideoPath = secretVideoPaths.get(i);
+                VideoCapture secretCapture = VideoUtil.openCapture(secretVideoPath);
+                secretCaptures.add(secretCapture);
+                VideoInfo secretInfo = VideoInfo.of(secretCapture);
+                LsbLayout layout = layout(secretVideoPath, originalInfo, secretInfo);
+                layouts.add(layout);
+                log.info("涉密视频 {}: {}，嵌入参数: {}", i + 1, secretInfo, layout);
+
+                // 进度按管线的帧数计算，即各输出帧数的最大值
+                long expected = expectedFrameCount(originalInfo, secretInfo, alignment);
+                totalFrames = expected < 0 || totalFrames < 0 ? -1 : Math.max(totalFrames, expected);
+                verifiers.add(new PayloadVerifier(
+                        new FfmpegSink(outputs.get(i), originalInfo.getFps(),
+                                List.of(originalVideoPath, secretVideoPath), codec, ffmpegSlots),
+                        expected, verifySamples, layout.payloadMask()));
+            }
+            job.start(totalFrames);
+
+            IOException closeError = null;
+            try (FrameStream originalStream = inputCacheService.originalFrames(originalVideoPath,
+                    originalCapture, originalInfo)) {
+                frameCounts = EncryptUtil.encryptBatchWithLSB(originalStream, originalInfo, secretCaptures,
+                        alignment, secretScaling(), layouts, new ArrayList<>(verifiers), job);
+            } finally {
+                // 所有输出端都要关闭，等待各自的 FFmpeg 进程退出
+                for (PayloadVerifier verifier : verifiers) {
+                    try {
+                        verifier.close();
+                    } catch (IOException e) {
+                        closeError = closeError == null ? e : closeError;
+                    }
+                }
+            }
+            if (closeError != null) {
+                throw closeError;
+            }
+        } finally {
+            if (originalCapture != null) {
+                originalCapture.release();
+            }
+            for (VideoCapture secretCapture : secretCaptures) {
+                secretCapture.release();
+            }
+            // 输出端都已关闭，各进程已经退出
+            if (ffmpegSlots != null) {
+                ffmpegSlots.close();
+            }
+        }
+
+        for (int i = 0; i < outputs.size(); i++) {
+            if (frameCounts[i] == 0) {
+                log.warn("没有视频帧数据！");
+                throw new IOException("第 " + (i + 1) + " 个涉密视频没有视频帧数据！");
+            }
+            log.info("第 {} 个视频帧数: {}", i + 1, frameCounts[i]);
+            if (verifySamples > 0) {
+                verifiers.get(i).verify(outputs.get(i));
+            }
+        }
+    }
+
+    /**
+     * 分段加密：输出按 video.chunking.chunk-frames 切分，各段分别编码为无声分段并校验，
+     * 进度记录在工作目录的清单中，已完成的段不再处理；最后拼接分段并合成音轨
+     * @return 视频没有记录帧数、无法分段时返回 false，由调用方整段加密
+     */
+    private boolean encryptVideosChunked(Path originalVideoPath, Path secretVideoPath, Path outputVideoPath,
+                                         Workspace workspace, FrameJob job) throws IOException {
+        VideoInfo originalInfo;
+        VideoInfo secretInfo;
+        VideoCapture originalCapture = null;
+        VideoCapture secretCapture = null;
+        try {
+            originalCapture = VideoUtil.openCapture(originalVideoPath);
+            secretCapture = VideoUtil.openCapture(secretVideoPath);
+            originalInfo = VideoInfo.of(originalCapture);
+            secretInfo = VideoInfo.of(secretCapture);
+        } finally {
+            if (originalCapture != null) {
+                originalCapture.release();
+            }
+            if (secretCapture != null) {
+                secretCapture.release();
+            }
+        }
+
+        LsbLayout layout = layout(secretVideoPath, originalInfo, secretInfo);
+        boolean packed = layout.getMode() == EmbeddingMode.PACKED;
+        FrameAlignment alignment = properties.getAlignment();
+        if (originalInfo.getFrameCount() <= 0 || (!packed && secretInfo.getFrameCount() <= 0)) {
+            log.info("视频没有记录帧数，不能分段，改为整段加密");
+            return false;
+        }
+        if (packed) {
+            EncryptUtil.checkCapacity(originalInfo, layout);
+        }
+        long totalFrames = packed ? originalInfo.getFrameCount()
+                : expectedFrameCount(originalInfo, secretInfo, alignment);
+        log.info("原视频: {}，涉密视频: {}，嵌入参数: {}", originalInfo, secretInfo, layout);
+
+        OutputCodec codec = properties.getOutput().getCodec();
+        ChunkManifest manifest = loadManifest(workspace, ChunkManifest.create("encrypt", codec.name(),
+                layout + " " + alignment, originalInfo, totalFrames,
+                properties.getChunking().getChunkFrames(), codec.getExtension()));
+
+        // 每段单独校验，抽样帧数按段的长度分配，校验通过后才记为完成
+        int verifySamples = properties.getOutput().getVerifySamples();
+        List<Path> inputs = List.of(originalVideoPath, secretVideoPath);
+        List<Path> segments = runChunks(manifest, workspace, inputs, chunk -> {
+            ChunkSpec spec = chunkSpec("encrypt", inputs, chunk, originalInfo.getFps(), layout);
+            spec.setAlignment(alignment);
+            spec.setInterpolation(properties.getScaling().getInterpolation());
+            spec.setCodec(codec);
+            spec.setVerifySamples(verifySamples <= 0 ? 0
+                    : (int) Math.ceil((double) verifySamples * chunk.getFrameCount() / totalFrames));
+            return spec;
+        }, job);
+        if (segments.isEmpty()) {
+            log.warn("没有视频帧数据！");
+            throw new IOException("没有视频帧数据！");
+        }
+
+        // 打包嵌入时只合成原视频的音轨，与整段加密相同
+        List<Path> audioInputs = packed ? List.of(originalVideoPath) : List.of(originalVideoPath, secretVideoPath);
+        FfmpegSink.concat(segments, audioInputs, outputVideoPath);
+        long frameCount = manifest.getChunks().stream().mapToLong(ChunkManifest.Chunk::getFramesWritten).sum();
+        log.info("帧数: {}，分段数: {}", frameCount, segments.size());
+        deleteSegments(workspace, manifest);
+        return true;
+    }
+
+    /**
+     * 处理清单中未完成的段：配置了 worker 节点时分发到各节点，否则在本机处理
+     * @param specs 按段生成处理参数
+     * @return 按顺序排列的分段文件
+     */
+    private List<Path> runChunks(ChunkManifest manifest, Workspace workspace, List<Path> inputs,
+                                 Function<ChunkManifest.Chunk, ChunkSpec> specs, FrameJob job) throws IOException {
+        VideoProperties.Chunking chunking = properties.getChunking();
+        if (!clusterService.isEnabled()) {
+            return ChunkRunner.run(manifest, workspace.getDirectory(), chunking.getParallelChunks(),
+                    chunking.getMaxAttempts(),
+                    (chunk, segment) -> processChunk(specs.apply(chunk), inputs, segment, job), job);
+        }
+
+        String session = clusterService.session(workspace);
+        try {
+            return ChunkRunner.run(manifest, workspace.getDirectory(), clusterService.getSlots(),
+                    chunking.getMaxAttempts(), (chunk, segment) -> {
+                        ChunkSpec spec = specs.apply(chunk);
+                        return clusterService.runChunk(session, spec, inputs, segment, job,
+                                () -> processChunk(spec, inputs, segment, job));
+                    }, job);
+        } finally {
+            clusterService.release(session);
         }
+    }
 
-        // 获取加密完成的时间
-        LocalDateTime endTime = LocalDateTime.now();
+    private static ChunkSpec chunkSpec(String type, List<Path> inputs, ChunkManifest.Chunk chunk, double fps,
+                                       LsbLayout layout) {
+        ChunkSpec spec = new ChunkSpec();
+        spec.setType(type);
+        spec.setInputs(inputs.stream().map(input -> input.getFileName().toString()).toList());
+        spec.setFirstFrame(chunk.getFirstFrame());
+        spec.setFrameCount(chunk.getFrameCount());
+        spec.setFps(fps);
+        spec.encodeLayout(layout);
+        return spec;
+    }
 
-        //计算加密所用时间
-        Duration duration = Duration.between(startTime, endTime);
-        System.out.println("此次加密所用时间为：" + duration.getSeconds() + "秒");
+    /**
+     * 处理一段，写出一个无声分段；本机分段处理和 worker 节点都调用这里
+     * 加密分段用 FfmpegSink 按 spec 的编码写出并校验抽样帧，解密分段用 VideoWriter 写出
+     * @param spec 处理参数
+     * @param inputs 输入文件，与 spec.getInputs() 顺序一致
+     * @param segment 分段文件
+     * @param job 帧处理任务
+     * @return 写出的帧数
+     * @throws IOException
+     */
+    public long processChunk(ChunkSpec spec, List<Path> inputs, Path segment, FrameJob job) throws IOException {
+        LsbLayout layout = spec.layout();
+        if ("decrypt".equals(spec.getType())) {
+            VideoCapture capture = VideoUtil.openCapture(inputs.get(0));
+            FrameRange range = FrameRange.of(spec.getFirstFrame(), spec.getFirstFrame() + spec.getFrameCount(), 1);
+            try (FrameSink sink = new VideoWriterSink(segment.toString(), spec.getFps())) {
+                return DecryptUtil.decryptFramesWithLSB(capture, layout, range, sink, job);
+            } finally {
+                capture.release();
+            }
+        }
 
-        // 生成加密后无声视频文件路径
-        String encryptedDirectory = "F:\\encrypted_videos\\";
-        String encryptedVideoFileName = "encrypted_audio_";
-        String encryptedVideoType = ".mp4";
-        String outputVideoPath = VideoUtil.generateUniqueFileName(encryptedDirectory,
-                                                                    encryptedVideoFileName,
-                                                                    encryptedVideoType);
+        VideoCapture originalCapture = null;
+        VideoCapture secretCapture = null;
+        try {
+            originalCapture = VideoUtil.openCapture(inputs.get(0));
+            PayloadVerifier verifier = new PayloadVerifier(
+                    new FfmpegSink(segment, spec.getFps(), List.of(), spec.getCodec()),
+                    spec.getFrameCount(), spec.getVerifySamples(), layout.payloadMask());
+            FrameSink output = properties.getOutput().isSpool()
+                    ? spool(segment, verifier, spec.getFrameCount(), job)
+                    : verifier;
+            long frames;
+            try (FrameSink sink = output) {
+                if (layout.getMode() == EmbeddingMode.PACKED) {
+                    frames = EncryptUtil.embedPayloadChunk(originalCapture, inputs.get(1), layout,
+                            spec.getFirstFrame(), spec.getFrameCount(), sink, job);
+                } else {
+                    secretCapture = VideoUtil.openCapture(inputs.get(1));
+                    SecretScaling scaling = new SecretScaling(spec.getInterpolation(),
+                            properties.getScaling().getCacheMaxSize().toBytes());
+                    frames = EncryptUtil.encryptChunkWithLSB(originalCapture, secretCapture, spec.getAlignment(),
+                            scaling, layout, spec.getFirstFrame(), spec.getFrameCount(), sink, job);
+                }
+            }
+            if (frames > 0 && spec.getVerifySamples() > 0) {
+                verifier.verify(segment);
+            }
+            return frames;
+        } finally {
+            if (originalCapture != null) {
+                originalCapture.release();
+            }
+            if (secretCapture != null) {
+                secretCapture.release();
+            }
+        }
+    }
 
-        // 保存加密后的无声视频
-        VideoUtil.saveVideo(encryptedFrames, outputVideoPath,
-                            encryptedFrames.get(0).rows(), encryptedFrames.get(0).cols());
+    /**
+     * 加密帧经中转文件交给 output，中转文件放在输出文件旁边，大小不超过 video.output.spool-max-size
+     * @param frames 输出的总帧数，中转文件的环不超过这个帧数
+     */
+    private FrameSpool spool(Path outputPath, FrameSink output, long frames, FrameJob job) throws IOException {
+        return new FrameSpool(outputPath.resolveSibling(outputPath.getFileName() + ".frames.raw"), output,
+                properties.getOutput().getSpoolMaxSize().toBytes(), frames, job);
+    }
 
+    /**
+     * 读取工作目录中的清单，参数一致时继续使用，否则删除旧的分段从头开始
+     * @param expected 按当前参数新建的清单
+     */
+    private static ChunkManifest loadManifest(Workspace workspace, ChunkManifest expected) throws IOException {
+        Path manifestPath = workspace.resolve(ChunkManifest.FILE_NAME);
+        ChunkManifest existing = ChunkManifest.load(manifestPath);
+        if (existing != null && existing.matches(expected)) {
+            return existing;
+        }
+        if (existing != null) {
+            log.info("分段清单与当前参数不一致，重新开始");
+            deleteSegments(workspace, existing);
+        }
+        expected.save(manifestPath);
+        return expected;
+    }
 
-        // 生成加密后有声视频文件路径
-        String finalEncryptedDirectory = "F:\\final_encrypted_videos\\";
-        String finalEncryptedVideoFileName = "final_encrypted_audio_";
-        String finalEncryptedVideoType = ".mp4";
-        String finalOutputVideoPath = VideoUtil.generateUniqueFileName(finalEncryptedDirectory,
-                finalEncryptedVideoFileName,
-                finalEncryptedVideoType);
+    /**
+     * 拼接完成后删除分段和清单
+     */
+    private static void deleteSegments(Workspace workspace, ChunkManifest manifest) throws IOException {
+        for (ChunkManifest.Chunk chunk : manifest.getChunks()) {
+            Files.deleteIfExists(workspace.resolve(chunk.getSegment()));
+        }
+        Files.deleteIfExists(workspace.resolve(ChunkManifest.FILE_NAME));
+    }
+
+    /**
+     * 记录一次加密/解密的总耗时，按操作和结果分别统计（video.requests）
+     * @return 耗时（秒）
+     */
+    private double recordRequest(String operation, long startNanos, boolean success) {
+        long nanos = System.nanoTime() - startNanos;
+        Timer.builder("video.requests")
+                .description("加密/解密请求的总耗时，不含上传和下载")
+                .tag("operation", operation)
+                .tag("outcome", success ? "success" : "failure")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        return nanos / 1e9;
+    }
 
-        // 保存加密后的有声视频
-        AudioUtil.mergeVideoAndAudio(outputVideoPath, originalAudioPath, secretAudioPath, finalOutputVideoPath);
+    /**
+     * 按配置生成嵌入参数：打包嵌入时记录涉密文件的大小和扩展名，逐像素嵌入时按两段视频的分辨率确定嵌入区域
+     */
+    private LsbLayout layout(Path secretVideoPath, VideoInfo originalInfo, VideoInfo secretInfo) throws IOException {
+        VideoProperties.Embedding embedding = properties.getEmbedding();
+        if (embedding.getMode() == EmbeddingMode.PACKED) {
+            return LsbLayout.packed(embedding.getChannelBits(), Files.size(secretVideoPath),
+                    FileUtil.extension(secretVideoPath.getFileName().toString(), ""));
+        }
+        return LsbLayout.pixel(embedding.getChannelBits(), embedding.getRegion().place(originalInfo, secretInfo));
+    }
 
-        System.out.println("视频生成成功！");
+    private SecretScaling secretScaling() {
+        VideoProperties.Scaling scaling = properties.getScaling();
+        return new SecretScaling(scaling.getInterpolation(), scaling.getCacheMaxSize().toBytes());
+    }
 
-        // 返回加密后视频的字节数组
-        return Files.readAllBytes(Path.of(finalOutputVideoPath));
+    /**
+     * 估算加密输出的帧数，用于进度显示
+     * 按帧序号对齐时为两段视频帧数的较大值；按时间戳对齐时为两段视频时长的较大值换算成原视频的帧数
+     */
+    private static long expectedFrameCount(VideoInfo originalInfo, VideoInfo secretInfo, FrameAlignment alignment) {
+        if (originalInfo.getFrameCount() < 0 || secretInfo.getFrameCount() < 0) {
+            return -1;
+        }
+        if (alignment == FrameAlignment.INDEX) {
+            return Math.max(originalInfo.getFrameCount(), secretInfo.getFrameCount());
+        }
+        long secretFrames = (long) Math.ceil(secretInfo.getDurationMillis() * originalInfo.getFps() / 1000);
+        return Math.max(originalInfo.getFrameCount(), secretFrames);
+    }
 
+    // 视频解密逻辑，上传的视频保存到任务工作目录，返回的解密视频也在工作目录中
+    public Path decryptVideos(MultipartFile encryptedVideo, Workspace workspace, FrameJob job)
+            throws IOException {
+        return decryptVideos(encryptedVideo, FrameRange.ALL, workspace, job);
     }
 
-    // 视频解密逻辑
-    public byte[] decryptVideos(MultipartFile encryptedVideo)
+    // 只解密选取的帧
+    public Path decryptVideos(MultipartFile encryptedVideo, FrameRange range, Workspace workspace, FrameJob job)
             throws IOException {
 
-        // 将加密视频转换为帧
-        List<Mat> encryptedVideoFrames = VideoUtil.getFrames(encryptedVideo);
+        // 保存加密视频到工作目录
+        Path encryptedVideoPath = workspace.spool(encryptedVideo, "encrypted_video.mp4");
 
-        // 删除临时目录里的文件
-        String customTempDir = "F:\\my_custom_temp_dir";
-        FileUtil.deleteFilesInDirectory(customTempDir);
+        return decryptVideos(encryptedVideoPath, range, workspace, job);
+    }
+
+    /**
+     * 解密已保存到本地的视频，结果写入工作目录
+     * @param encryptedVideoPath 加密视频
+     * @param workspace 任务工作目录
+     * @param job 帧处理任务
+     * @return 解密后的视频
+     * @throws IOException
+     */
+    public Path decryptVideos(Path encryptedVideoPath, Workspace workspace, FrameJob job)
+            throws IOException {
+        return decryptVideos(encryptedVideoPath, FrameRange.ALL, workspace, job);
+    }
+
+    /**
+     * 解密已保存到本地的视频中选取的帧，结果写入工作目录
+     * @param encryptedVideoPath 加密视频
+     * @param range 选取的帧，打包嵌入的视频只支持整段解密
+     * @param workspace 任务工作目录
+     * @param job 帧处理任务
+     * @return 解密后的视频
+     * @throws IOException
+     */
+    public Path decryptVideos(Path encryptedVideoPath, FrameRange range, Workspace workspace, FrameJob job)
+            throws IOException {
 
         // 开始解密
         // 获取开始解密的时间
-        LocalDateTime startTime = LocalDateTime.now();
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        Path outputVideoPath;
+        try {
+            outputVideoPath = decryptVideo(encryptedVideoPath, range, workspace, job);
+            success = true;
+        } finally {
+            // 计算解密时间
+            double seconds = recordRequest("decrypt", startNanos, success);
+            log.info("此次解密所用时间为：{}秒", String.format("%.3f", seconds));
+        }
 
-        List<Mat> decryptFramesWithLSB = DecryptUtil.decryptFramesWithLSB(encryptedVideoFrames);
+        log.info("视频生成成功！");
 
-        //判断是否解密成功
-        if (decryptFramesWithLSB.isEmpty()) {
-            System.out.println("没有视频帧数据！");
-        } else {
-            System.out.println("帧数: " + decryptFramesWithLSB.size());
-        }
+        return outputVideoPath;
 
-        // 获取解密完成的时间
-        LocalDateTime endTime = LocalDateTime.now();
+    }
 
-        // 计算解密时间
-        Duration duration = Duration.between(startTime, endTime);
-        System.out.println("此次解密所用时间为：" + duration.getSeconds() + "秒");
+    /**
+     * 解密选取的帧，写出到工作目录
+     * @return 解密后的视频
+     */
+    private Path decryptVideo(Path encryptedVideoPath, FrameRange range, Workspace workspace, FrameJob job)
+            throws IOException {
+        // 边解码边并行解密边写出解密视频
+        Path outputVideoPath;
+        long frameCount;
+        VideoCapture encryptedCapture = null;
+        try {
+            encryptedCapture = VideoUtil.openCapture(encryptedVideoPath);
+            VideoInfo encryptedInfo = VideoInfo.of(encryptedCapture);
+
+            // 嵌入参数记录在第一帧的头部，没有头部的旧视频按默认参数解密
+            LsbLayout layout = LsbHeader.read(encryptedCapture);
+            log.info("嵌入参数: {}", layout);
+
+            if (layout.getMode() == EmbeddingMode.PACKED) {
+                if (!range.isAll()) {
+                    throw new IllegalArgumentException("打包嵌入的视频不能按帧范围解密");
+                }
+                // 打包嵌入的视频还原出与上传时完全相同的涉密文件，只需读取开头存放数据的帧
+                String extension = layout.getExtension().isEmpty() ? "bin" : layout.getExtension();
+                outputVideoPath = workspace.resolve("decrypted_video." + extension);
+                job.start(layout.framesNeeded(encryptedInfo.getWidth() * encryptedInfo.getHeight() * 3));
+                frameCount = DecryptUtil.extractPayload(encryptedCapture, layout, outputVideoPath, job);
+            } else if (properties.getChunking().isEnabled() && range.isAll() && encryptedInfo.getFrameCount() > 0) {
+                outputVideoPath = workspace.resolve("decrypted_video.mp4");
+                frameCount = decryptVideosChunked(encryptedVideoPath, encryptedInfo, layout, outputVideoPath,
+                        workspace, job);
+            } else {
+                // 生成解密后无声视频文件路径，解密视频沿用加密视频的帧率
+                outputVideoPath = workspace.resolve("decrypted_video.mp4");
+                job.start(range.count(encryptedInfo.getFrameCount()));
+                try (FrameSink sink = new VideoWriterSink(outputVideoPath.toString(), encryptedInfo.getFps())) {
+                    frameCount = DecryptUtil.decryptFramesWithLSB(encryptedCapture, layout, range, sink, job);
+                }
+            }
+        } finally {
+            if (encryptedCapture != null) {
+                encryptedCapture.release();
+            }
+        }
 
-        // 保存解密视频
-        // 生成解密后无声视频文件路径
-        String encryptedDirectory = "F:\\decrypted_videos\\";
-        String encryptedVideoFileName = "decrypted_audio_";
-        String encryptedVideoType = ".mp4";
-        String outputVideoPath = VideoUtil.generateUniqueFileName(encryptedDirectory,
-                encryptedVideoFileName,
-                encryptedVideoType);
+        //判断是否解密成功
+        if (frameCount == 0) {
+            log.warn("没有视频帧数据！");
+            throw new IOException("没有视频帧数据！");
+        } else {
+            log.info("帧数: {}", frameCount);
+        }
 
-        // 保存加密后的无声视频
-        VideoUtil.saveVideo(decryptFramesWithLSB, outputVideoPath,
-                decryptFramesWithLSB.get(0).rows(), decryptFramesWithLSB.get(0).cols());
+        return outputVideoPath;
+    }
 
-        System.out.println("视频生成成功！");
+    /**
+     * 分段解密：每段直接定位到自己的起始帧，解密后写成一个分段，进度记录在清单中，最后拼接
+     * @return 解密的帧数
+     */
+    private long decryptVideosChunked(Path encryptedVideoPath, VideoInfo encryptedInfo, LsbLayout layout,
+                                      Path outputVideoPath, Workspace workspace, FrameJob job) throws IOException {
+        VideoProperties.Chunking chunking = properties.getChunking();
+        ChunkManifest manifest = loadManifest(workspace, ChunkManifest.create("decrypt", "H264", layout.toString(),
+                encryptedInfo, encryptedInfo.getFrameCount(), chunking.getChunkFrames(), "mp4"));
+
+        List<Path> inputs = List.of(encryptedVideoPath);
+        List<Path> segments = runChunks(manifest, workspace, inputs,
+                chunk -> chunkSpec("decrypt", inputs, chunk, encryptedInfo.getFps(), layout), job);
+        if (segments.isEmpty()) {
+            return 0;
+        }
 
-        return Files.readAllBytes(Path.of(outputVideoPath));
+        FfmpegSink.concat(segments, List.of(), outputVideoPath);
+        long frameCount = manifest.getChunks().stream().mapToLong(ChunkManifest.Chunk::getFramesWritten).sum();
+        log.info("分段数: {}", segments.size());
+        deleteSegments(workspace, manifest);
+        return frameCount;
+    }
 
+    /**
+     * 预览：只解密选取的几帧，拼成一张 PNG 预览图，用来快速确认加密视频能否正确解密
+     * @param encryptedVideo 加密视频
+     * @param count range 为 null 时在整段视频中均匀选取的帧数
+     * @param range 选取的帧，为 null 时按 count 均匀选取
+     * @param thumbnailWidth 每张缩略图的宽度
+     * @param workspace 任务工作目录
+     * @param job 帧处理任务
+     * @return PNG 图片
+     * @throws IOException
+     */
+    public byte[] previewVideo(MultipartFile encryptedVideo, int count, FrameRange range, int thumbnailWidth,
+                               Workspace workspace, FrameJob job) throws IOException {
+        Path encryptedVideoPath = workspace.spool(encryptedVideo, "encrypted_video.mp4");
+
+        List<Mat> frames = new ArrayList<>();
+        VideoCapture encryptedCapture = null;
+        Mat sheet = null;
+        try {
+            encryptedCapture = VideoUtil.openCapture(encryptedVideoPath);
+            VideoInfo encryptedInfo = VideoInfo.of(encryptedCapture);
+            LsbLayout layout = LsbHeader.read(encryptedCapture);
+            if (layout.getMode() == EmbeddingMode.PACKED) {
+                throw new IllegalArgumentException("打包嵌入的视频不能预览");
+            }
+            FrameRange selected = range != null ? range : FrameRange.evenly(encryptedInfo.getFrameCount(), count);
+            job.start(selected.count(encryptedInfo.getFrameCount()));
+
+            // 选取的帧很少，解密结果直接复制到列表中
+            DecryptUtil.decryptFramesWithLSB(encryptedCapture, layout, selected, new FrameSink() {
+                @Override
+                public void write(Mat frame) {
+                    frames.add(frame.clone());
+                }
+
+                @Override
+                public void close() {
+                }
+            }, job);
+            if (frames.isEmpty()) {
+                throw new IOException("没有视频帧数据！");
+            }
+
+            sheet = VideoUtil.contactSheet(frames, thumbnailWidth);
+            MatOfByte png = new MatOfByte();
+            if (!Imgcodecs.imencode(".png", sheet, png)) {
+                throw new IOException("预览图编码失败");
+            }
+            log.info("预览帧数: {}，{}", frames.size(), selected);
+            return png.toArray();
+        } finally {
+            frames.forEach(Mat::release);
+            if (sheet != null) {
+                sheet.release();
+            }
+            if (encryptedCapture != null) {
+                encryptedCapture.release();
+            }
+        }
     }
+
 }
@@ -0,0 +1,198 @@
+package com.justin.videoencryption.service;
+
+import com.justin.videoencryption.config.VideoProperties;
+import com.justin.videoencryption.util.ChunkSpec;
+import com.justin.videoencryption.util.FrameJob;
+import com.justin.videoencryption.util.Workspace;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 分段处理的横向扩展（worker 一侧）：每个协调节点的任务对应一个会话和一个工作目录，
+ * 先接收输入文件，再按 ChunkSpec 处理协调节点分发的各段，处理逻辑与本机分段处理相同
+ * 会话在协调节点通知结束或空闲超过 video.jobs.retention 后删除
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@Service
+public class WorkerService {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerService.class);
+
+    // 会话名和文件名只允许这些字符，不能跳出工作目录
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9._-]{1,128}");
+
+    private static class Session {
+
+        private final Workspace workspace;
+
+        private volatile Instant lastUsed = Instant.now();
+
+        private Session(Workspace workspace) {
+            this.workspace = workspace;
+        }
+    }
+
+    private final VideoService videoService;
+
+    private final WorkspaceService workspaceService;
+
+    private final boolean enabled;
+
+    private final Duration retention;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger segmentIndex = new AtomicInteger();
+
+    public WorkerService(VideoProperties properties, VideoService videoService, WorkspaceService workspaceService) {
+        this.videoService = videoService;
+        this.workspaceService = workspaceService;
+        this.enabled = properties.getCluster().isWorker();
+        this.retention = properties.getJobs().getRetention();
+    }
+
+    /**
+     * @return 是否接受其他实例分发的分段
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 保存一个输入文件，已存在时覆盖
+     * @param sessionId 会话名
+     * @param name 文件名，与 ChunkSpec 中的输入文件名一致
+     * @param content 文件内容
+     * @throws IllegalArgumentException 会话名或文件名无效
+     */
+    public void saveInput(String sessionId, String name, InputStream content) throws IOException {
+        Session session = session(sessionId, true);
+        Path target = session.workspace.resolve(checkName(name));
+        Path temp = session.workspace.resolve(name + ".part");
+        Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        session.lastUsed = Instant.now();
+    }
+
+    /**
+     * 处理一段
+     * @param sessionId 会话名
+     * @param spec 处理参数
+     * @param segment 写出的分段文件，调用方用 {@link #newSegment} 生成
+     * @param job 帧处理任务
+     * @return 写出的帧数
+     * @throws IllegalArgumentException 会话不存在、输入文件缺失或参数无效
+     */
+    public long runChunk(String sessionId, ChunkSpec spec, Path segment, FrameJob job) throws IOException {
+        Session session = session(sessionId, false);
+        if (spec.getInputs() == null || spec.getInputs().isEmpty()) {
+            throw new IllegalArgumentException("分段没有输入文件");
+        }
+        List<Path> inputs = new ArrayList<>();
+        for (String name : spec.getInputs()) {
+            Path input = session.workspace.resolve(checkName(name));
+            if (!Files.isRegularFile(input)) {
+                throw new IllegalArgumentException("输入文件不存在：" + name);
+            }
+            inputs.add(input);
+        }
+        session.lastUsed = Instant.now();
+        try {
+            return videoService.processChunk(spec, inputs, segment, job);
+        } finally {
+            session.lastUsed = Instant.now();
+        }
+    }
+
+    /**
+     * @return 会话工作目录中一个新的分段文件，扩展名与分段编码一致
+     */
+    public Path newSegment(String sessionId, ChunkSpec spec) {
+        String extension = "decrypt".equals(spec.getType()) || spec.getCodec() == null
+                ? "mp4" : spec.getCodec().getExtension();
+        return session(sessionId, false).workspace
+                .resolve("segment-" + segmentIndex.incrementAndGet() + "." + extension);
+    }
+
+    /**
+     * 删除会话及其工作目录
+     * @return 会话是否存在
+     */
+    public boolean close(String sessionId) {
+        Session session = sessions.remove(sessionId);
+        if (session == null) {
+            return false;
+        }
+        closeWorkspace(session);
+        return true;
+    }
+
+    private Session session(String sessionId, boolean create) {
+        purgeIdle();
+        checkName(sessionId);
+        Session session = create ? sessions.computeIfAbsent(sessionId, id -> {
+            try {
+                return new Session(workspaceService.create());
+            } catch (IOException e) {
+                throw new IllegalStateException("无法创建会话工作目录", e);
+            }
+        }) : sessions.get(sessionId);
+        if (session == null) {
+            throw new IllegalArgumentException("会话不存在：" + sessionId);
+        }
+        return session;
+    }
+
+    private static String checkName(String name) {
+        if (name == null || !NAME.matcher(name).matches() || name.startsWith(".")) {
+            throw new IllegalArgumentException("名称无效：" + name);
+        }
+        return name;
+    }
+
+    /**
+     * 清理空闲超过保留时长的会话，协调节点异常退出时会话不会被显式删除
+     */
+    private void purgeIdle() {
+        Instant expiry = Instant.now().minus(retention);
+        sessions.values().removeIf(session -> {
+            if (session.lastUsed.isAfter(expiry)) {
+                return false;
+            }
+            closeWorkspace(session);
+            return true;
+        });
+    }
+
+    private static void closeWorkspace(Session session) {
+        try {
+            session.workspace.close();
+        } catch (IOException e) {
+            log.warn("工作目录无法删除", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sessions.values().forEach(WorkerService::closeWorkspace);
+        sessions.clear();
+    }
+}
@@ -0,0 +1,50 @@
+package com.justin.videoencryption.service;
+
+import com.justin.videoencryption.config.VideoProperties;
+import com.justin.videoencryption.util.Workspace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 按配置创建任务工作目录
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@Service
+public class WorkspaceService {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkspaceService.class);
+
+    private static final Path TMPFS = Path.of("/dev/shm");
+
+    private final Path root;
+
+    public WorkspaceService(VideoProperties properties) {
+        VideoProperties.Scratch scratch = properties.getScratch();
+        if (scratch.getDirectory() != null) {
+            root = scratch.getDirectory();
+        } else if (scratch.isPreferTmpfs() && Files.isDirectory(TMPFS) && Files.isWritable(TMPFS)) {
+            root = TMPFS.resolve("video-encryption");
+        } else {
+            root = Path.of(System.getProperty("java.io.tmpdir"), "video-encryption");
+        }
+        log.info("任务工作目录：{}", root);
+    }
+
+    /**
+     * @return 新的任务工作目录，用完后需要 close
+     */
+    public Workspace create() throws IOException {
+        return Workspace.create(root);
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+}
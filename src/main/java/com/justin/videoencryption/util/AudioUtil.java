@@ -1,7 +1,7 @@
 package com.justin.videoencryption.util;
 
-import java.io.*;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -12,75 +12,23 @@ import java.util.List;
  */
 public class AudioUtil {
 
-    private static String ffmpegPath = "E:\\AI工具\\ffmpeg-7.1-essentials_build\\bin\\ffmpeg.exe";
+    // FFmpeg 可执行文件路径，可以通过 -Dvideo.ffmpeg.path 指定
+    static final String ffmpegPath = System.getProperty("video.ffmpeg.path",
+            "E:\\AI工具\\ffmpeg-7.1-essentials_build\\bin\\ffmpeg.exe");
 
     /**
-     * 从视频中提取音频
-     * @param audioPath
-     * @throws IOException
+     * 检查文件是否有音轨：只解码第一帧音频，没有音轨时 FFmpeg 报告找不到流并以非 0 退出
+     * @param path 视频或音频文件
+     * @param reserved 从预留的 FFmpeg 名额中运行，为 null 时使用共享名额
+     * @return 至少有一条音轨时返回 true；文件无法读取时也返回 false，由后续的命令报告错误
+     * @throws IOException 等待超时或无法启动 FFmpeg 时抛出
      */
-    public static void extractAudioFromVideo(String audioPath)
-            throws IOException {
-
-        // 获取原视频文件的绝对路径
-        String originalVideoPath = "F:\\my_custom_temp_dir";
-        String originalVideoAbsolutePath = FileUtil.getFilePathFromDirectory(originalVideoPath);
-
-        // FFmpeg 命令：将视频中的音频提取并转换为 MP3
-        String command = String.format("%s -i %s -vn -acodec libmp3lame -ab 192k %s",
-                ffmpegPath, originalVideoAbsolutePath, audioPath);
-
-        // 使用 ProcessBuilder 启动 FFmpeg 进程
-        ProcessBuilder processBuilder = new ProcessBuilder(command.split(" "));
-        processBuilder.inheritIO();  // 显示 FFmpeg 输出到控制台
-
-        // 启动进程
-        Process process = processBuilder.start();
-
-        try {
-            // 等待 FFmpeg 进程执行完毕
-            process.waitFor();
-            System.out.println("音频提取并转换为 MP3 完成，保存至 " + audioPath);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    public static boolean hasAudio(Path path, FfmpegProcess.Slots reserved) throws IOException {
+        List<String> command = List.of("-i", path.toAbsolutePath().toString(),
+                "-map", "0:a:0", "-frames:a", "1", "-f", "null", "-");
+        try (FfmpegProcess process = FfmpegProcess.start("probe-audio", command, reserved)) {
+            process.getOutputStream().close();
+            return process.exitCode() == 0;
         }
     }
-
-
-    /**
-     * 合并视频和两段音频（将其中一段静音）
-     * @param videoFile
-     * @param audioFile1
-     * @param audioFile2
-     * @param outputFile
-     * @return
-     */
-    public static boolean mergeVideoAndAudio(String videoFile, String audioFile1,
-                                             String audioFile2, String outputFile) {
-
-        // 构建 FFmpeg 命令
-        String ffmpegCommand = String.format(
-                "%s -i %s -i %s -i %s -filter_complex \"[2:a]volume=0[a2];[1:a][a2]amix=inputs=2[a]\" " +
-                        "-map 0:v -map \"[a]\" -c:v copy -c:a aac -strict experimental %s",
-                ffmpegPath, videoFile, audioFile1, audioFile2, outputFile
-        );
-
-        try {
-            // 执行 FFmpeg 命令
-            Process process = new ProcessBuilder(ffmpegCommand.split(" ")).inheritIO().start();
-            int exitCode = process.waitFor(); // 等待 FFmpeg 命令执行完成
-
-            if (exitCode == 0) {
-                System.out.println("视频和音频合并成功，输出文件：" + outputFile);
-                return true;
-            } else {
-                System.out.println("FFmpeg 命令执行失败，退出代码：" + exitCode);
-                return false;
-            }
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-            return false;
-        }
-    }
-
 }
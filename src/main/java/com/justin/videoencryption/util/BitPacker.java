@@ -0,0 +1,68 @@
+package com.justin.videoencryption.util;
+
+/**
+ * 打包嵌入的位运算：把连续的字节流按位写入载体字节的低几位，或反向取出
+ * 第 i 个载体字节属于通道 i % 3，嵌入的位数由该通道决定，字节流按高位在前的顺序拆分
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class BitPacker {
+
+    /**
+     * 把 payload[offset, offset + length) 写入 carrier 从 from 开始的字节，写完即停止，之后的载体字节保持原样
+     * @param payload 涉密字节流
+     * @param offset 起始位置
+     * @param length 写入的字节数，不能超过载体剩余的容量
+     * @param carrier 载体像素字节，原地修改
+     * @param from 载体中开始写入的位置
+     * @param channelBits 每个通道的嵌入位数
+     */
+    public static void pack(byte[] payload, int offset, int length, byte[] carrier, int from, int[] channelBits) {
+        long remainingBits = (long) length * 8;
+        int next = offset;
+        int end = offset + length;
+        // 待写出的位放在 buffer 的低 count 位
+        int buffer = 0;
+        int count = 0;
+        for (int i = from; remainingBits > 0; i++) {
+            int bits = channelBits[i % 3];
+            if (bits == 0) {
+                continue;
+            }
+            if (count < bits && next < end) {
+                buffer = (buffer << 8) | (payload[next++] & 0xFF);
+                count += 8;
+            }
+            // 最后一个载体字节可能只剩不足 bits 位，低位补 0
+            int take = (int) Math.min(bits, remainingBits);
+            int value = (buffer >>> (count - take)) & ((1 << take) - 1);
+            count -= take;
+            remainingBits -= take;
+            int mask = (1 << bits) - 1;
+            carrier[i] = (byte) ((carrier[i] & ~mask) | (value << (bits - take)));
+        }
+    }
+
+    /**
+     * pack 的逆运算，从 carrier 从 from 开始的字节取出 length 个字节写入 payload[offset, offset + length)
+     */
+    public static void unpack(byte[] carrier, int from, byte[] payload, int offset, int length, int[] channelBits) {
+        int end = offset + length;
+        int next = offset;
+        int buffer = 0;
+        int count = 0;
+        for (int i = from; next < end; i++) {
+            int bits = channelBits[i % 3];
+            if (bits == 0) {
+                continue;
+            }
+            buffer = (buffer << bits) | (carrier[i] & ((1 << bits) - 1));
+            count += bits;
+            if (count >= 8) {
+                count -= 8;
+                payload[next++] = (byte) (buffer >>> count);
+            }
+        }
+    }
+}
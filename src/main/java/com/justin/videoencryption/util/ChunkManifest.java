@@ -0,0 +1,188 @@
+package com.justin.videoencryption.util;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 分段处理的进度清单，以 JSON 保存在任务工作目录中
+ * 记录切分方式、编码参数和每一段是否已经完成；进程中断后按清单只重做未完成的段，
+ * 参数与清单不一致时（例如修改了配置）整个清单作废，从头开始
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@Data
+public class ChunkManifest {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkManifest.class);
+
+    /**
+     * 清单在工作目录中的文件名
+     */
+    public static final String FILE_NAME = "manifest.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * 一段连续的输出帧，编码为一个独立的分段文件，分段都从关键帧开始
+     */
+    @Data
+    public static class Chunk {
+
+        private int index;
+
+        /**
+         * 该段第一帧在输出视频中的帧序号
+         */
+        private long firstFrame;
+
+        /**
+         * 该段计划输出的帧数
+         */
+        private long frameCount;
+
+        /**
+         * 该段开始的时刻（毫秒），拼接后音轨与画面按这个偏移对齐
+         */
+        private double startMillis;
+
+        /**
+         * 分段文件名，位于工作目录中
+         */
+        private String segment;
+
+        private boolean done;
+
+        /**
+         * 完成后实际写出的帧数，视频提前结束时少于 frameCount，为 0 时不参与拼接
+         */
+        private long framesWritten;
+    }
+
+    /**
+     * encrypt 或 decrypt
+     */
+    private String type;
+
+    /**
+     * 分段的编码，拼接时视频流直接复制，所有分段必须相同
+     */
+    private String codec;
+
+    /**
+     * 嵌入参数和帧对齐方式，决定每一帧的内容
+     */
+    private String parameters;
+
+    private double fps;
+
+    private int width;
+
+    private int height;
+
+    private long totalFrames;
+
+    private int chunkFrames;
+
+    private List<Chunk> chunks = new ArrayList<>();
+
+    /**
+     * 按固定帧数切分
+     * @param type encrypt 或 decrypt
+     * @param codec 分段编码
+     * @param parameters 嵌入参数等影响帧内容的参数
+     * @param info 输出视频的帧率和分辨率
+     * @param totalFrames 输出总帧数
+     * @param chunkFrames 每段的帧数
+     * @param extension 分段文件扩展名
+     */
+    public static ChunkManifest create(String type, String codec, String parameters, VideoInfo info,
+                                       long totalFrames, int chunkFrames, String extension) {
+        if (chunkFrames < 1) {
+            throw new IllegalArgumentException("每段帧数必须大于 0：" + chunkFrames);
+        }
+        ChunkManifest manifest = new ChunkManifest();
+        manifest.type = type;
+        manifest.codec = codec;
+        manifest.parameters = parameters;
+        manifest.fps = info.getFps();
+        manifest.width = info.getWidth();
+        manifest.height = info.getHeight();
+        manifest.totalFrames = totalFrames;
+        manifest.chunkFrames = chunkFrames;
+        for (long first = 0; first < totalFrames; first += chunkFrames) {
+            Chunk chunk = new Chunk();
+            chunk.index = manifest.chunks.size();
+            chunk.firstFrame = first;
+            chunk.frameCount = Math.min(chunkFrames, totalFrames - first);
+            chunk.startMillis = first * 1000 / info.getFps();
+            chunk.segment = String.format("chunk-%05d.%s", chunk.index, extension);
+            manifest.chunks.add(chunk);
+        }
+        return manifest;
+    }
+
+    /**
+     * 读取清单
+     * @return 清单，文件不存在或无法解析时返回 null
+     */
+    public static ChunkManifest load(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(file.toFile(), ChunkManifest.class);
+        } catch (IOException e) {
+            log.warn("分段清单无法读取，重新开始：{}，{}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 先写临时文件再替换，进程在写入过程中退出也不会留下不完整的清单
+     */
+    public synchronized void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        MAPPER.writeValue(temp.toFile(), this);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 记录一段已完成并立即保存
+     */
+    public synchronized void complete(Chunk chunk, long framesWritten, Path file) throws IOException {
+        chunk.framesWritten = framesWritten;
+        chunk.done = true;
+        save(file);
+    }
+
+    /**
+     * @return 与另一个清单的切分方式和参数是否相同，相同时已完成的分段可以继续使用
+     */
+    public boolean matches(ChunkManifest other) {
+        return other != null && Objects.equals(type, other.type) && Objects.equals(codec, other.codec)
+                && Objects.equals(parameters, other.parameters) && fps == other.fps
+                && width == other.width && height == other.height
+                && totalFrames == other.totalFrames && chunkFrames == other.chunkFrames
+                && chunks.size() == other.chunks.size();
+    }
+
+    /**
+     * @return 已完成的帧数
+     */
+    public synchronized long framesDone() {
+        return chunks.stream().filter(Chunk::isDone).mapToLong(Chunk::getFrameCount).sum();
+    }
+}
@@ -0,0 +1,145 @@
+package com.justin.videoencryption.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按清单分段处理：跳过已完成的段，其余的段在若干线程中同时处理，每段完成后立即保存清单，
+ * 单段失败时重试，全部完成后返回按顺序排列的分段文件，由调用方拼接
+ * 每段自己打开视频、运行一条帧处理管线，帧处理仍然使用任务的共享线程池
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class ChunkRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkRunner.class);
+
+    /**
+     * 处理一段
+     */
+    @FunctionalInterface
+    public interface ChunkTask {
+
+        /**
+         * @param chunk 要处理的段
+         * @param segment 分段文件，已存在的旧文件会先被删除
+         * @return 写出的帧数
+         */
+        long run(ChunkManifest.Chunk chunk, Path segment) throws Exception;
+    }
+
+    /**
+     * 处理清单中所有未完成的段
+     * @param manifest 清单
+     * @param directory 分段文件和清单所在的工作目录
+     * @param parallelChunks 同时处理的段数
+     * @param maxAttempts 每段最多尝试的次数
+     * @param task 处理一段的逻辑
+     * @param job 任务上下文，提供取消标记和进度
+     * @return 按顺序排列的分段文件，不包括没有帧的段
+     * @throws IOException 任一段用完重试次数仍然失败时抛出
+     * @throws CancellationException 任务被取消时抛出
+     */
+    public static List<Path> run(ChunkManifest manifest, Path directory, int parallelChunks, int maxAttempts,
+                                 ChunkTask task, FrameJob job) throws IOException {
+        Path manifestPath = directory.resolve(ChunkManifest.FILE_NAME);
+
+        // 分段文件丢失的段重新处理
+        List<ChunkManifest.Chunk> pending = new ArrayList<>();
+        for (ChunkManifest.Chunk chunk : manifest.getChunks()) {
+            if (chunk.isDone() && (chunk.getFramesWritten() == 0
+                    || Files.isRegularFile(directory.resolve(chunk.getSegment())))) {
+                continue;
+            }
+            chunk.setDone(false);
+            pending.add(chunk);
+        }
+        manifest.save(manifestPath);
+
+        long framesDone = manifest.framesDone();
+        if (framesDone > 0) {
+            log.info("从清单继续：已完成 {}/{} 帧，剩余 {} 段", framesDone, manifest.getTotalFrames(), pending.size());
+        }
+        job.start(manifest.getTotalFrames() - framesDone);
+
+        if (!pending.isEmpty()) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelChunks, pending.size()),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "chunk-worker-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            List<Future<?>> futures = new ArrayList<>();
+            try {
+                for (ChunkManifest.Chunk chunk : pending) {
+                    futures.add(executor.submit(() -> {
+                        long frames = runChunk(chunk, directory, maxAttempts, task, job);
+                        manifest.complete(chunk, frames, manifestPath);
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof CancellationException) {
+                    throw (CancellationException) cause;
+                }
+                throw cause instanceof IOException ? (IOException) cause : new IOException("分段处理失败", cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("分段处理被中断");
+            } finally {
+                // 任一段失败时其余的段立即停止，已完成的段保留在清单中
+                executor.shutdownNow();
+            }
+        }
+
+        List<Path> segments = new ArrayList<>();
+        for (ChunkManifest.Chunk chunk : manifest.getChunks()) {
+            if (chunk.getFramesWritten() > 0) {
+                segments.add(directory.resolve(chunk.getSegment()));
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * 处理一段，失败时删除不完整的分段文件后重试；取消和中断不重试
+     * @return 写出的帧数
+     */
+    private static long runChunk(ChunkManifest.Chunk chunk, Path directory, int maxAttempts, ChunkTask task,
+                                 FrameJob job) throws Exception {
+        Path segment = directory.resolve(chunk.getSegment());
+        for (int attempt = 1; ; attempt++) {
+            job.throwIfCancelled();
+            Files.deleteIfExists(segment);
+            try {
+                return task.run(chunk, segment);
+            } catch (CancellationException | InterruptedIOException e) {
+                throw e;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts || job.isCancelled()) {
+                    throw e;
+                }
+                log.warn("第 {} 段处理失败，重试（{}/{}）：{}", chunk.getIndex(), attempt, maxAttempts, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.justin.videoencryption.util;
+
+import lombok.Data;
+
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 处理一段所需的全部参数，本机处理和发给 worker 节点处理使用同一份参数，保证各节点输出的分段完全一致
+ * 以 JSON 在节点之间传递，嵌入参数按 LsbHeader 的格式编码（带 CRC）
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+@Data
+public class ChunkSpec {
+
+    /**
+     * encrypt 或 decrypt
+     */
+    private String type;
+
+    /**
+     * 输入文件名：加密时为原视频和涉密视频，解密时为加密视频；位于同一个工作目录
+     */
+    private List<String> inputs;
+
+    private long firstFrame;
+
+    private long frameCount;
+
+    /**
+     * 分段的帧率
+     */
+    private double fps;
+
+    /**
+     * LsbHeader 编码的嵌入参数，Base64
+     */
+    private String layoutHeader;
+
+    private FrameAlignment alignment;
+
+    private Interpolation interpolation;
+
+    /**
+     * 加密分段的编码，解密分段固定使用 VideoWriter 的 H.264
+     */
+    private OutputCodec codec;
+
+    /**
+     * 该段编码后校验的抽样帧数，0 表示不校验
+     */
+    private int verifySamples;
+
+    public void encodeLayout(LsbLayout layout) {
+        this.layoutHeader = Base64.getEncoder().encodeToString(LsbHeader.encode(layout));
+    }
+
+    /**
+     * @return 嵌入参数
+     * @throws IllegalArgumentException 参数头部无效
+     */
+    public LsbLayout layout() {
+        LsbLayout layout = layoutHeader == null ? null : LsbHeader.decode(Base64.getDecoder().decode(layoutHeader));
+        if (layout == null) {
+            throw new IllegalArgumentException("分段的嵌入参数无效");
+        }
+        return layout;
+    }
+}
@@ -1,14 +1,31 @@
 package com.justin.videoencryption.util;
 
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 public class DecryptUtil {
 
+    /**
+     * 按帧范围解密时，需要跳过的帧数超过该值就直接定位（CAP_PROP_POS_FRAMES），否则逐帧 grab
+     * 定位要从前一个关键帧开始解码，跳过的帧较少时逐帧 grab 更快
+     */
+    private static final long SEEK_THRESHOLD = 30;
+
     /**
      * 使用 LSB 解密方式恢复嵌入的秘密信息
      * @param encryptedValue 加密后的像素值（0-255）
@@ -48,42 +65,80 @@ public class DecryptUtil {
      * @return 解密后的视频帧
      */
     public static Mat decryptFrameWithLSB(Mat encryptedFrame) throws Exception {
-        // 获取行和列数
-        int rows = encryptedFrame.rows();
-        int cols = encryptedFrame.cols();
-        int totalPixels = rows * cols;
-
         // 创建解密后的视频帧
-        Mat secretFrame = new Mat(rows, cols, encryptedFrame.type());
+        Mat secretFrame = new Mat(encryptedFrame.rows(), encryptedFrame.cols(), encryptedFrame.type());
+        decryptFrameWithLSB(encryptedFrame, secretFrame);
+        return secretFrame;
+    }
 
-        // 获取底层数据指针
-        byte[] encryptedData = new byte[totalPixels * 3];
-        byte[] secretData = new byte[totalPixels * 3];
+    /**
+     * 解密视频帧，结果写入调用方提供的 secretFrame，便于流式处理时复用 Mat
+     * 直接在交错存储的 BGR 字节上运算，缓冲区按线程复用，每帧不产生新的数组
+     * @param encryptedFrame 加密的视频帧
+     * @param secretFrame 解密后的视频帧，尺寸或类型不符时会重新分配
+     */
+    public static void decryptFrameWithLSB(Mat encryptedFrame, Mat secretFrame) throws Exception {
+        decryptFrameWithLSB(encryptedFrame, secretFrame, LsbLayout.DEFAULT);
+    }
 
-        encryptedFrame.get(0, 0, encryptedData);
+    /**
+     * 按指定的嵌入位数解密视频帧；指定了嵌入区域时只读取并解密该区域，解密帧的尺寸与区域相同
+     * @param encryptedFrame 加密的视频帧
+     * @param secretFrame 解密后的视频帧，尺寸或类型不符时会重新分配
+     * @param layout 嵌入参数，必须是逐像素嵌入
+     */
+    public static void decryptFrameWithLSB(Mat encryptedFrame, Mat secretFrame, LsbLayout layout) throws Exception {
+        Rect region = layout.getRegion();
+        Mat source = encryptedFrame;
+        if (region != null) {
+            if (!EncryptUtil.contains(encryptedFrame, region)) {
+                throw new IOException("嵌入区域 " + region + " 超出视频帧 " + encryptedFrame.size());
+            }
+            source = encryptedFrame.submat(region);
+        }
+        try {
+            // 每个像素 channels 个字节（BGR 为 3 个）
+            int length = (int) (source.total() * source.channels());
+
+            byte[] encryptedData = FrameBuffers.get(0, length);
+            source.get(0, 0, encryptedData);
 
-        // 将字节数据转换为 int 数组，便于批量解密
-        int[] encryptedPixels = new int[totalPixels];
+            // 解密结果直接覆盖 encryptedData
+            decryptBytesWithLSB(encryptedData, encryptedData, length, layout);
 
-        for (int i = 0; i < totalPixels; i++) {
-            int bEncrypted = encryptedData[i * 3] & 0xFF;
-            int gEncrypted = encryptedData[i * 3 + 1] & 0xFF;
-            int rEncrypted = encryptedData[i * 3 + 2] & 0xFF;
-            encryptedPixels[i] = (rEncrypted << 16) | (gEncrypted << 8) | bEncrypted;
+            secretFrame.create(source.rows(), source.cols(), source.type());
+            secretFrame.put(0, 0, encryptedData);
+        } finally {
+            // 区域的 submat 是每帧新建的 Mat 头，数据与整帧共享，释放它不影响 encryptedFrame
+            if (source != encryptedFrame) {
+                source.release();
+            }
         }
+    }
 
-        // 使用 LSB 方法解密像素，提取出涉密视频的像素值
-        int[] secretPixels = batchDecryptWithLSB(encryptedPixels);
+    /**
+     * 按字节解密交错存储的像素数据，每个字节的运算与 decryptWithLSB 相同
+     * 具体实现（普通循环或 Vector API）由 LsbKernel 选择
+     * secretData 可以与 encryptedData 是同一个数组
+     * @param encryptedData 加密后的像素字节
+     * @param secretData 恢复的涉密像素字节
+     * @param length 处理的字节数
+     */
+    public static void decryptBytesWithLSB(byte[] encryptedData, byte[] secretData, int length) {
+        LsbKernel.current().decrypt(encryptedData, secretData, length);
+    }
 
-        // 将解密后的数据写回 secretData
-        for (int i = 0; i < totalPixels; i++) {
-            secretData[i * 3] = (byte) (secretPixels[i] & 0xFF); // B
-            secretData[i * 3 + 1] = (byte) ((secretPixels[i] >> 8) & 0xFF); // G
-            secretData[i * 3 + 2] = (byte) ((secretPixels[i] >> 16) & 0xFF); // R
+    /**
+     * 按嵌入参数解密像素字节：各通道位数相同时使用 LsbKernel，否则逐通道处理
+     * @param layout 嵌入参数
+     */
+    public static void decryptBytesWithLSB(byte[] encryptedData, byte[] secretData, int length, LsbLayout layout) {
+        int bits = layout.uniformBits();
+        if (bits > 0) {
+            LsbKernel.current().decrypt(encryptedData, secretData, length, bits);
+        } else {
+            ScalarLsbKernel.decrypt(encryptedData, secretData, length, layout.getChannelBits());
         }
-
-        secretFrame.put(0, 0, secretData);
-        return secretFrame;
     }
 
     /**
@@ -106,15 +161,214 @@ public class DecryptUtil {
             }));
         }
 
-        for (Future<Mat> future : futures) {
-            try {
-                secretFrames.add(future.get());
-            } catch (Exception e) {
-                e.printStackTrace();
+        // 任一帧失败立即终止，避免生成缺帧的视频
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    secretFrames.add(futures.get(i).get());
+                } catch (Exception e) {
+                    futures.forEach(future -> future.cancel(true));
+                    if (e instanceof InterruptedException) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new RuntimeException("第 " + i + " 帧解密失败", e instanceof ExecutionException ? e.getCause() : e);
+                }
             }
+        } finally {
+            executorService.shutdown();
         }
 
-        executorService.shutdown();
         return secretFrames;
     }
+
+    /**
+     * decryptFramesWithLSB 的流式版本：边读取边解密边写出，不在内存中保存整段视频
+     * @param encryptedCapture 加密视频
+     * @param sink 解密帧的输出端
+     * @param job 任务上下文，提供共享线程池、在途帧数上限和取消标记
+     * @return 解密的帧数
+     * @throws IOException 任一帧失败时抛出
+     */
+    public static long decryptFramesWithLSB(VideoCapture encryptedCapture, FrameSink sink, FrameJob job)
+            throws IOException {
+        LsbLayout layout = LsbHeader.read(encryptedCapture);
+        if (layout.getMode() != EmbeddingMode.PIXEL) {
+            throw new IOException("该视频使用打包嵌入，请使用 extractPayload 解密");
+        }
+        return decryptFramesWithLSB(encryptedCapture, layout, sink, job);
+    }
+
+    /**
+     * 按第一帧头部记录的嵌入位数流式解密
+     * @param encryptedCapture 加密视频
+     * @param layout 嵌入参数，由 LsbHeader.read 读出，必须是逐像素嵌入
+     * @param sink 解密帧的输出端
+     * @param job 任务上下文，提供共享线程池、在途帧数上限和取消标记
+     * @return 解密的帧数
+     * @throws IOException 任一帧失败时抛出
+     */
+    public static long decryptFramesWithLSB(VideoCapture encryptedCapture, LsbLayout layout, FrameSink sink,
+                                            FrameJob job) throws IOException {
+        return decryptFramesWithLSB(encryptedCapture, layout, FrameRange.ALL, sink, job);
+    }
+
+    /**
+     * 只解密选取的帧：直接定位到起始帧，间隔较小时跳过的帧只 grab 不取出（不做颜色转换），
+     * 间隔较大时直接定位到下一帧，结束帧之后的部分不再读取
+     * @param encryptedCapture 加密视频
+     * @param layout 嵌入参数，由 LsbHeader.read 读出，必须是逐像素嵌入
+     * @param range 选取的帧
+     * @param sink 解密帧的输出端
+     * @param job 任务上下文，提供共享线程池、在途帧数上限和取消标记
+     * @return 解密的帧数
+     * @throws IOException 任一帧失败时抛出
+     */
+    public static long decryptFramesWithLSB(VideoCapture encryptedCapture, LsbLayout layout, FrameRange range,
+                                            FrameSink sink, FrameJob job) throws IOException {
+        FramePipeline.FrameSource source = range.isAll()
+                ? inputs -> {
+                    long start = FrameMetrics.start();
+                    boolean read = encryptedCapture.read(inputs[0]);
+                    FrameMetrics.record(FrameMetrics.Stage.DECODE, start);
+                    return read;
+                }
+                : new RangeSource(encryptedCapture, range);
+        VideoInfo info = VideoInfo.of(encryptedCapture);
+        long frameBytes = (long) info.getWidth() * info.getHeight() * 3;
+        try (FrameArena.Reservation reservation = FrameArena.shared().reservePipeline(frameBytes, 2, 0, job)) {
+            return FramePipeline.run(source,
+                    (frameIndex, inputs, output) -> {
+                        long start = FrameMetrics.start();
+                        decryptFrameWithLSB(inputs[0], output, layout);
+                        FrameMetrics.record(FrameMetrics.Stage.LSB, start);
+                    },
+                    sink, 1, job);
+        }
+    }
+
+    /**
+     * 按 FrameRange 读取帧，跳过的帧在读取下一帧之前才处理，最后一帧之后不再多读
+     */
+    private static class RangeSource implements FramePipeline.FrameSource {
+
+        private final VideoCapture capture;
+
+        private final FrameRange range;
+
+        // 下一次读取的帧序号，以及解码器当前所在的帧序号
+        private long next;
+
+        private long position;
+
+        private RangeSource(VideoCapture capture, FrameRange range) {
+            this.capture = capture;
+            this.range = range;
+            this.next = range.getStart();
+        }
+
+        @Override
+        public boolean read(Mat[] inputs) {
+            if (range.getEnd() >= 0 && next >= range.getEnd()) {
+                return false;
+            }
+            long start = FrameMetrics.start();
+            long skip = next - position;
+            if (skip > SEEK_THRESHOLD) {
+                capture.set(Videoio.CAP_PROP_POS_FRAMES, next);
+            } else {
+                for (long i = 0; i < skip; i++) {
+                    if (!capture.grab()) {
+                        return false;
+                    }
+                }
+            }
+            if (!capture.read(inputs[0])) {
+                return false;
+            }
+            FrameMetrics.record(FrameMetrics.Stage.DECODE, start);
+            position = next + 1;
+            next += range.getStride();
+            return true;
+        }
+    }
+
+    /**
+     * 提取打包嵌入的涉密文件：只读取存放数据的开头几帧，各帧并行提取后按顺序写入文件
+     * @param encryptedCapture 加密视频
+     * @param layout 嵌入参数，由 LsbHeader.read 读出，必须是打包嵌入
+     * @param outputPath 还原的涉密文件
+     * @param job 任务上下文，提供共享线程池、在途帧数上限和取消标记
+     * @return 读取的帧数
+     * @throws IOException 加密视频不完整或任一帧失败时抛出
+     */
+    public static long extractPayload(VideoCapture encryptedCapture, LsbLayout layout, Path outputPath,
+                                      FrameJob job) throws IOException {
+        if (layout.getMode() != EmbeddingMode.PACKED) {
+            throw new IllegalArgumentException("逐像素嵌入请使用 decryptFramesWithLSB");
+        }
+        VideoInfo info = VideoInfo.of(encryptedCapture);
+        int frameBytes = info.getWidth() * info.getHeight() * 3;
+        long framesNeeded = layout.framesNeeded(frameBytes);
+        int[] channelBits = layout.getChannelBits();
+        long[] readFrames = {0};
+
+        PayloadWriter writer = new PayloadWriter(outputPath);
+        long frameCount;
+        try (writer; FrameArena.Reservation reservation = FrameArena.shared().reservePipeline(frameBytes, 2, 0, job)) {
+            frameCount = FramePipeline.run(inputs -> readFrames[0]++ < framesNeeded && encryptedCapture.read(inputs[0]),
+                    (frameIndex, inputs, output) -> {
+                        Mat encryptedFrame = inputs[0];
+                        int length = (int) (encryptedFrame.total() * encryptedFrame.channels());
+                        if (length != frameBytes) {
+                            throw new IOException("第 " + frameIndex + " 帧的尺寸与视频信息不一致");
+                        }
+                        long offset = layout.payloadOffset(frameIndex, frameBytes);
+                        int count = (int) Math.min(layout.frameCapacity(frameBytes, frameIndex == 0),
+                                layout.getPayloadLength() - offset);
+
+                        long start = FrameMetrics.start();
+                        byte[] carrier = FrameBuffers.get(0, length);
+                        byte[] slice = FrameBuffers.get(1, count);
+                        encryptedFrame.get(0, 0, carrier);
+                        BitPacker.unpack(carrier, frameIndex == 0 ? LsbHeader.CARRIER_BYTES : 0,
+                                slice, 0, count, channelBits);
+                        output.create(1, count, CvType.CV_8UC1);
+                        output.put(0, 0, slice);
+                        FrameMetrics.record(FrameMetrics.Stage.LSB, start);
+                    }, writer, 1, job);
+        }
+        if (writer.written != layout.getPayloadLength()) {
+            throw new IOException("加密视频不完整：涉密文件应有 " + layout.getPayloadLength() + " 字节，只提取到 "
+                    + writer.written + " 字节");
+        }
+        return frameCount;
+    }
+
+    /**
+     * 把每帧提取出的字节（单行 CV_8UC1）按顺序写入文件
+     */
+    private static class PayloadWriter implements FrameSink {
+
+        private final OutputStream out;
+
+        private long written;
+
+        private PayloadWriter(Path outputPath) throws IOException {
+            this.out = new BufferedOutputStream(Files.newOutputStream(outputPath));
+        }
+
+        @Override
+        public void write(Mat frame) throws IOException {
+            int length = (int) frame.total();
+            byte[] buffer = FrameBuffers.get(1, length);
+            frame.get(0, 0, buffer);
+            out.write(buffer, 0, length);
+            written += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
 }
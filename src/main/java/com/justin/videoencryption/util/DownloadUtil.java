@@ -0,0 +1,121 @@
+package com.justin.videoencryption.util;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 文件下载工具类
+ * 用 FileChannel.transferTo 把文件直接写入响应流，不把整个视频读进堆内存，每个响应的内存占用是常量
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class DownloadUtil {
+
+    /**
+     * 生成下载文件名，扩展名与实际文件一致（输出编码不同，容器可能是 mp4 或 mkv）
+     * @param baseName 不含扩展名的文件名
+     * @param file 要下载的文件
+     * @return 例如 encrypted_video.mkv
+     */
+    public static String fileName(String baseName, Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? baseName : baseName + name.substring(dot);
+    }
+
+    /**
+     * 构造流式下载响应，cleanup 为 null 时支持单个 Range 请求（断点续传）
+     * 传入 cleanup 的文件是这次请求现算出来的，传输后删除，再次请求会重新计算出一个新文件，
+     * 续传只会拿到新文件的一段，因此这种响应不声明 Accept-Ranges，忽略 Range 并返回整个文件
+     * @param file 要下载的文件
+     * @param fileName 下载时的文件名
+     * @param requestHeaders 请求头，用于读取 Range
+     * @param cleanup 传输结束（或无需传输）后执行的清理，例如删除任务工作目录；需要断点续传的文件传 null
+     * @return 200、206 或 416 响应；传入 cleanup 时总是 200
+     * @throws IOException
+     */
+    public static ResponseEntity<StreamingResponseBody> stream(Path file, String fileName,
+                                                               HttpHeaders requestHeaders,
+                                                               Closeable cleanup) throws IOException {
+        long fileSize = Files.size(file);
+
+        // 设置响应头，按文件扩展名指定返回的视频文件类型
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM));
+        headers.setContentDisposition(ContentDisposition.attachment().filename(fileName).build()); // 文件名
+        boolean resumable = cleanup == null;
+        if (resumable) {
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        }
+
+        long start = 0;
+        long length = fileSize;
+        HttpStatus status = HttpStatus.OK;
+
+        // 只处理单个区间，多个区间时返回整个文件
+        List<HttpRange> ranges;
+        try {
+            ranges = resumable ? requestHeaders.getRange() : List.of();
+        } catch (IllegalArgumentException e) {
+            ranges = List.of();
+        }
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            try {
+                start = range.getRangeStart(fileSize);
+                length = range.getRangeEnd(fileSize) - start + 1;
+            } catch (IllegalArgumentException e) {
+                length = 0;
+            }
+            if (start >= fileSize || length <= 0) {
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize);
+                return new ResponseEntity<>(null, headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            }
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + length - 1) + "/" + fileSize);
+            status = HttpStatus.PARTIAL_CONTENT;
+        }
+        headers.setContentLength(length);
+
+        long position = start;
+        long count = length;
+        StreamingResponseBody body = outputStream -> {
+            long started = FrameMetrics.start();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(outputStream);
+                long transferred = 0;
+                while (transferred < count) {
+                    long n = channel.transferTo(position + transferred, count - transferred, target);
+                    if (n <= 0 && position + transferred >= channel.size()) {
+                        throw new IOException("文件在传输过程中被截断：" + file);
+                    }
+                    transferred += n;
+                }
+                outputStream.flush();
+                FrameMetrics.record(FrameMetrics.Stage.TRANSFER, started);
+            } finally {
+                if (cleanup != null) {
+                    cleanup.close();
+                }
+            }
+        };
+
+        return new ResponseEntity<>(body, headers, status);
+    }
+}
@@ -0,0 +1,21 @@
+package com.justin.videoencryption.util;
+
+/**
+ * 涉密数据的嵌入方式
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public enum EmbeddingMode {
+
+    /**
+     * 逐像素嵌入：载体的每个字节存放涉密帧对应字节的高几位，涉密视频被缩放到载体的分辨率
+     */
+    PIXEL,
+
+    /**
+     * 打包嵌入：把涉密文件的原始字节（已经压缩过的视频）按位连续写入载体各字节的低几位，
+     * 解密得到与上传完全相同的文件，所需载体帧数取决于文件大小
+     */
+    PACKED
+}
@@ -0,0 +1,48 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.Rect;
+
+/**
+ * 逐像素嵌入时涉密帧在载体中占用的区域
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public enum EmbeddingRegion {
+
+    /**
+     * 涉密帧缩放到载体的尺寸，占满整帧
+     */
+    FULL,
+
+    /**
+     * 涉密帧保持原始分辨率放在载体左上角，区域外的像素保持原样；涉密视频比载体大时等比缩小到刚好放下
+     * 涉密视频远小于载体时（例如 480p 放进 4K），每帧只处理区域内的字节，编码后的体积也更小
+     */
+    NATIVE;
+
+    /**
+     * 计算嵌入区域
+     * @param originalInfo 原视频（载体）
+     * @param secretInfo 涉密视频
+     * @return 嵌入区域，占满整帧时返回 null
+     */
+    public Rect place(VideoInfo originalInfo, VideoInfo secretInfo) {
+        int carrierWidth = originalInfo.getWidth();
+        int carrierHeight = originalInfo.getHeight();
+        int width = secretInfo.getWidth();
+        int height = secretInfo.getHeight();
+        if (this == FULL || width <= 0 || height <= 0) {
+            return null;
+        }
+        if (width > carrierWidth || height > carrierHeight) {
+            double scale = Math.min((double) carrierWidth / width, (double) carrierHeight / height);
+            width = Math.max(1, (int) (width * scale));
+            height = Math.max(1, (int) (height * scale));
+        }
+        if (width == carrierWidth && height == carrierHeight) {
+            return null;
+        }
+        return new Rect(0, 0, width, height);
+    }
+}
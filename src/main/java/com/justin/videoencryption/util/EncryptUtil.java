@@ -1,17 +1,37 @@
 package com.justin.videoencryption.util;
 
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
 
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public class EncryptUtil {
 
+    /**
+     * 流式加密时每路视频最多提前解码的帧数
+     */
+    public static final int DECODE_PREFETCH = 4;
+
+    /**
+     * 按时间戳对齐时允许的误差（毫秒），容器中的时间戳有舍入，帧率相同时仍能一一对应
+     */
+    private static final double TIMESTAMP_TOLERANCE_MILLIS = 1;
+
     /**
      * 使用 LSB 加密方式修改像素的最低有效位
      * @param originalValue 原始像素的值（0-255）
@@ -63,56 +83,125 @@ public class EncryptUtil {
      * @return 加密后的视频帧
      */
     public static Mat encryptFrameWithLSB(Mat originalFrame, Mat secretFrame) throws Exception {
-        // 获取行和列数
-        int rows = originalFrame.rows();
-        int cols = originalFrame.cols();
-        int totalPixels = rows * cols;
-
         // 创建加密后的视频帧
-        Mat encryptedFrame = new Mat(rows, cols, originalFrame.type());
+        Mat encryptedFrame = new Mat(originalFrame.rows(), originalFrame.cols(), originalFrame.type());
+        encryptFrameWithLSB(originalFrame, secretFrame, encryptedFrame);
+        return encryptedFrame;
+    }
+
+    /**
+     * 加密视频帧，结果写入调用方提供的 encryptedFrame，便于流式处理时复用 Mat
+     * 直接在交错存储的 BGR 字节上运算，缓冲区按线程复用，每帧不产生新的数组
+     * @param originalFrame 原始视频帧
+     * @param secretFrame 涉密视频帧
+     * @param encryptedFrame 加密后的视频帧，尺寸或类型不符时会重新分配
+     */
+    public static void encryptFrameWithLSB(Mat originalFrame, Mat secretFrame, Mat encryptedFrame) throws Exception {
+        encryptFrameWithLSB(originalFrame, secretFrame, encryptedFrame, LsbLayout.DEFAULT, false);
+    }
 
-        // 每个像素3个字节，BGR
-        // totalPixels * 3 是图像中所有像素的数量
-        byte[] originalData = new byte[totalPixels * 3];
-        byte[] secretData = new byte[totalPixels * 3];
-        byte[] encryptedData = new byte[totalPixels * 3];
+    /**
+     * 按指定的嵌入位数加密视频帧，第一帧同时写入参数头部
+     * 指定了嵌入区域时，涉密帧的尺寸应与区域相同，区域外的像素原样复制，只有区域内的字节参与运算
+     * @param originalFrame 原始视频帧
+     * @param secretFrame 涉密视频帧
+     * @param encryptedFrame 加密后的视频帧，尺寸或类型不符时会重新分配
+     * @param layout 嵌入参数，必须是逐像素嵌入
+     * @param writeHeader 是否写入参数头部（第一帧）
+     */
+    public static void encryptFrameWithLSB(Mat originalFrame, Mat secretFrame, Mat encryptedFrame,
+                                           LsbLayout layout, boolean writeHeader) throws Exception {
+        Rect region = layout.getRegion();
+        if (region != null) {
+            encryptRegionWithLSB(originalFrame, secretFrame, encryptedFrame, region, layout, writeHeader);
+            return;
+        }
+        // 每个像素 channels 个字节（BGR 为 3 个）
+        int length = (int) (originalFrame.total() * originalFrame.channels());
 
-        // 这行代码的目的是从 originalFrame（原始图像帧）中获取图像的像素数据
-        // 并将其存储到 originalData 数组中
+        // 这两行代码的目的是从原始图像帧和涉密图像帧中获取像素数据
         // 0, 0 表示从什么位置开始提取
+        byte[] originalData = FrameBuffers.get(0, length);
+        byte[] secretData = FrameBuffers.get(1, length);
         originalFrame.get(0, 0, originalData);
         secretFrame.get(0, 0, secretData);
 
-        int[] originalPixels = new int[totalPixels];
-        int[] secretPixels = new int[totalPixels];
-
-        for (int i = 0; i < totalPixels; i++) {
+        // 加密结果直接覆盖 originalData
+        encryptBytesWithLSB(originalData, secretData, originalData, length, layout);
+        if (writeHeader) {
+            LsbHeader.write(layout, originalData, length);
+        }
 
-            // 将 BGR 值转换为 int 数字
-            int bOriginal = originalData[i * 3] & 0xFF;
-            int gOriginal = originalData[i * 3 + 1] & 0xFF;
-            int rOriginal = originalData[i * 3 + 2] & 0xFF;
-            originalPixels[i] = (rOriginal << 16) | (gOriginal << 8) | bOriginal;
+        encryptedFrame.create(originalFrame.rows(), originalFrame.cols(), originalFrame.type());
+        encryptedFrame.put(0, 0, originalData);
+    }
 
-            int bSecret = secretData[i * 3] & 0xFF;
-            int gSecret = secretData[i * 3 + 1] & 0xFF;
-            int rSecret = secretData[i * 3 + 2] & 0xFF;
-            secretPixels[i] = (rSecret << 16) | (gSecret << 8) | bSecret;
+    /**
+     * 只加密载体的一个区域，涉密帧保持原始分辨率放在区域中
+     */
+    private static void encryptRegionWithLSB(Mat originalFrame, Mat secretFrame, Mat encryptedFrame, Rect region,
+                                             LsbLayout layout, boolean writeHeader) throws IOException {
+        if (!contains(originalFrame, region)) {
+            throw new IOException("嵌入区域 " + region + " 超出视频帧 " + originalFrame.size());
         }
+        originalFrame.copyTo(encryptedFrame);
+        Mat target = encryptedFrame.submat(region);
+        try {
+            int length = (int) (target.total() * target.channels());
 
-        // 使用 LSB 方法加密像素
-        int[] encryptedPixels = batchEncryptWithLSB(originalPixels, secretPixels);
+            byte[] regionData = FrameBuffers.get(0, length);
+            byte[] secretData = FrameBuffers.get(1, length);
+            target.get(0, 0, regionData);
+            secretFrame.get(0, 0, secretData);
+            encryptBytesWithLSB(regionData, secretData, regionData, length, layout);
+            target.put(0, 0, regionData);
+        } finally {
+            // submat 是每帧新建的 Mat 头，数据与 encryptedFrame 共享，释放它只归还这个头
+            target.release();
+        }
 
-        // 将加密后的数据存到 encryptedData
-        for (int i = 0; i < totalPixels; i++) {
-            encryptedData[i * 3] = (byte) (encryptedPixels[i] & 0xFF); // B
-            encryptedData[i * 3 + 1] = (byte) ((encryptedPixels[i] >> 8) & 0xFF); // G
-            encryptedData[i * 3 + 2] = (byte) ((encryptedPixels[i] >> 16) & 0xFF); // R
+        // 头部固定写在整帧的开头，与区域的位置无关
+        if (writeHeader) {
+            byte[] headerData = new byte[LsbHeader.CARRIER_BYTES];
+            encryptedFrame.get(0, 0, headerData);
+            LsbHeader.write(layout, headerData, headerData.length);
+            encryptedFrame.put(0, 0, headerData);
         }
+    }
 
-        encryptedFrame.put(0, 0, encryptedData);
+    /**
+     * 区域是否完全位于帧内
+     */
+    static boolean contains(Mat frame, Rect region) {
+        return region.x + region.width <= frame.cols() && region.y + region.height <= frame.rows();
+    }
 
-        return encryptedFrame;
+    /**
+     * 按字节加密交错存储的像素数据，每个字节的运算与 encryptWithLSB 相同
+     * 具体实现（普通循环或 Vector API）由 LsbKernel 选择
+     * encryptedData 可以与 originalData 是同一个数组
+     * @param originalData 原始像素字节
+     * @param secretData 涉密像素字节
+     * @param encryptedData 加密后的像素字节
+     * @param length 处理的字节数
+     */
+    public static void encryptBytesWithLSB(byte[] originalData, byte[] secretData,
+                                           byte[] encryptedData, int length) {
+        LsbKernel.current().encrypt(originalData, secretData, encryptedData, length);
+    }
+
+    /**
+     * 按嵌入参数加密像素字节：各通道位数相同时使用 LsbKernel，否则逐通道处理
+     * @param layout 嵌入参数
+     */
+    public static void encryptBytesWithLSB(byte[] originalData, byte[] secretData,
+                                           byte[] encryptedData, int length, LsbLayout layout) {
+        int bits = layout.uniformBits();
+        if (bits > 0) {
+            LsbKernel.current().encrypt(originalData, secretData, encryptedData, length, bits);
+        } else {
+            ScalarLsbKernel.encrypt(originalData, secretData, encryptedData, length, layout.getChannelBits());
+        }
     }
 
     /**
@@ -122,17 +211,37 @@ public class EncryptUtil {
      * @return 加密后的帧列表
      */
     public static List<Mat> encryptFramesWithLSB(List<Mat> originalFrames, List<Mat> secretFrames) {
+        // 使用线程池来加速加密过程，ExecutorService 用于管理线程池。
+        // Executors.newFixedThreadPool() 会创建一个固定大小的线程池，
+        // 大小为当前系统可用的处理器数量（Runtime.getRuntime().availableProcessors()）。
+        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return encryptFramesWithLSB(originalFrames, secretFrames, executorService);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * 在指定线程池中并行加密每一帧，所有帧都加密完才返回
+     * 需要边加密边编码时使用 {@link #encryptFramesWithLSB(List, List, FrameSink, FrameJob)}
+     * @param originalFrames 原始视频帧列表
+     * @param secretFrames 涉密视频帧列表
+     * @param executorService 执行加密任务的线程池，由调用方负责关闭
+     * @return 加密后的帧列表
+     */
+    public static List<Mat> encryptFramesWithLSB(List<Mat> originalFrames, List<Mat> secretFrames,
+                                                 ExecutorService executorService) {
         // 计算最大帧数
         int maxFrames = Math.max(originalFrames.size(), secretFrames.size());
 
+        // 涉密帧先统一缩放一次，之后各线程只读；不修改调用方的 Mat，循环使用时也不会重复缩放
+        List<Mat> scaledSecretFrames = scaleSecretFrames(originalFrames, secretFrames);
+
         // 创建加密视频帧集合
         List<Mat> encryptedFrames = new ArrayList<>();
 
-        // 使用线程池来加速加密过程，ExecutorService 用于管理线程池。
-        // Executors.newFixedThreadPool() 会创建一个固定大小的线程池，
-        // 大小为当前系统可用的处理器数量（Runtime.getRuntime().availableProcessors()）。
         // futures 是一个 List<Future<Mat>>，用于保存每个加密任务的 Future 对象，Future 可以用来等待任务的执行结果。
-        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
         List<Future<Mat>> futures = new ArrayList<>();
 
         for (int i = 0; i < maxFrames; i++) {
@@ -140,26 +249,977 @@ public class EncryptUtil {
 
             futures.add(executorService.submit(() -> {
                 Mat originalFrame = originalFrames.get(frameIndex % originalFrames.size());
-                Mat secretFrame = secretFrames.get(frameIndex % secretFrames.size());
-
-                // 调整尺寸
-                if (originalFrame.rows() != secretFrame.rows() || originalFrame.cols() != secretFrame.cols()) {
-                    Imgproc.resize(secretFrame, secretFrame, new Size(originalFrame.cols(), originalFrame.rows()));
-                }
+                Mat secretFrame = scaledSecretFrames.get(frameIndex % scaledSecretFrames.size());
 
                 return encryptFrameWithLSB(originalFrame, secretFrame);
             }));
         }
 
-        for (Future<Mat> future : futures) {
+        // 任一帧失败立即终止，避免生成缺帧的视频
+        for (int i = 0; i < futures.size(); i++) {
             try {
-                encryptedFrames.add(future.get());
+                encryptedFrames.add(futures.get(i).get());
             } catch (Exception e) {
-                e.printStackTrace();
+                futures.forEach(future -> future.cancel(true));
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new RuntimeException("第 " + i + " 帧加密失败", e instanceof ExecutionException ? e.getCause() : e);
             }
         }
 
-        executorService.shutdown();
+        scaledSecretFrames.forEach(frame -> {
+            if (!secretFrames.contains(frame)) {
+                frame.release();
+            }
+        });
         return encryptedFrames;
     }
+
+    /**
+     * 列表版本的边加密边写出：加密完的帧按帧序交给 sink，下一帧一完成就写出，编码不必等整段加密完
+     * 与 encryptFramesWithLSB(List, List) 一样按帧序号对齐、较短的视频从头循环，不修改调用方的 Mat
+     * @param originalFrames 原始视频帧列表
+     * @param secretFrames 涉密视频帧列表
+     * @param sink 加密帧的输出端，例如 VideoWriterSink 或 FfmpegSink
+     * @param job 任务上下文，提供共享线程池、在途帧数上限和取消标记
+     * @return 加密的帧数
+     * @throws IOException 任一帧失败时抛出
+     */
+    public static long encryptFramesWithLSB(List<Mat> originalFrames, List<Mat> secretFrames, FrameSink sink,
+                                            FrameJob job) throws IOException {
+        int maxFrames = Math.max(originalFrames.size(), secretFrames.size());
+        List<Mat> scaledSecretFrames = scaleSecretFrames(originalFrames, secretFrames);
+        int[] next = {0};
+        try {
+            // 原视频帧复制到帧槽中，帧槽归还时不会释放调用方的 Mat；涉密帧各线程只读，直接使用
+            return FramePipeline.run(inputs -> {
+                        if (next[0] == maxFrames) {
+                            return false;
+                        }
+                        originalFrames.get(next[0] % originalFrames.size()).copyTo(inputs[0]);
+                        next[0]++;
+                        return true;
+                    },
+                    (frameIndex, inputs, output) -> {
+                        Mat secretFrame = scaledSecretFrames.get((int) (frameIndex % scaledSecretFrames.size()));
+                        long start = FrameMetrics.start();
+                        encryptFrameWithLSB(inputs[0], secretFrame, output);
+                        FrameMetrics.record(FrameMetrics.Stage.LSB, start);
+                    }, sink, 1, job);
+        } finally {
+            scaledSecretFrames.forEach(frame -> {
+                if (!secretFrames.contains(frame)) {
+                    frame.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * 把涉密帧缩放到原视频第一帧的尺寸，尺寸已经相同的帧直接使用
+     */
+    private static List<Mat> scaleSecretFrames(List<Mat> originalFrames, List<Mat> secretFrames) {
+        if (originalFrames.isEmpty()) {
+            return secretFrames;
+        }
+        Size size = originalFrames.get(0).size();
+        List<Mat> scaledFrames = new ArrayList<>(secretFrames.size());
+        for (Mat secretFrame : secretFrames) {
+            if (secretFrame.size().equals(size)) {
+                scaledFrames.add(secretFrame);
+            } else {
+                Mat scaled = new Mat();
+                Imgproc.resize(secretFrame, scaled, size);
+                scaledFrames.add(scaled);
+            }
+        }
+        return scaledFrames;
+    }
+
+    /**
+     * encryptFramesWithLSB 的流式版本：边读取边加密边写出，不在内存中保存整段视频
+     * 与列表版本一致，按帧序号对齐，较短的视频会从头循环，总帧数为两段视频中较长者的帧数
+     * @param originalCapture 原视频
+     * @param secretCapture 涉密视频
+     * @param sink 加密帧的输出端
+     * @param job 任务上下文，提供共享线程池、在途帧数上限和取消标记
+     * @return 加密的帧数
+     * @throws IOException 任一帧失败时抛出
+     */
+    public static long encryptFramesWithLSB(VideoCapture originalCapture, VideoCapture secretCapture,
+                                            FrameSink sink, FrameJob job) throws IOException {
+        return encryptFramesWithLSB(originalCapture, secretCapture, FrameAlignment.INDEX, SecretScaling.DEFAULT,
+                sink, job);
+    }
+
+    /**
+     * 流式加密，可以选择帧对齐和涉密帧的缩放方式
+     * 输出沿用原视频的帧率；两段视频都至少完整播放一遍，较短的一段从头循环
+     * 涉密帧在载入时缩放到原视频的尺寸，每帧只缩放一次，处理线程只读不写；
+     * 涉密视频需要循环且缩放后不超过缓存上限时，整段缓存在内存中，循环时不再重复解码和缩放
+     * @param originalCapture 原视频
+     * @param secretCapture 涉密视频
+     * @param alignment 帧对齐方式
+     * @param scaling 涉密帧的缩放方式
+     * @param sink 加密帧的输出端
+     * @param job 任务上下文，提供共享线程池、在途帧数上限和取消标记
+     * @return 加密的帧数
+     * @throws IOException 任一帧失败时抛出
+     */
+    public static long encryptFramesWithLSB(VideoCapture originalCapture, VideoCapture secretCapture,
+                                            FrameAlignment alignment, SecretScaling scaling,
+                                            FrameSink sink, FrameJob job)
+            throws IOException {
+        return encryptFramesWithLSB(originalCapture, secretCapture, alignment, scaling, LsbLayout.DEFAULT, sink, job);
+    }
+
+    /**
+     * 流式加密，可以选择帧对齐、涉密帧的缩放方式和每个通道的嵌入位数，嵌入参数写入第一帧的头部
+     * @param originalCapture 原视频
+     * @param secretCapture 涉密视频
+     * @param alignment 帧对齐方式
+     * @param scaling 涉密帧的缩放方式
+     * @param layout 嵌入参数，必须是逐像素嵌入
+     * @param sink 加密帧的输出端
+     * @param job 任务上下文，提供共享线程池、在途帧数上限和取消标记
+     * @return 加密的帧数
+     * @throws IOException 任一帧失败时抛出
+     */
+    public static long encryptFramesWithLSB(VideoCapture originalCapture, VideoCapture secretCapture,
+                                            FrameAlignment alignment, SecretScaling scaling, LsbLayout layout,
+                                            FrameSink sink, FrameJob job)
+            throws IOException {
+        VideoInfo originalInfo = VideoInfo.of(originalCapture);
+        // 两路视频各在自己的线程中解码，读取线程只负责把同一时刻的两帧配对
+        try (FrameDecoder originalDecoder = new FrameDecoder(originalCapture, true, DECODE_PREFETCH, "original-decoder")) {
+            return encryptFramesWithLSB(originalDecoder, originalInfo, secretCapture, alignment, scaling, layout,
+                    sink, job);
+        }
+    }
+
+    /**
+     * 流式加密，原视频的帧由调用方提供，例如直接读取缓存的原始帧，不需要再解码
+     * @param originalStream 原视频的帧来源，需要支持循环，由调用方关闭
+     * @param originalInfo 原视频的信息
+     * @see #encryptFramesWithLSB(VideoCapture, VideoCapture, FrameAlignment, SecretScaling, LsbLayout, FrameSink, FrameJob)
+     */
+    public static long encryptFramesWithLSB(FrameStream originalStream, VideoInfo originalInfo,
+                                            VideoCapture secretCapture, FrameAlignment alignment,
+                                            SecretScaling scaling, LsbLayout layout, FrameSink sink, FrameJob job)
+            throws IOException {
+        if (layout.getMode() != EmbeddingMode.PIXEL) {
+            throw new IllegalArgumentException("打包嵌入请使用 embedPayload");
+        }
+        VideoInfo secretInfo = VideoInfo.of(secretCapture);
+        // 指定了嵌入区域时，涉密帧只缩放到区域的尺寸
+        Rect region = layout.getRegion();
+        Size targetSize = region != null ? region.size() : new Size(originalInfo.getWidth(), originalInfo.getHeight());
+
+        ScaledFrameCache cache = null;
+        if (scaling.getCacheMaxBytes() > 0 && loops(originalInfo, secretInfo, alignment)) {
+            cache = ScaledFrameCache.load(secretCapture, targetSize, scaling.getInterpolation(),
+                    scaling.getCacheMaxBytes());
+        }
+
+        try (FrameArena.Reservation reservation = reserve(originalInfo, 3, 2 * DECODE_PREFETCH + 1, job);
+             FrameStream secretStream = cache != null ? cache
+                     : new FrameDecoder(secretCapture, true, DECODE_PREFETCH, "secret-decoder",
+                             targetSize, scaling.getInterpolation())) {
+
+            FrameProcessor processor = new FrameProcessor(scaling.getInterpolation(), layout);
+            if (alignment == FrameAlignment.TIMESTAMP) {
+                TimestampAlignedSource source = new TimestampAlignedSource(originalStream, secretStream);
+                try {
+                    return FramePipeline.run(source, processor, sink, 2, job);
+                } finally {
+                    // 失败时管线已停止读取，交换来的帧同样要归还
+                    source.release();
+                }
+            }
+            return FramePipeline.run(new IndexAlignedSource(originalStream, secretStream), processor, sink, 2, job);
+        }
+    }
+
+    /**
+     * 分段加密：只输出第 firstFrame 帧开始的 frameCount 帧，各段可以分别处理、并行处理
+     * 两段视频直接定位到该段对应的位置；涉密帧按两段视频的帧率换算出的序号配对，不依赖逐帧时间戳，
+     * 因此需要容器记录帧数。较短的一段从头循环，总帧数由调用方按 encryptFramesWithLSB 的规则算出
+     * @param originalCapture 原视频
+     * @param secretCapture 涉密视频
+     * @param alignment 帧对齐方式
+     * @param scaling 涉密帧的缩放方式
+     * @param layout 嵌入参数，必须是逐像素嵌入，第 0 帧所在的段写入头部
+     * @param firstFrame 该段第一帧的帧序号
+     * @param frameCount 该段的帧数
+     * @param sink 该段加密帧的输出端
+     * @param job 任务上下文
+     * @return 加密的帧数
+     * @throws IOException 视频没有记录帧数，或任一帧失败时抛出
+     */
+    public static long encryptChunkWithLSB(VideoCapture originalCapture, VideoCapture secretCapture,
+                                           FrameAlignment alignment, SecretScaling scaling, LsbLayout layout,
+                                           long firstFrame, long frameCount, FrameSink sink, FrameJob job)
+            throws IOException {
+        if (layout.getMode() != EmbeddingMode.PIXEL) {
+            throw new IllegalArgumentException("打包嵌入请使用 embedPayloadChunk");
+        }
+        VideoInfo originalInfo = VideoInfo.of(originalCapture);
+        VideoInfo secretInfo = VideoInfo.of(secretCapture);
+        if (originalInfo.getFrameCount() <= 0 || secretInfo.getFrameCount() <= 0) {
+            throw new IOException("分段加密需要视频记录帧数");
+        }
+        Rect region = layout.getRegion();
+        Size targetSize = region != null ? region.size() : new Size(originalInfo.getWidth(), originalInfo.getHeight());
+
+        // 按帧序号对齐时每输出一帧涉密视频前进一帧，按时间戳对齐时按帧率之比前进
+        double secretStep = alignment == FrameAlignment.INDEX ? 1 : secretInfo.getFps() / originalInfo.getFps();
+        long secretFrames = secretInfo.getFrameCount();
+        long secretStart = ChunkSource.secretIndex(firstFrame, secretStep, secretFrames);
+
+        // 缓存从头解码整段涉密视频，需要在定位之前载入
+        ScaledFrameCache cache = null;
+        if (scaling.getCacheMaxBytes() > 0 && loops(originalInfo, secretInfo, alignment)) {
+            cache = ScaledFrameCache.load(secretCapture, targetSize, scaling.getInterpolation(),
+                    scaling.getCacheMaxBytes());
+        }
+        originalCapture.set(Videoio.CAP_PROP_POS_FRAMES, firstFrame % originalInfo.getFrameCount());
+        if (cache == null) {
+            secretCapture.set(Videoio.CAP_PROP_POS_FRAMES, secretStart);
+        }
+
+        try (FrameArena.Reservation reservation = reserve(originalInfo, 3, 2 * DECODE_PREFETCH + 1, job);
+             FrameDecoder originalDecoder = new FrameDecoder(originalCapture, true, DECODE_PREFETCH, "original-decoder");
+             FrameStream secretStream = cache != null ? cache
+                     : new FrameDecoder(secretCapture, true, DECODE_PREFETCH, "secret-decoder",
+                             targetSize, scaling.getInterpolation())) {
+            ChunkSource source = new ChunkSource(originalDecoder, secretStream, firstFrame, frameCount,
+                    secretStep, secretFrames, cache != null ? 0 : secretStart);
+            try {
+                return FramePipeline.run(source, new FrameProcessor(scaling.getInterpolation(), layout), sink, 2,
+                        job, firstFrame);
+            } finally {
+                // 失败或重试时同样归还与解码器交换来的涉密帧
+                source.release();
+            }
+        }
+    }
+
+    /**
+     * 批量加密：同一个原视频分别嵌入多个涉密视频，原视频只解码一遍
+     * 每一帧原视频与各涉密视频的对应帧分别加密，结果上下拼在同一个输出帧中，写出时再按行拆给各自的输出端；
+     * 各输出与单独调用 encryptFramesWithLSB 的结果相同：原视频与该涉密视频都播完一遍时该输出结束，
+     * 所有输出都结束后整个管线结束。一个帧槽的输出帧是单个输出的 n 倍，帧缓冲内存随涉密视频数增长
+     * @param originalStream 原视频的帧来源，需要支持循环，由调用方关闭
+     * @param originalInfo 原视频的信息
+     * @param secretCaptures 涉密视频
+     * @param alignment 帧对齐方式
+     * @param scaling 涉密帧的缩放方式，缓存上限由各涉密视频平分
+     * @param layouts 每个涉密视频的嵌入参数，必须是逐像素嵌入
+     * @param sinks 每个涉密视频的输出端，由调用方关闭
+     * @param job 任务上下文，进度按原视频的帧计算
+     * @return 每个输出写出的帧数
+     * @throws IOException 任一帧失败时抛出
+     */
+    public static long[] encryptBatchWithLSB(FrameStream originalStream, VideoInfo originalInfo,
+                                             List<VideoCapture> secretCaptures, FrameAlignment alignment,
+                                             SecretScaling scaling, List<LsbLayout> layouts,
+                                             List<FrameSink> sinks, FrameJob job) throws IOException {
+        int count = secretCaptures.size();
+        if (layouts.size() != count || sinks.size() != count) {
+            throw new IllegalArgumentException("涉密视频、嵌入参数和输出端的数量不一致");
+        }
+        List<FrameStream> secretStreams = new ArrayList<>();
+        try (FrameArena.Reservation reservation = reserve(originalInfo, 2 * count + 1,
+                DECODE_PREFETCH * (count + 1), job)) {
+            for (int i = 0; i < count; i++) {
+                LsbLayout layout = layouts.get(i);
+                if (layout.getMode() != EmbeddingMode.PIXEL) {
+                    throw new IllegalArgumentException("打包嵌入请使用 embedPayload");
+                }
+                VideoCapture secretCapture = secretCaptures.get(i);
+                Rect region = layout.getRegion();
+                Size targetSize = region != null ? region.size()
+                        : new Size(originalInfo.getWidth(), originalInfo.getHeight());
+                ScaledFrameCache cache = null;
+                if (scaling.getCacheMaxBytes() > 0
+                        && loops(originalInfo, VideoInfo.of(secretCapture), alignment)) {
+                    cache = ScaledFrameCache.load(secretCapture, targetSize, scaling.getInterpolation(),
+                            scaling.getCacheMaxBytes() / count);
+                }
+                secretStreams.add(cache != null ? cache
+                        : new FrameDecoder(secretCapture, true, DECODE_PREFETCH, "secret-decoder-" + (i + 1),
+                                targetSize, scaling.getInterpolation()));
+            }
+
+            // 各输出结束的帧序号，读取线程写入，处理线程和写出线程只读取不早于该帧的结果
+            AtomicLongArray ends = new AtomicLongArray(count);
+            for (int i = 0; i < count; i++) {
+                ends.set(i, Long.MAX_VALUE);
+            }
+            List<FrameProcessor> processors = new ArrayList<>();
+            for (LsbLayout layout : layouts) {
+                processors.add(new FrameProcessor(scaling.getInterpolation(), layout));
+            }
+            BatchSource source = new BatchSource(originalStream, secretStreams, alignment, ends);
+            FanOutSink sink = new FanOutSink(sinks, ends);
+            try {
+                FramePipeline.run(source, new BatchProcessor(processors, ends), sink, count + 1, job);
+            } finally {
+                source.release();
+            }
+            return sink.written;
+        } finally {
+            for (FrameStream stream : secretStreams) {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * 打包嵌入：把涉密文件的原始字节按位连续写入原视频各帧，写完后剩余的帧保持原样
+     * 输出帧数与原视频相同，涉密文件只需要占用开头的若干帧
+     * @param originalCapture 原视频（载体）
+     * @param payloadPath 涉密文件，按原样嵌入，不解码
+     * @param layout 嵌入参数，必须是打包嵌入，payloadLength 与文件大小一致
+     * @param sink 加密帧的输出端
+     * @param job 任务上下文，提供共享线程池、在途帧数上限和取消标记
+     * @return 输出的帧数
+     * @throws IOException 载体容量不足或任一帧失败时抛出
+     */
+    public static long embedPayload(VideoCapture originalCapture, Path payloadPath, LsbLayout layout,
+                                    FrameSink sink, FrameJob job) throws IOException {
+        if (layout.getMode() != EmbeddingMode.PACKED) {
+            throw new IllegalArgumentException("逐像素嵌入请使用 encryptFramesWithLSB");
+        }
+        long framesNeeded = checkCapacity(VideoInfo.of(originalCapture), layout);
+
+        long frameCount = embedPayload(originalCapture, payloadPath, layout, 0, -1, sink, job);
+
+        // 容器记录的帧数只是估计值，实际帧数不够时整个输出作废
+        if (frameCount < framesNeeded) {
+            throw new IOException(capacityMessage(framesNeeded, frameCount));
+        }
+        return frameCount;
+    }
+
+    /**
+     * 分段打包嵌入：只输出第 firstFrame 帧开始的 frameCount 帧，原视频直接定位到该段的开头
+     * 每帧存放的文件区间由帧序号算出，各段可以分别处理；载体容量由调用方事先检查
+     * @param originalCapture 原视频（载体）
+     * @param payloadPath 涉密文件
+     * @param layout 嵌入参数，必须是打包嵌入
+     * @param firstFrame 该段第一帧的帧序号
+     * @param frameCount 该段的帧数
+     * @param sink 该段加密帧的输出端
+     * @param job 任务上下文
+     * @return 输出的帧数，原视频提前结束时少于 frameCount
+     * @throws IOException 任一帧失败时抛出
+     */
+    public static long embedPayloadChunk(VideoCapture originalCapture, Path payloadPath, LsbLayout layout,
+                                         long firstFrame, long frameCount, FrameSink sink, FrameJob job)
+            throws IOException {
+        if (layout.getMode() != EmbeddingMode.PACKED) {
+            throw new IllegalArgumentException("逐像素嵌入请使用 encryptChunkWithLSB");
+        }
+        if (firstFrame > 0) {
+            originalCapture.set(Videoio.CAP_PROP_POS_FRAMES, firstFrame);
+        }
+        return embedPayload(originalCapture, payloadPath, layout, firstFrame, frameCount, sink, job);
+    }
+
+    /**
+     * @param frameCount 最多输出的帧数，-1 表示读到原视频结尾
+     */
+    private static long embedPayload(VideoCapture originalCapture, Path payloadPath, LsbLayout layout,
+                                     long firstFrame, long frameCount, FrameSink sink, FrameJob job)
+            throws IOException {
+        VideoInfo originalInfo = VideoInfo.of(originalCapture);
+        int frameBytes = originalInfo.getWidth() * originalInfo.getHeight() * 3;
+
+        try (FrameArena.Reservation reservation = reserve(originalInfo, 2, DECODE_PREFETCH, job);
+             FileChannel channel = FileChannel.open(payloadPath, StandardOpenOption.READ);
+             FrameDecoder originalDecoder = new FrameDecoder(originalCapture, false, DECODE_PREFETCH,
+                     "original-decoder")) {
+            if (channel.size() != layout.getPayloadLength() || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("涉密文件大小与嵌入参数不一致，或超过 2GB");
+            }
+            // 各帧负责的文件区间可以由帧序号算出，处理线程直接从映射的文件中读取，互不依赖
+            MappedByteBuffer payload = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int[] channelBits = layout.getChannelBits();
+            long[] remaining = {frameCount};
+            return FramePipeline.run(inputs -> {
+                        if (remaining[0] == 0) {
+                            return false;
+                        }
+                        remaining[0]--;
+                        return originalDecoder.next(inputs, 0);
+                    },
+                    (frameIndex, inputs, output) -> {
+                        Mat originalFrame = inputs[0];
+                        int length = (int) (originalFrame.total() * originalFrame.channels());
+                        if (length != frameBytes) {
+                            throw new IOException("第 " + frameIndex + " 帧的尺寸与视频信息不一致");
+                        }
+                        long offset = layout.payloadOffset(frameIndex, frameBytes);
+                        if (offset >= layout.getPayloadLength()) {
+                            originalFrame.copyTo(output);
+                            return;
+                        }
+                        int count = (int) Math.min(layout.frameCapacity(frameBytes, frameIndex == 0),
+                                layout.getPayloadLength() - offset);
+
+                        long start = FrameMetrics.start();
+                        byte[] carrier = FrameBuffers.get(0, length);
+                        byte[] slice = FrameBuffers.get(1, count);
+                        originalFrame.get(0, 0, carrier);
+                        payload.get((int) offset, slice, 0, count);
+                        if (frameIndex == 0) {
+                            LsbHeader.write(layout, carrier, length);
+                            BitPacker.pack(slice, 0, count, carrier, LsbHeader.CARRIER_BYTES, channelBits);
+                        } else {
+                            BitPacker.pack(slice, 0, count, carrier, 0, channelBits);
+                        }
+                        output.create(originalFrame.rows(), originalFrame.cols(), originalFrame.type());
+                        output.put(0, 0, carrier);
+                        FrameMetrics.record(FrameMetrics.Stage.LSB, start);
+                    }, sink, 1, job, firstFrame);
+        }
+    }
+
+    /**
+     * 检查原视频能否容纳打包嵌入的涉密文件，帧数未知时只返回需要的帧数
+     * @param originalInfo 原视频（载体）
+     * @param layout 打包嵌入参数
+     * @return 需要的帧数
+     * @throws IOException 容量不足时抛出
+     */
+    public static long checkCapacity(VideoInfo originalInfo, LsbLayout layout) throws IOException {
+        long framesNeeded = layout.framesNeeded(originalInfo.getWidth() * originalInfo.getHeight() * 3);
+        if (originalInfo.getFrameCount() >= 0 && framesNeeded > originalInfo.getFrameCount()) {
+            throw new IOException(capacityMessage(framesNeeded, originalInfo.getFrameCount()));
+        }
+        return framesNeeded;
+    }
+
+    private static String capacityMessage(long framesNeeded, long frameCount) {
+        return "载体视频容量不足：涉密文件需要 " + framesNeeded + " 帧，原视频只有 " + frameCount
+                + " 帧，请增加嵌入位数或使用更长的原视频";
+    }
+
+    /**
+     * 涉密视频是否比原视频短，需要循环播放
+     */
+    private static boolean loops(VideoInfo originalInfo, VideoInfo secretInfo, FrameAlignment alignment) {
+        if (originalInfo.getFrameCount() < 0 || secretInfo.getFrameCount() < 0) {
+            return false;
+        }
+        return alignment == FrameAlignment.INDEX
+                ? secretInfo.getFrameCount() < originalInfo.getFrameCount()
+                : secretInfo.getDurationMillis() < originalInfo.getDurationMillis();
+    }
+
+    /**
+     * 按原视频的帧尺寸预留一次管线运行的帧内存，涉密帧缩放到不超过原视频的尺寸
+     * @see FrameArena#reservePipeline(long, int, int, FrameJob)
+     */
+    private static FrameArena.Reservation reserve(VideoInfo originalInfo, int slotFrames, int prefetchFrames,
+                                                  FrameJob job) throws IOException {
+        long frameBytes = (long) originalInfo.getWidth() * originalInfo.getHeight() * 3;
+        return FrameArena.shared().reservePipeline(frameBytes, slotFrames, prefetchFrames, job);
+    }
+
+    /**
+     * 加密一帧；涉密帧已在载入时缩放，只读不写，可能被多个线程同时使用
+     */
+    private static class FrameProcessor implements FramePipeline.FrameProcessor {
+
+        // 原视频实际帧尺寸与容器记录的不一致时，涉密帧在这里重新缩放到整帧（或嵌入区域）的尺寸
+        private static final ThreadLocal<Mat> SCALED = ThreadLocal.withInitial(Mat::new);
+
+        private final int interpolation;
+
+        private final LsbLayout layout;
+
+        private final Rect region;
+
+        private FrameProcessor(Interpolation interpolation, LsbLayout layout) {
+            this.interpolation = interpolation.getFlag();
+            this.layout = layout;
+            this.region = layout.getRegion();
+        }
+
+        @Override
+        public void process(long frameIndex, Mat[] inputs, Mat output) throws Exception {
+            Mat originalFrame = inputs[0];
+            Mat secretFrame = inputs[1];
+            Size targetSize = region != null ? region.size() : originalFrame.size();
+            if (secretFrame.rows() != (int) targetSize.height || secretFrame.cols() != (int) targetSize.width) {
+                Mat scaled = SCALED.get();
+                long start = FrameMetrics.start();
+                Imgproc.resize(secretFrame, scaled, targetSize, 0, 0, interpolation);
+                FrameMetrics.record(FrameMetrics.Stage.RESIZE, start);
+                secretFrame = scaled;
+            }
+            long start = FrameMetrics.start();
+            encryptFrameWithLSB(originalFrame, secretFrame, output, layout, frameIndex == 0);
+            FrameMetrics.record(FrameMetrics.Stage.LSB, start);
+        }
+    }
+
+    /**
+     * 按帧序号配对，某一路循环回开头说明它已经播完一遍，两路都播完一遍后结束
+     */
+    private static class IndexAlignedSource implements FramePipeline.FrameSource {
+
+        private final FrameStream originalStream;
+
+        private final FrameStream secretStream;
+
+        private boolean originalEnded;
+
+        private boolean secretEnded;
+
+        private IndexAlignedSource(FrameStream originalStream, FrameStream secretStream) {
+            this.originalStream = originalStream;
+            this.secretStream = secretStream;
+        }
+
+        @Override
+        public boolean read(Mat[] inputs) throws IOException {
+            if (!originalStream.next(inputs, 0) || !secretStream.next(inputs, 1)) {
+                return false;
+            }
+            if (originalStream.wrapped()) {
+                originalEnded = true;
+                if (secretEnded) {
+                    return false;
+                }
+            }
+            if (secretStream.wrapped()) {
+                secretEnded = true;
+                if (originalEnded) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean shared(int index) {
+            return (index == 0 ? originalStream : secretStream).shared();
+        }
+    }
+
+    /**
+     * 按时间戳配对：原视频逐帧输出，第 k 帧的时刻为 k / 原视频帧率，
+     * 涉密视频取时间戳不晚于该时刻的最后一帧，帧率较低时重复、较高时跳过
+     * 两路都播完一遍后结束
+     */
+    private static class TimestampAlignedSource implements FramePipeline.FrameSource {
+
+        private final FrameStream originalStream;
+
+        private final SecretTrack secretTrack;
+
+        private long frameIndex;
+
+        private boolean originalEnded;
+
+        private TimestampAlignedSource(FrameStream originalStream, FrameStream secretStream) {
+            this.originalStream = originalStream;
+            this.secretTrack = new SecretTrack(secretStream);
+        }
+
+        @Override
+        public boolean read(Mat[] inputs) throws IOException {
+            if (!originalStream.next(inputs, 0)) {
+                return false;
+            }
+            if (originalStream.wrapped()) {
+                originalEnded = true;
+                if (secretTrack.ended()) {
+                    return false;
+                }
+            }
+            if (!secretTrack.advance(frameIndex * originalStream.frameMillis())
+                    || (originalEnded && secretTrack.ended())) {
+                return false;
+            }
+            secretTrack.put(inputs, 1);
+            frameIndex++;
+            return true;
+        }
+
+        @Override
+        public boolean shared(int index) {
+            return index == 0 ? originalStream.shared() : secretTrack.shared();
+        }
+
+        private void release() {
+            secretTrack.release();
+        }
+    }
+
+    /**
+     * 按时间戳对齐时的一路涉密视频：给定原视频帧的时刻，前进到时间戳不晚于该时刻的最后一帧
+     * 涉密视频循环播放，时间线按轮数累加；第一次循环回开头后记为已播完一遍
+     */
+    private static class SecretTrack {
+
+        private final FrameStream secretStream;
+
+        // [0] 当前使用的涉密帧，[1] 预读的下一帧
+        private final Mat[] secretFrames = {new Mat(), new Mat()};
+
+        private boolean hasCurrent;
+
+        private boolean hasNext;
+
+        private boolean nextWrapped;
+
+        // 预读帧在涉密视频时间线上的时刻（毫秒），循环播放时累加
+        private double nextTime;
+
+        // 涉密视频已经完整播放的轮数对应的时长
+        private double secretOffset;
+
+        private double lastSecretTimestamp;
+
+        private boolean ended;
+
+        private SecretTrack(FrameStream secretStream) {
+            this.secretStream = secretStream;
+        }
+
+        /**
+         * @param time 原视频当前帧的时刻（毫秒）
+         * @return 没有可用的涉密帧时返回 false
+         */
+        private boolean advance(double time) throws IOException {
+            if (!hasCurrent && !hasNext) {
+                fetchNext();
+            }
+            while (hasNext && (!hasCurrent || nextTime <= time + TIMESTAMP_TOLERANCE_MILLIS)) {
+                // 预读帧成为当前帧，原来的当前帧留作下一次预读的缓冲区
+                Mat current = secretFrames[0];
+                secretFrames[0] = secretFrames[1];
+                secretFrames[1] = current;
+                hasCurrent = true;
+                if (nextWrapped) {
+                    ended = true;
+                }
+                fetchNext();
+            }
+            return hasCurrent;
+        }
+
+        /**
+         * @return 当前帧是否已经来自第二轮播放，即涉密视频已经完整播放过一遍
+         */
+        private boolean ended() {
+            return ended;
+        }
+
+        /**
+         * 把当前帧放入 inputs[index]：共享的只读帧直接引用，解码器的帧会被回收复用，需要复制
+         */
+        private void put(Mat[] inputs, int index) {
+            if (secretStream.shared()) {
+                inputs[index] = secretFrames[0];
+            } else {
+                secretFrames[0].copyTo(inputs[index]);
+            }
+        }
+
+        private void fetchNext() throws IOException {
+            hasNext = secretStream.next(secretFrames, 1);
+            if (!hasNext) {
+                return;
+            }
+            nextWrapped = secretStream.wrapped();
+            if (nextWrapped) {
+                secretOffset += lastSecretTimestamp + secretStream.frameMillis();
+            }
+            lastSecretTimestamp = secretStream.timestamp();
+            nextTime = secretOffset + lastSecretTimestamp;
+        }
+
+        /**
+         * @return put 放入的是否是共享流的帧，否则放入的是复制到帧槽中的帧
+         */
+        private boolean shared() {
+            return secretStream.shared();
+        }
+
+        private void release() {
+            if (!secretStream.shared()) {
+                // 与解码器交换过的帧来自 FrameArena
+                for (Mat frame : secretFrames) {
+                    FrameArena.shared().release(frame);
+                }
+            }
+        }
+    }
+
+    /**
+     * 批量加密的帧来源：原视频逐帧输出，inputs[i + 1] 放第 i 个涉密视频的对应帧，配对规则与单个加密相同
+     * 某个输出结束后不再读取它的涉密视频，所有输出都结束后返回 false
+     */
+    private static class BatchSource implements FramePipeline.FrameSource {
+
+        private final FrameStream originalStream;
+
+        private final List<FrameStream> secretStreams;
+
+        // 按时间戳对齐时每路涉密视频的时间线，按帧序号对齐时为 null
+        private final SecretTrack[] tracks;
+
+        private final boolean[] secretEnded;
+
+        private final AtomicLongArray ends;
+
+        private int active;
+
+        private long frameIndex;
+
+        private boolean originalEnded;
+
+        private BatchSource(FrameStream originalStream, List<FrameStream> secretStreams,
+                            FrameAlignment alignment, AtomicLongArray ends) {
+            this.originalStream = originalStream;
+            this.secretStreams = secretStreams;
+            this.ends = ends;
+            this.active = secretStreams.size();
+            this.secretEnded = new boolean[active];
+            this.tracks = alignment == FrameAlignment.TIMESTAMP ? new SecretTrack[active] : null;
+            if (tracks != null) {
+                for (int i = 0; i < active; i++) {
+                    tracks[i] = new SecretTrack(secretStreams.get(i));
+                }
+            }
+        }
+
+        @Override
+        public boolean read(Mat[] inputs) throws IOException {
+            if (active == 0 || !originalStream.next(inputs, 0)) {
+                return false;
+            }
+            if (originalStream.wrapped()) {
+                originalEnded = true;
+            }
+            double time = frameIndex * originalStream.frameMillis();
+            for (int i = 0; i < secretStreams.size(); i++) {
+                if (ends.get(i) != Long.MAX_VALUE) {
+                    continue;
+                }
+                boolean available;
+                if (tracks != null) {
+                    available = tracks[i].advance(time);
+                    secretEnded[i] = tracks[i].ended();
+                } else {
+                    FrameStream secretStream = secretStreams.get(i);
+                    available = secretStream.next(inputs, i + 1);
+                    if (available && secretStream.wrapped()) {
+                        secretEnded[i] = true;
+                    }
+                }
+                // 原视频和该涉密视频都播完一遍，这一帧及以后的帧不属于该输出
+                if (!available || (originalEnded && secretEnded[i])) {
+                    ends.set(i, frameIndex);
+                    active--;
+                } else if (tracks != null) {
+                    tracks[i].put(inputs, i + 1);
+                }
+            }
+            if (active == 0) {
+                return false;
+            }
+            frameIndex++;
+            return true;
+        }
+
+        @Override
+        public boolean shared(int index) {
+            return (index == 0 ? originalStream : secretStreams.get(index - 1)).shared();
+        }
+
+        private void release() {
+            if (tracks != null) {
+                for (SecretTrack track : tracks) {
+                    track.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 批量加密一帧：第 i 个结果写入输出帧的第 i 块行区域，已经结束的输出跳过
+     */
+    private static class BatchProcessor implements FramePipeline.FrameProcessor {
+
+        private final List<FrameProcessor> processors;
+
+        private final AtomicLongArray ends;
+
+        private BatchProcessor(List<FrameProcessor> processors, AtomicLongArray ends) {
+            this.processors = processors;
+            this.ends = ends;
+        }
+
+        @Override
+        public void process(long frameIndex, Mat[] inputs, Mat output) throws Exception {
+            Mat originalFrame = inputs[0];
+            int rows = originalFrame.rows();
+            output.create(rows * processors.size(), originalFrame.cols(), originalFrame.type());
+            for (int i = 0; i < processors.size(); i++) {
+                if (frameIndex >= ends.get(i)) {
+                    continue;
+                }
+                // 行区域与整帧共用数据，尺寸和类型一致时加密结果直接写入输出帧
+                Mat part = output.rowRange(i * rows, (i + 1) * rows);
+                try {
+                    processors.get(i).process(frameIndex, new Mat[]{originalFrame, inputs[i + 1]}, part);
+                } finally {
+                    part.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 按行拆分批量加密的输出帧，交给各自的输出端
+     */
+    private static class FanOutSink implements FrameSink {
+
+        private final List<FrameSink> sinks;
+
+        private final AtomicLongArray ends;
+
+        private final long[] written;
+
+        private long frameIndex;
+
+        private FanOutSink(List<FrameSink> sinks, AtomicLongArray ends) {
+            this.sinks = sinks;
+            this.ends = ends;
+            this.written = new long[sinks.size()];
+        }
+
+        @Override
+        public void write(Mat frame) throws IOException {
+            int rows = frame.rows() / sinks.size();
+            for (int i = 0; i < sinks.size(); i++) {
+                if (frameIndex >= ends.get(i)) {
+                    continue;
+                }
+                Mat part = frame.rowRange(i * rows, (i + 1) * rows);
+                try {
+                    sinks.get(i).write(part);
+                } finally {
+                    part.release();
+                }
+                written[i]++;
+            }
+            frameIndex++;
+        }
+
+        @Override
+        public void abort() {
+            for (FrameSink sink : sinks) {
+                sink.abort();
+            }
+        }
+
+        @Override
+        public void close() {
+            // 各输出端由调用方关闭
+        }
+    }
+
+    /**
+     * 分段加密的帧来源：原视频逐帧输出，第 k 帧配对涉密视频第 floor(k * secretStep) % secretFrames 帧，
+     * 只输出 frameCount 帧；涉密视频需要后退时（循环）继续向前读到下一轮
+     */
+    private static class ChunkSource implements FramePipeline.FrameSource {
+
+        private final FrameStream originalStream;
+
+        private final FrameStream secretStream;
+
+        private final double secretStep;
+
+        private final long secretFrames;
+
+        private final Mat[] current = {new Mat()};
+
+        private boolean hasCurrent;
+
+        private long frameIndex;
+
+        private long remaining;
+
+        // 当前涉密帧的序号，尚未读取时为下一次 next 取到的帧的序号减一
+        private long secretIndex;
+
+        /**
+         * @param secretPosition 涉密视频下一次 next 取到的帧的序号
+         */
+        private ChunkSource(FrameStream originalStream, FrameStream secretStream, long firstFrame, long frameCount,
+                            double secretStep, long secretFrames, long secretPosition) {
+            this.originalStream = originalStream;
+            this.secretStream = secretStream;
+            this.frameIndex = firstFrame;
+            this.remaining = frameCount;
+            this.secretStep = secretStep;
+            this.secretFrames = secretFrames;
+            this.secretIndex = secretPosition - 1;
+        }
+
+        static long secretIndex(long frameIndex, double secretStep, long secretFrames) {
+            // 加上一个很小的量，避免帧率之比的舍入误差让整数结果少 1
+            return Math.floorMod((long) Math.floor(frameIndex * secretStep + 1e-6), secretFrames);
+        }
+
+        @Override
+        public boolean read(Mat[] inputs) throws IOException {
+            if (remaining <= 0 || !originalStream.next(inputs, 0)) {
+                return false;
+            }
+            long target = secretIndex(frameIndex, secretStep, secretFrames);
+            // 容器记录的帧数与实际不符时序号会有偏差，最多前进 secretFrames 帧，不会死循环
+            long steps = Math.floorMod(target - secretIndex, secretFrames);
+            if (steps == 0 && !hasCurrent) {
+                steps = secretFrames;
+            }
+            for (long i = 0; i < steps; i++) {
+                if (!secretStream.next(current, 0)) {
+                    return false;
+                }
+                secretIndex = secretStream.wrapped() ? 0 : secretIndex + 1;
+                hasCurrent = true;
+            }
+
+            // 共享的只读帧直接引用，解码器的帧会被回收复用，需要复制
+            if (secretStream.shared()) {
+                inputs[1] = current[0];
+            } else {
+                current[0].copyTo(inputs[1]);
+            }
+            frameIndex++;
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public boolean shared(int index) {
+            return (index == 0 ? originalStream : secretStream).shared();
+        }
+
+        private void release() {
+            if (!secretStream.shared()) {
+                FrameArena.shared().release(current[0]);
+            }
+        }
+    }
 }
@@ -0,0 +1,377 @@
+package com.justin.videoencryption.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 统一启动和监督 FFmpeg 进程
+ * 1. 进程数上限：所有请求共享，达到上限时后来的进程等待，等待名额超过 acquireTimeout 时失败，避免并发任务过多时同时启动大量 FFmpeg；
+ *    必须同时运行的一批进程通过 reserve 一次拿到全部名额，不会与其他批次各拿一部分后互相等待；
+ * 2. 输出：FFmpeg 通过 -progress 把进度（frame=、speed= 等）写到标准输出，日志合并到同一个流，
+ *    由一个读取线程解析进度、以 debug 级别记录日志并保留最后几行，失败时附在异常信息中；
+ * 3. 超时：等待进程结束超过 runTimeout 时强制终止，默认不限制，长视频的编码和拼接可能需要很久
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class FfmpegProcess implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(FfmpegProcess.class);
+
+    /**
+     * 默认的等待名额超时时间
+     */
+    public static final Duration DEFAULT_ACQUIRE_TIMEOUT = Duration.ofMinutes(10);
+
+    /**
+     * 失败时附在异常信息中的日志行数
+     */
+    private static final int TAIL_LINES = 10;
+
+    // -progress 输出的进度行，例如 frame=120、speed=2.5x、progress=end
+    private static final Pattern PROGRESS_LINE = Pattern.compile("[a-z0-9_]+=\\S*");
+
+    private static volatile Semaphore slots = new Semaphore(Runtime.getRuntime().availableProcessors(), true);
+
+    private static volatile int maxProcesses = Runtime.getRuntime().availableProcessors();
+
+    private static volatile Duration acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+
+    // 为 0 时不限制
+    private static volatile Duration runTimeout = Duration.ZERO;
+
+    private static final AtomicInteger RUNNING = new AtomicInteger();
+
+    private static final AtomicInteger WAITING = new AtomicInteger();
+
+    private final String name;
+
+    private final Process process;
+
+    private final Semaphore slot;
+
+    private final Thread reader;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private final Deque<String> tail = new ArrayDeque<>();
+
+    private volatile long frame;
+
+    private volatile String speed = "";
+
+    private FfmpegProcess(String name, Process process, Semaphore slot) {
+        this.name = name;
+        this.process = process;
+        this.slot = slot;
+        this.reader = new Thread(this::readOutput, "ffmpeg-" + name);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * 一批必须同时运行的进程预留的名额，例如批量加密时各输出的编码进程
+     * 批次中的进程从这里取名额，进程结束后名额留在批次中给下一个进程使用，关闭时全部归还
+     */
+    public static class Slots implements AutoCloseable {
+
+        private final Semaphore shared;
+
+        private final int count;
+
+        private final Semaphore local;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Slots(Semaphore shared, int count) {
+            this.shared = shared;
+            this.count = count;
+            this.local = new Semaphore(count, true);
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * 归还全部名额，应在批次中的进程都结束后调用
+         */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                shared.release(count);
+            }
+        }
+    }
+
+    /**
+     * 设置进程数上限和超时时间，应用启动时调用一次
+     * @param maxProcesses 同时运行的 FFmpeg 进程数上限，小于等于 0 时为 CPU 核数
+     * @param acquireTimeout 等待空闲名额的超时时间
+     * @param runTimeout 等待进程结束的超时时间，为 null 或 0 时不限制
+     */
+    public static void configure(int maxProcesses, Duration acquireTimeout, Duration runTimeout) {
+        int max = maxProcesses > 0 ? maxProcesses : Runtime.getRuntime().availableProcessors();
+        FfmpegProcess.slots = new Semaphore(max, true);
+        FfmpegProcess.maxProcesses = max;
+        FfmpegProcess.acquireTimeout = acquireTimeout;
+        FfmpegProcess.runTimeout = runTimeout != null ? runTimeout : Duration.ZERO;
+    }
+
+    /**
+     * 一次预留 count 个名额：要么全部拿到，要么一个都不占用地等待，多个批次不会互相等待到超时
+     * @param count 名额数
+     * @return 预留的名额，批次结束后关闭
+     * @throws IOException count 超过进程数上限时立即抛出；等待超时时抛出
+     */
+    public static Slots reserve(int count) throws IOException {
+        if (count > maxProcesses) {
+            throw new IOException("需要同时运行 " + count + " 个 FFmpeg 进程，超过上限 " + maxProcesses);
+        }
+        Semaphore shared = slots;
+        acquire(shared, count);
+        return new Slots(shared, count);
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) throws IOException {
+        WAITING.addAndGet(permits);
+        try {
+            if (!semaphore.tryAcquire(permits, acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("FFmpeg 进程数已达上限 " + maxProcesses + "，等待 " + acquireTimeout
+                        + " 后仍没有 " + permits + " 个空闲名额");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待启动 FFmpeg 时被中断");
+        } finally {
+            WAITING.addAndGet(-permits);
+        }
+    }
+
+    /**
+     * 启动 FFmpeg，进程数达到上限时等待
+     * @see #start(String, List, Slots)
+     */
+    public static FfmpegProcess start(String name, List<String> args) throws IOException {
+        return start(name, args, null);
+    }
+
+    /**
+     * 启动 FFmpeg，名额用完时等待
+     * @param name 日志和线程名中的名称
+     * @param args FFmpeg 的参数，不含可执行文件路径，进度和日志参数由这里添加
+     * @param reserved 从预留的名额中启动，为 null 时使用所有请求共享的名额
+     * @return 已启动的进程，用完后关闭
+     * @throws IOException 等待超时或启动失败时抛出
+     */
+    public static FfmpegProcess start(String name, List<String> args, Slots reserved) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(AudioUtil.ffmpegPath);
+        command.add("-hide_banner");
+        command.add("-nostats");
+        command.add("-loglevel");
+        command.add("warning");
+        command.add("-progress");
+        command.add("pipe:1");
+        command.addAll(args);
+
+        Semaphore slot = reserved != null ? reserved.local : slots;
+        acquire(slot, 1);
+
+        Process process;
+        try {
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        } catch (IOException | RuntimeException e) {
+            slot.release();
+            throw e;
+        }
+        RUNNING.incrementAndGet();
+        return new FfmpegProcess(name, process, slot);
+    }
+
+    /**
+     * 启动 FFmpeg 并等待结束，不使用标准输入
+     * @see #start(String, List, Slots)
+     * @see #waitFor()
+     */
+    public static void run(String name, List<String> args) throws IOException {
+        run(name, args, null);
+    }
+
+    /**
+     * 从预留的名额中启动 FFmpeg 并等待结束
+     * @see #run(String, List)
+     */
+    public static void run(String name, List<String> args, Slots reserved) throws IOException {
+        try (FfmpegProcess process = start(name, args, reserved)) {
+            // 关闭标准输入，FFmpeg 不会等待交互命令
+            process.getOutputStream().close();
+            process.waitFor();
+        }
+    }
+
+    /**
+     * @return 进程的标准输入，例如写入原始帧
+     */
+    public OutputStream getOutputStream() {
+        return process.getOutputStream();
+    }
+
+    /**
+     * 等待进程结束，超过 runTimeout 时强制终止
+     * @throws IOException 超时或退出代码不为 0 时抛出，包含最后几行日志
+     */
+    public void waitFor() throws IOException {
+        int exitCode = exitCode();
+        if (exitCode != 0) {
+            throw new IOException("FFmpeg（" + name + "）执行失败，退出代码：" + exitCode + tailMessage());
+        }
+        log.info("FFmpeg（{}）完成，{} 帧，速度 {}", name, frame, speed);
+    }
+
+    /**
+     * 等待进程结束并返回退出代码，用于退出代码不为 0 也是正常结果的探测命令
+     * @throws IOException 超时时抛出
+     */
+    public int exitCode() throws IOException {
+        Duration timeout = runTimeout;
+        try {
+            if (timeout.isZero() || timeout.isNegative()) {
+                process.waitFor();
+            } else if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                throw new IOException("FFmpeg（" + name + "）超过 " + timeout + " 没有结束，已终止" + tailMessage());
+            }
+            // 读完剩余的输出，拿到最终进度
+            reader.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待 FFmpeg 时被中断");
+        }
+        return process.exitValue();
+    }
+
+    /**
+     * @return 进程已退出时返回退出代码说明，否则返回空字符串
+     */
+    public String exitStatus() {
+        return process.isAlive() ? "" : "，退出代码：" + process.exitValue() + tailMessage();
+    }
+
+    /**
+     * @return 最近一次进度报告的已输出帧数
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return 最近一次进度报告的速度，例如 2.5x
+     */
+    public String getSpeed() {
+        return speed;
+    }
+
+    /**
+     * 进程仍在运行时强制终止，归还进程名额
+     */
+    @Override
+    public void close() {
+        if (process.isAlive()) {
+            process.destroyForcibly();
+        }
+        release();
+    }
+
+    private void release() {
+        if (released.compareAndSet(false, true)) {
+            RUNNING.decrementAndGet();
+            slot.release();
+        }
+    }
+
+    private void readOutput() {
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (PROGRESS_LINE.matcher(line).matches()) {
+                    progress(line);
+                    continue;
+                }
+                log.debug("FFmpeg（{}）：{}", name, line);
+                synchronized (tail) {
+                    if (tail.size() == TAIL_LINES) {
+                        tail.removeFirst();
+                    }
+                    tail.addLast(line);
+                }
+            }
+        } catch (IOException e) {
+            // 进程被终止时输出流关闭
+        } finally {
+            // 输出结束说明进程已经退出，不必等调用方关闭才归还名额
+            release();
+        }
+    }
+
+    private void progress(String line) {
+        int separator = line.indexOf('=');
+        String key = line.substring(0, separator);
+        String value = line.substring(separator + 1);
+        if (key.equals("frame")) {
+            try {
+                frame = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                // 个别版本在开始时输出 N/A
+            }
+        } else if (key.equals("speed")) {
+            speed = value;
+        }
+    }
+
+    private String tailMessage() {
+        synchronized (tail) {
+            return tail.isEmpty() ? "" : "\n" + String.join("\n", tail);
+        }
+    }
+
+    /**
+     * @return 正在运行的 FFmpeg 进程数
+     */
+    public static int running() {
+        return RUNNING.get();
+    }
+
+    /**
+     * @return 等待空闲名额的 FFmpeg 进程数
+     */
+    public static int waiting() {
+        return WAITING.get();
+    }
+
+    /**
+     * @return 同时运行的 FFmpeg 进程数上限
+     */
+    public static int getMaxProcesses() {
+        return maxProcesses;
+    }
+}
@@ -0,0 +1,259 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于 FFmpeg 的帧输出端：把 BGR 原始帧通过标准输入交给一个 FFmpeg 进程，
+ * 同时从音频来源读取音轨，一次写出最终的有声视频，不产生中间文件
+ * 进程由 FfmpegProcess 启动，受进程数上限和超时时间约束
+ * 视频编码由 OutputCodec 决定，使用无损编码时 LSB 中嵌入的数据不会被压缩破坏
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class FfmpegSink implements FrameSink {
+
+    private static final Logger log = LoggerFactory.getLogger(FfmpegSink.class);
+
+    private final Path outputVideoPath;
+
+    private final double fps;
+
+    private final List<Path> audioInputs;
+
+    private final OutputCodec codec;
+
+    private final FfmpegProcess.Slots reserved;
+
+    private FfmpegProcess process;
+
+    private boolean aborted;
+
+    private OutputStream stdin;
+
+    private int rows;
+
+    private int cols;
+
+    /**
+     * @param outputVideoPath 输出视频路径
+     * @param fps 帧率
+     * @param audioInputs 音频来源（可以直接是视频文件），第一个保留原声，其余静音混入；为空时输出无声视频，
+     *                    启动时先检查各来源是否有音轨，没有音轨的来源按 withAudio 的规则处理
+     * @param codec 视频编码，输出路径的扩展名应与 codec.getExtension() 一致
+     */
+    public FfmpegSink(Path outputVideoPath, double fps, List<Path> audioInputs, OutputCodec codec) {
+        this(outputVideoPath, fps, audioInputs, codec, null);
+    }
+
+    /**
+     * @param reserved 一批同时编码的输出预留的 FFmpeg 名额，为 null 时使用共享名额
+     * @see #FfmpegSink(Path, double, List, OutputCodec)
+     */
+    public FfmpegSink(Path outputVideoPath, double fps, List<Path> audioInputs, OutputCodec codec,
+                      FfmpegProcess.Slots reserved) {
+        this.outputVideoPath = outputVideoPath;
+        this.fps = fps;
+        this.audioInputs = audioInputs;
+        this.codec = codec;
+        this.reserved = reserved;
+    }
+
+    @Override
+    public void write(Mat frame) throws IOException {
+        if (frame.type() != CvType.CV_8UC3) {
+            throw new IOException("只支持 8 位 BGR 帧");
+        }
+        if (process == null) {
+            rows = frame.rows();
+            cols = frame.cols();
+            start();
+            log.info("开始生成视频");
+        } else if (frame.rows() != rows || frame.cols() != cols) {
+            throw new IOException("帧尺寸不一致：" + frame.cols() + "x" + frame.rows()
+                    + "，应为 " + cols + "x" + rows);
+        }
+
+        int length = (int) (frame.total() * frame.channels());
+        byte[] buffer = FrameBuffers.get(0, length);
+        frame.get(0, 0, buffer);
+        try {
+            stdin.write(buffer, 0, length);
+        } catch (IOException e) {
+            // FFmpeg 提前退出时管道会断开，报告退出码更容易定位问题
+            throw new IOException("FFmpeg 已停止接收视频帧" + process.exitStatus(), e);
+        }
+    }
+
+    private void start() throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("-y");
+
+        // 输入 0：标准输入中的原始 BGR 帧
+        command.add("-f");
+        command.add("rawvideo");
+        command.add("-pix_fmt");
+        command.add("bgr24");
+        command.add("-video_size");
+        command.add(cols + "x" + rows);
+        command.add("-framerate");
+        command.add(String.valueOf(fps));
+        command.add("-i");
+        command.add("pipe:0");
+
+        List<Path> audioInputs = withAudio(this.audioInputs, reserved);
+        addAudioInputs(command, audioInputs);
+        command.add("-map");
+        command.add("0:v");
+        addAudioMapping(command, audioInputs);
+
+        command.addAll(codec.getFfmpegArgs());
+        if (!audioInputs.isEmpty()) {
+            command.add("-c:a");
+            command.add("aac");
+        }
+        command.add(outputVideoPath.toAbsolutePath().toString());
+
+        process = FfmpegProcess.start(outputVideoPath.getFileName().toString(), command, reserved);
+        stdin = process.getOutputStream();
+    }
+
+    /**
+     * 终止 FFmpeg，不等待它写完文件，输出文件不完整
+     */
+    @Override
+    public void abort() {
+        aborted = true;
+        if (process != null) {
+            process.close();
+        }
+    }
+
+    /**
+     * 关闭标准输入并等待 FFmpeg 写完文件，已放弃时只做清理
+     * @throws IOException FFmpeg 超时或退出代码不为 0 时抛出
+     */
+    @Override
+    public void close() throws IOException {
+        if (process == null || aborted) {
+            return;
+        }
+        try {
+            stdin.close();
+        } catch (IOException e) {
+            // 进程已经退出，下面按退出代码报告
+        }
+        long start = FrameMetrics.start();
+        try (FfmpegProcess finished = process) {
+            finished.waitFor();
+            FrameMetrics.record(FrameMetrics.Stage.MUX, start);
+        }
+    }
+
+    /**
+     * 用 FFmpeg 的 concat 分离器按顺序拼接编码好的分段，视频流直接复制不重新编码，
+     * 同时合成音频来源的音轨（分段本身是无声的），音轨规则与构造函数相同
+     * @param segments 按顺序排列的分段，编码参数必须相同
+     * @param audioInputs 音频来源，为空时输出无声视频
+     * @param outputVideoPath 输出视频
+     * @throws IOException FFmpeg 超时或退出代码不为 0 时抛出
+     */
+    public static void concat(List<Path> segments, List<Path> audioInputs, Path outputVideoPath)
+            throws IOException {
+        // concat 分离器从列表文件读取分段，路径中的单引号需要转义
+        Path listFile = outputVideoPath.resolveSibling(outputVideoPath.getFileName() + ".segments.txt");
+        List<String> lines = new ArrayList<>();
+        for (Path segment : segments) {
+            lines.add("file '" + segment.toAbsolutePath().toString().replace("'", "'\\''") + "'");
+        }
+        Files.write(listFile, lines);
+
+        List<String> command = new ArrayList<>();
+        command.add("-y");
+        command.add("-f");
+        command.add("concat");
+        command.add("-safe");
+        command.add("0");
+        command.add("-i");
+        command.add(listFile.toAbsolutePath().toString());
+        audioInputs = withAudio(audioInputs, null);
+        addAudioInputs(command, audioInputs);
+        command.add("-map");
+        command.add("0:v");
+        addAudioMapping(command, audioInputs);
+        command.add("-c:v");
+        command.add("copy");
+        if (!audioInputs.isEmpty()) {
+            command.add("-c:a");
+            command.add("aac");
+        }
+        command.add(outputVideoPath.toAbsolutePath().toString());
+
+        long start = FrameMetrics.start();
+        try {
+            FfmpegProcess.run("concat " + outputVideoPath.getFileName(), command);
+            FrameMetrics.record(FrameMetrics.Stage.MUX, start);
+        } finally {
+            Files.deleteIfExists(listFile);
+        }
+    }
+
+    /**
+     * 去掉没有音轨的音频来源，FFmpeg 映射或混音不存在的音轨时会直接失败
+     * 第一个来源提供声音，它没有音轨时输出无声视频；其余来源静音混入，没有音轨时跳过
+     */
+    private static List<Path> withAudio(List<Path> audioInputs, FfmpegProcess.Slots reserved) throws IOException {
+        List<Path> result = new ArrayList<>();
+        for (Path audioInput : audioInputs) {
+            if (AudioUtil.hasAudio(audioInput, reserved)) {
+                result.add(audioInput);
+            } else if (result.isEmpty()) {
+                log.info("{} 没有音轨，输出无声视频", audioInput.getFileName());
+                return List.of();
+            } else {
+                log.info("{} 没有音轨，不参与混音", audioInput.getFileName());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 输入 1..n：音频来源，输入 0 是视频
+     */
+    private static void addAudioInputs(List<String> command, List<Path> audioInputs) {
+        for (Path audioInput : audioInputs) {
+            command.add("-i");
+            command.add(audioInput.toAbsolutePath().toString());
+        }
+    }
+
+    private static void addAudioMapping(List<String> command, List<Path> audioInputs) {
+        if (audioInputs.size() == 1) {
+            command.add("-map");
+            command.add("1:a");
+        } else if (audioInputs.size() > 1) {
+            // 第一段音频（原视频）原样保留，其余各段音量置 0 后用 amix 混成一条音轨
+            StringBuilder filter = new StringBuilder();
+            StringBuilder mix = new StringBuilder("[1:a]");
+            for (int i = 2; i <= audioInputs.size(); i++) {
+                filter.append('[').append(i).append(":a]volume=0[a").append(i).append("];");
+                mix.append("[a").append(i).append(']');
+            }
+            filter.append(mix).append("amix=inputs=").append(audioInputs.size()).append("[a]");
+            command.add("-filter_complex");
+            command.add(filter.toString());
+            command.add("-map");
+            command.add("[a]");
+        }
+    }
+}
@@ -5,6 +5,9 @@ import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * 文件工具类
@@ -42,6 +45,67 @@ public class FileUtil {
         }
     }
 
+    /**
+     * 取文件名的扩展名（小写，不含点），只接受不超过 8 个字母或数字，否则返回默认值
+     * 用于保存上传文件时保留原来的扩展名，打包嵌入时会记录在加密视频中
+     * @param fileName 文件名，可以为 null
+     * @param defaultExtension 默认扩展名
+     * @return 扩展名
+     */
+    public static String extension(String fileName, String defaultExtension) {
+        if (fileName == null) {
+            return defaultExtension;
+        }
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase();
+        if (extension.length() == fileName.length() || extension.isEmpty() || extension.length() > 8
+                || !extension.chars().allMatch(c -> c < 128 && Character.isLetterOrDigit(c))) {
+            return defaultExtension;
+        }
+        return extension;
+    }
+
+    /**
+     * 删除整个目录（包括目录本身），目录不存在时什么也不做
+     * @param directory
+     * @throws IOException
+     */
+    public static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * 把多个文件打包成 zip，条目名为各文件的文件名
+     * 视频已经压缩过，条目不再压缩，打包只是顺序复制
+     * @param files 要打包的文件
+     * @param archive zip 文件路径
+     * @throws IOException
+     */
+    public static void zip(List<Path> files, Path archive) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.setLevel(Deflater.NO_COMPRESSION);
+            for (Path file : files) {
+                zip.putNextEntry(new ZipEntry(file.getFileName().toString()));
+                Files.copy(file, zip);
+                zip.closeEntry();
+            }
+        }
+    }
+
     /**
      * 通过目录拿到里面文件的绝对路径
      * @param directoryPath
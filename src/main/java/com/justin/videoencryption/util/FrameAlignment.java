@@ -0,0 +1,20 @@
+package com.justin.videoencryption.util;
+
+/**
+ * 加密时原视频与涉密视频的帧对齐方式
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public enum FrameAlignment {
+
+    /**
+     * 按帧序号一一对应，帧率不同时涉密视频会被加速或放慢
+     */
+    INDEX,
+
+    /**
+     * 按时间戳对应：输出的每一帧取涉密视频中同一时刻的帧，涉密视频帧率较低时重复帧、较高时丢帧
+     */
+    TIMESTAMP
+}
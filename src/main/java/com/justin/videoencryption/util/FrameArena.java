@@ -0,0 +1,392 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.lang.ref.Cleaner;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 所有请求共享的帧内存（OpenCV Mat 的本地内存）
+ * 1. 上限：每次运行管线前按帧尺寸和帧数预留内存，总预留量超过上限时等待其他请求归还（背压），
+ *    单个请求超过上限时只在没有其他预留时运行；
+ * 2. 复用：解码器和帧槽使用的 Mat 按尺寸和类型放回池中，下一个同尺寸的请求直接取用，不再重新分配；
+ * 3. 泄漏检测：借出后没有归还就被 GC 回收的 Mat 记为泄漏并打印借出它的线程
+ * Mat 的本地内存只在 release 或 GC 回收包装对象时释放，堆内存看起来空闲时本地内存可能已经很高
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class FrameArena {
+
+    /**
+     * 帧的尺寸和类型，同一个键的 Mat 可以互相替换
+     */
+    private record Shape(int rows, int cols, int type) {
+
+        private static Shape of(Mat mat) {
+            return new Shape(mat.rows(), mat.cols(), mat.type());
+        }
+    }
+
+    /**
+     * 借出的 Mat 的记录，不引用 Mat 本身，GC 回收 Mat 后仍然可以查看
+     */
+    private static class Lease {
+
+        private final Shape shape;
+
+        private final long bytes;
+
+        private volatile boolean leased;
+
+        private volatile String owner;
+
+        private Lease(Shape shape, long bytes) {
+            this.shape = shape;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * 预留的帧内存，管线结束后关闭
+     */
+    public class Reservation implements AutoCloseable {
+
+        private final long bytes;
+
+        private boolean closed;
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            synchronized (FrameArena.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                reservedBytes -= bytes;
+                reservations--;
+                FrameArena.this.notifyAll();
+            }
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(FrameArena.class);
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * 等待预留时检查取消标记的间隔
+     */
+    private static final long WAIT_MILLIS = 100;
+
+    /**
+     * 默认池容量
+     */
+    public static final long DEFAULT_POOL_BYTES = 256L << 20;
+
+    private static volatile FrameArena shared = new FrameArena(Long.MAX_VALUE, DEFAULT_POOL_BYTES);
+
+    private final long limit;
+
+    private final long poolLimit;
+
+    // 池中空闲的 Mat，按最近归还的顺序排列，超出容量时先淘汰最久未用的尺寸
+    private final Map<Shape, Deque<Mat>> pool = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 从池中借出或新分配的 Mat，键是弱引用，Mat 被 GC 回收后记录自动消失
+    private final Map<Mat, Lease> leases = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private long pooledBytes;
+
+    private long reservedBytes;
+
+    private int reservations;
+
+    private final AtomicLong leasedBytes = new AtomicLong();
+
+    private final AtomicLong allocations = new AtomicLong();
+
+    private final AtomicLong reuses = new AtomicLong();
+
+    private final AtomicLong waits = new AtomicLong();
+
+    private final AtomicLong leaks = new AtomicLong();
+
+    /**
+     * @param limit 帧内存上限（字节）
+     * @param poolLimit 池中空闲 Mat 的容量（字节），与已预留的内存合计也不超过 limit
+     */
+    public FrameArena(long limit, long poolLimit) {
+        if (limit <= 0 || poolLimit < 0) {
+            throw new IllegalArgumentException("帧内存上限必须大于 0");
+        }
+        this.limit = limit;
+        this.poolLimit = poolLimit;
+    }
+
+    /**
+     * @return 所有请求共享的帧内存，默认没有上限
+     */
+    public static FrameArena shared() {
+        return shared;
+    }
+
+    /**
+     * 设置共享的帧内存上限和池容量，应用启动时调用一次
+     * @param limit 上限（字节），小于等于 0 时不限制
+     * @param poolLimit 池容量（字节），为 0 时不复用
+     */
+    public static void configure(long limit, long poolLimit) {
+        FrameArena previous = shared;
+        shared = new FrameArena(limit > 0 ? limit : Long.MAX_VALUE, poolLimit);
+        previous.clear();
+    }
+
+    /**
+     * 预留帧内存，总预留量超过上限时阻塞，直到其他请求归还或任务被取消
+     * 单个请求超过上限时只在没有其他预留时运行，避免永远等待
+     * @param bytes 需要预留的字节数
+     * @param job 任务上下文，取消时停止等待
+     * @return 预留，管线结束后关闭
+     * @throws InterruptedIOException 等待时被中断
+     * @throws java.util.concurrent.CancellationException 等待时任务被取消
+     */
+    public Reservation reserve(long bytes, FrameJob job) throws InterruptedIOException {
+        synchronized (this) {
+            boolean waited = false;
+            while (reservations > 0 && reservedBytes + bytes > limit) {
+                if (!waited) {
+                    waited = true;
+                    waits.incrementAndGet();
+                    log.info("帧内存已预留 {} 字节，等待其他请求归还，需要 {} 字节", reservedBytes, bytes);
+                }
+                job.throwIfCancelled();
+                try {
+                    wait(WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待帧内存时被中断");
+                }
+            }
+            reservedBytes += bytes;
+            reservations++;
+            // 池中的空闲帧也占用本地内存，与预留量合计不超过上限
+            trim(poolCapacity());
+            return new Reservation(bytes);
+        }
+    }
+
+    /**
+     * 预留一次管线运行的帧内存
+     * @param frameBytes 一帧的字节数
+     * @param slotFrames 每个帧槽中的帧数，即输入帧数加输出帧
+     * @param prefetchFrames 各解码器提前解码的帧数之和
+     * @param job 任务上下文，帧槽数取队列深度
+     * @see #reserve(long, FrameJob)
+     */
+    public Reservation reservePipeline(long frameBytes, int slotFrames, int prefetchFrames, FrameJob job)
+            throws InterruptedIOException {
+        return reserve(frameBytes * ((long) job.getQueueDepth() * slotFrames + prefetchFrames), job);
+    }
+
+    /**
+     * 借出一个指定尺寸和类型的 Mat，池中有同尺寸的空闲 Mat 时直接复用
+     * 内容是上一次使用留下的数据，调用方需要自行覆盖
+     * @param rows 行数
+     * @param cols 列数
+     * @param type OpenCV 类型，例如 CvType.CV_8UC3
+     */
+    public Mat acquire(int rows, int cols, int type) {
+        Shape shape = new Shape(rows, cols, type);
+        Mat mat = null;
+        synchronized (this) {
+            Deque<Mat> free = pool.get(shape);
+            if (free != null) {
+                mat = free.poll();
+                if (free.isEmpty()) {
+                    pool.remove(shape);
+                }
+            }
+            if (mat != null) {
+                pooledBytes -= bytes(mat);
+            }
+        }
+        Lease lease;
+        if (mat != null) {
+            reuses.incrementAndGet();
+            lease = leases.get(mat);
+        } else {
+            allocations.incrementAndGet();
+            mat = new Mat(rows, cols, type);
+            lease = track(mat, shape);
+        }
+        lease.owner = Thread.currentThread().getName();
+        lease.leased = true;
+        leasedBytes.addAndGet(lease.bytes);
+        return mat;
+    }
+
+    /**
+     * 归还 Mat：从这里借出且尺寸没有改变的放回池中，其他的直接释放本地内存
+     * 可以对任意 Mat 调用，调用后调用方不能再使用它
+     */
+    public void release(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+        Lease lease = leases.get(mat);
+        if (lease == null || !lease.leased) {
+            if (lease == null) {
+                mat.release();
+            }
+            return;
+        }
+        lease.leased = false;
+        leasedBytes.addAndGet(-lease.bytes);
+        if (!lease.shape.equals(Shape.of(mat)) || mat.dataAddr() == 0) {
+            // 使用中被重新分配或释放过，不能再按原来的尺寸复用
+            leases.remove(mat);
+            mat.release();
+            return;
+        }
+        synchronized (this) {
+            long capacity = poolCapacity();
+            if (lease.bytes <= capacity) {
+                trim(capacity - lease.bytes);
+                pool.computeIfAbsent(lease.shape, shape -> new ArrayDeque<>()).push(mat);
+                pooledBytes += lease.bytes;
+                return;
+            }
+        }
+        leases.remove(mat);
+        mat.release();
+    }
+
+    private Lease track(Mat mat, Shape shape) {
+        Lease lease = new Lease(shape, bytes(mat));
+        leases.put(mat, lease);
+        // 清理动作只引用借出记录，不引用 Mat
+        CLEANER.register(mat, () -> {
+            if (lease.leased) {
+                lease.leased = false;
+                leasedBytes.addAndGet(-lease.bytes);
+                leaks.incrementAndGet();
+                log.warn("帧内存泄漏：{}x{} 的帧借出后没有归还，借出线程：{}", lease.shape.cols(), lease.shape.rows(),
+                        lease.owner);
+            }
+        });
+        return lease;
+    }
+
+    private long poolCapacity() {
+        return Math.min(poolLimit, limit - Math.min(limit, reservedBytes));
+    }
+
+    /**
+     * 从最久未用的尺寸开始释放池中的 Mat，直到池中的内存不超过 capacity
+     */
+    private void trim(long capacity) {
+        Iterator<Map.Entry<Shape, Deque<Mat>>> iterator = pool.entrySet().iterator();
+        while (pooledBytes > capacity && iterator.hasNext()) {
+            Deque<Mat> free = iterator.next().getValue();
+            while (pooledBytes > capacity && !free.isEmpty()) {
+                Mat mat = free.pollLast();
+                pooledBytes -= bytes(mat);
+                leases.remove(mat);
+                mat.release();
+            }
+            if (free.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long bytes(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+
+    /**
+     * 释放池中所有空闲的 Mat
+     */
+    public synchronized void clear() {
+        trim(0);
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return 已预留的字节数
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * @return 池中空闲 Mat 的字节数
+     */
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * @return 借出尚未归还的字节数
+     */
+    public long getLeasedBytes() {
+        return leasedBytes.get();
+    }
+
+    /**
+     * @return 新分配的 Mat 数
+     */
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    /**
+     * @return 从池中复用的次数
+     */
+    public long getReuses() {
+        return reuses.get();
+    }
+
+    /**
+     * @return 需要等待其他请求归还内存的预留次数
+     */
+    public long getWaits() {
+        return waits.get();
+    }
+
+    /**
+     * @return 借出后没有归还就被 GC 回收的 Mat 数
+     */
+    public long getLeaks() {
+        return leaks.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FrameArena{limit=" + (limit == Long.MAX_VALUE ? "unlimited" : limit) + ", poolLimit=" + poolLimit
+                + ", reserved=" + getReservedBytes() + ", pooled=" + getPooledBytes()
+                + ", leased=" + getLeasedBytes() + ", leaks=" + getLeaks() + "}";
+    }
+}
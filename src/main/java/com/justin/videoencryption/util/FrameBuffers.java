@@ -0,0 +1,33 @@
+package com.justin.videoencryption.util;
+
+/**
+ * 线程本地的帧字节缓冲区，供 LSB 内核在同一线程内反复复用，避免每帧分配大数组
+ * 同一任务中的帧尺寸相同，因此缓冲区只在帧大小变化时重新分配
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class FrameBuffers {
+
+    /**
+     * 每个线程可同时使用的缓冲区数量
+     */
+    public static final int SLOTS = 2;
+
+    private static final ThreadLocal<byte[][]> BUFFERS = ThreadLocal.withInitial(() -> new byte[SLOTS][0]);
+
+    /**
+     * 获取当前线程的第 slot 个缓冲区，长度恰好为 length
+     * 返回的数组内容是上一次使用留下的数据，调用方需要自行覆盖
+     * @param slot 缓冲区编号，0 到 SLOTS - 1
+     * @param length 需要的字节数
+     * @return 可复用的字节数组
+     */
+    public static byte[] get(int slot, int length) {
+        byte[][] buffers = BUFFERS.get();
+        if (buffers[slot].length != length) {
+            buffers[slot] = new byte[length];
+        }
+        return buffers[slot];
+    }
+}
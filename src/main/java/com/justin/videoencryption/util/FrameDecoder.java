@@ -0,0 +1,232 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoCapture;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 在独立线程中解码一路视频，提前解码若干帧放入队列
+ * 加密时原视频和涉密视频各用一个解码器，两路解码同时进行，读取线程只负责配对
+ * 取帧时与调用方交换 Mat（调用方交回一个空闲的 Mat），不复制像素数据
+ * 指定目标尺寸时，在解码线程中缩放，每帧只缩放一次，处理线程拿到的已经是目标尺寸
+ * 提前解码用的帧从共享的 FrameArena 借出，尺寸与视频一致，解码时不需要重新分配；关闭时归还
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class FrameDecoder implements FrameStream {
+
+    /**
+     * 解码出的一帧
+     */
+    private static final class DecodedFrame {
+
+        private static final DecodedFrame END = new DecodedFrame(null, false, 0, null);
+
+        private final Mat mat;
+
+        private final boolean wrapped;
+
+        private final double timestamp;
+
+        private final Exception error;
+
+        private DecodedFrame(Mat mat, boolean wrapped, double timestamp, Exception error) {
+            this.mat = mat;
+            this.wrapped = wrapped;
+            this.timestamp = timestamp;
+            this.error = error;
+        }
+    }
+
+    private final VideoCapture capture;
+
+    private final boolean loop;
+
+    // 一帧的时长（毫秒），容器没有给出可用的时间戳时按帧率推算
+    private final double frameMillis;
+
+    // 目标尺寸，为 null 时不缩放
+    private final Size targetSize;
+
+    private final int interpolation;
+
+    private final BlockingQueue<Mat> freeFrames;
+
+    private final BlockingQueue<DecodedFrame> decodedFrames;
+
+    private final Thread thread;
+
+    private final FrameArena arena = FrameArena.shared();
+
+    // 视频记录的帧尺寸，解码出的帧与之不同时由 OpenCV 重新分配
+    private final int rows;
+
+    private final int cols;
+
+    // 最近一次取到的帧是否是从头循环后的第一帧
+    private boolean wrapped;
+
+    // 最近一次取到的帧的时间戳
+    private double timestamp;
+
+    /**
+     * 创建解码器并立即开始解码
+     * @param capture 要解码的视频，之后只由解码线程访问
+     * @param loop 读到结尾后是否从头循环，循环时需要调用方决定何时停止
+     * @param prefetch 最多提前解码的帧数
+     * @param name 解码线程名
+     */
+    public FrameDecoder(VideoCapture capture, boolean loop, int prefetch, String name) {
+        this(capture, loop, prefetch, name, null, Interpolation.LINEAR);
+    }
+
+    /**
+     * 创建解码器并立即开始解码，解码后缩放到目标尺寸
+     * @param capture 要解码的视频，之后只由解码线程访问
+     * @param loop 读到结尾后是否从头循环，循环时需要调用方决定何时停止
+     * @param prefetch 最多提前解码的帧数
+     * @param name 解码线程名
+     * @param targetSize 目标尺寸，为 null 或与视频尺寸相同时不缩放
+     * @param interpolation 缩放使用的插值方式
+     */
+    public FrameDecoder(VideoCapture capture, boolean loop, int prefetch, String name,
+                        Size targetSize, Interpolation interpolation) {
+        this.capture = capture;
+        this.loop = loop;
+        VideoInfo info = VideoInfo.of(capture);
+        this.targetSize = targetSize != null
+                && (info.getWidth() != (int) targetSize.width || info.getHeight() != (int) targetSize.height)
+                ? targetSize : null;
+        this.interpolation = interpolation.getFlag();
+        this.frameMillis = 1000 / info.getFps();
+        this.rows = info.getHeight();
+        this.cols = info.getWidth();
+        this.freeFrames = new ArrayBlockingQueue<>(prefetch);
+        // 多出的一个位置留给结束标记
+        this.decodedFrames = new ArrayBlockingQueue<>(prefetch + 1);
+        int frameRows = this.targetSize != null ? (int) this.targetSize.height : rows;
+        int frameCols = this.targetSize != null ? (int) this.targetSize.width : cols;
+        for (int i = 0; i < prefetch; i++) {
+            freeFrames.add(frameRows > 0 && frameCols > 0 ? arena.acquire(frameRows, frameCols, CvType.CV_8UC3)
+                    : new Mat());
+        }
+        this.thread = new Thread(this::decode, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void decode() {
+        DecodedFrame end = DecodedFrame.END;
+        // 需要缩放时先解码到这个解码线程独占的 Mat，再缩放到交给调用方的帧
+        Mat raw = targetSize == null ? null
+                : rows > 0 && cols > 0 ? arena.acquire(rows, cols, CvType.CV_8UC3) : new Mat();
+        try {
+            FrameTimestamps timestamps = new FrameTimestamps(frameMillis);
+            while (true) {
+                Mat frame = freeFrames.take();
+                Mat target = raw == null ? frame : raw;
+                boolean rewound = false;
+                long start = FrameMetrics.start();
+                if (!capture.read(target)) {
+                    if (!loop || !VideoUtil.rewind(capture, target)) {
+                        freeFrames.add(frame);
+                        break;
+                    }
+                    rewound = true;
+                    timestamps.rewind();
+                }
+                FrameMetrics.record(FrameMetrics.Stage.DECODE, start);
+                if (raw != null) {
+                    start = FrameMetrics.start();
+                    VideoUtil.resize(raw, frame, targetSize, interpolation);
+                    FrameMetrics.record(FrameMetrics.Stage.RESIZE, start);
+                }
+
+                double timestamp = timestamps.next(capture);
+                decodedFrames.put(new DecodedFrame(frame, rewound, timestamp, null));
+            }
+        } catch (InterruptedException e) {
+            // 解码器已关闭
+            return;
+        } catch (Exception e) {
+            end = new DecodedFrame(null, false, 0, e);
+        } finally {
+            arena.release(raw);
+        }
+        decodedFrames.add(end);
+    }
+
+    /**
+     * 取下一帧，放入 frames[index]，原来的 Mat 交还给解码器复用
+     */
+    @Override
+    public boolean next(Mat[] frames, int index) throws IOException {
+        DecodedFrame decoded;
+        try {
+            decoded = decodedFrames.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待解码时被中断");
+        }
+        if (decoded.mat == null) {
+            // 结束标记留在队列里，之后再取仍然返回结束
+            decodedFrames.add(decoded);
+            if (decoded.error != null) {
+                throw new IOException("视频解码失败", decoded.error);
+            }
+            return false;
+        }
+        wrapped = decoded.wrapped;
+        timestamp = decoded.timestamp;
+        freeFrames.add(frames[index]);
+        frames[index] = decoded.mat;
+        return true;
+    }
+
+    @Override
+    public boolean wrapped() {
+        return wrapped;
+    }
+
+    @Override
+    public double timestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public double frameMillis() {
+        return frameMillis;
+    }
+
+    @Override
+    public boolean shared() {
+        return false;
+    }
+
+    /**
+     * 停止解码线程，把解码器持有的帧归还给 FrameArena；已经交给调用方的帧由调用方归还
+     */
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            // VideoCapture.read 不响应中断，等当前这一帧解码完
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Mat frame : freeFrames) {
+            arena.release(frame);
+        }
+        for (DecodedFrame decoded : decodedFrames) {
+            arena.release(decoded.mat);
+        }
+    }
+}
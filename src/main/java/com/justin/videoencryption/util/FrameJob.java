@@ -0,0 +1,118 @@
+package com.justin.videoencryption.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次加密/解密请求的帧处理上下文：使用哪个线程池、最多同时在途多少帧、取消标记和处理进度
+ * 每个请求的在途帧数受 queueDepth 限制，多个请求共享同一个线程池时不会互相挤占
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class FrameJob {
+
+    private final ExecutorService executorService;
+
+    private final int queueDepth;
+
+    private volatile boolean cancelled;
+
+    private final AtomicLong processedFrames = new AtomicLong();
+
+    private volatile long totalFrames = -1;
+
+    private volatile long startNanos;
+
+    public FrameJob(ExecutorService executorService, int queueDepth) {
+        this.executorService = executorService;
+        this.queueDepth = queueDepth;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * 取消任务，正在运行的管线会尽快停止并抛出 CancellationException
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 开始处理帧时调用，之后的帧率按这个时间点计算
+     * @param totalFrames 预计总帧数，未知时传 -1
+     */
+    public void start(long totalFrames) {
+        this.totalFrames = totalFrames;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * 管线每写出一帧调用一次
+     */
+    public void frameProcessed() {
+        processedFrames.incrementAndGet();
+    }
+
+    /**
+     * 由其他节点处理的帧，整段完成后一次计入
+     */
+    public void framesProcessed(long count) {
+        processedFrames.addAndGet(count);
+    }
+
+    public long getProcessedFrames() {
+        return processedFrames.get();
+    }
+
+    /**
+     * @return 预计总帧数，未知时为 -1
+     */
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    /**
+     * @return 从 start 开始的平均帧率，尚未开始时为 0
+     */
+    public double getFps() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return seconds > 0 ? processedFrames.get() / seconds : 0;
+    }
+
+    /**
+     * @return 按当前帧率估算的剩余秒数，无法估算时为 -1
+     */
+    public long getEtaSeconds() {
+        double fps = getFps();
+        long total = totalFrames;
+        if (fps <= 0 || total < 0) {
+            return -1;
+        }
+        return (long) Math.ceil(Math.max(0, total - processedFrames.get()) / fps);
+    }
+
+    /**
+     * 任务已取消时抛出 CancellationException
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("任务已取消");
+        }
+    }
+}
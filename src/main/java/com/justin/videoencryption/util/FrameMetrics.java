@@ -0,0 +1,127 @@
+package com.justin.videoencryption.util;
+
+/**
+ * 帧处理各阶段的耗时和帧计数
+ * 工具类只调用这里的静态方法，不依赖具体的监控框架；应用启动时设置实际的记录器，未设置时不记录
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public final class FrameMetrics {
+
+    /**
+     * 处理阶段，每个阶段单独统计耗时
+     */
+    public enum Stage {
+
+        /**
+         * 解码一帧（含循环时定位回开头）
+         */
+        DECODE("decode"),
+
+        /**
+         * 缩放一帧
+         */
+        RESIZE("resize"),
+
+        /**
+         * 一帧的 LSB 加密、解密或打包数据的嵌入、取出
+         */
+        LSB("lsb"),
+
+        /**
+         * 把一帧交给输出端编码，FFmpeg 跟不上时包含等待管道的时间
+         */
+        ENCODE("encode"),
+
+        /**
+         * 写完最后一帧后等待 FFmpeg 编码剩余帧并合成音轨，以及分段拼接
+         */
+        MUX("mux"),
+
+        /**
+         * 把结果文件写入响应
+         */
+        TRANSFER("transfer");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * @return 指标标签中的阶段名
+         */
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    /**
+     * 实际的记录器，需要线程安全
+     */
+    public interface Recorder {
+
+        void record(Stage stage, long nanos);
+
+        void framesProcessed(long count);
+
+        void framesFailed(long count);
+    }
+
+    private static final Recorder NONE = new Recorder() {
+
+        @Override
+        public void record(Stage stage, long nanos) {
+        }
+
+        @Override
+        public void framesProcessed(long count) {
+        }
+
+        @Override
+        public void framesFailed(long count) {
+        }
+    };
+
+    private static volatile Recorder recorder = NONE;
+
+    private FrameMetrics() {
+    }
+
+    /**
+     * 设置记录器，传 null 时停止记录
+     */
+    public static void setRecorder(Recorder recorder) {
+        FrameMetrics.recorder = recorder != null ? recorder : NONE;
+    }
+
+    /**
+     * @return 阶段开始的时间点，结束时传给 {@link #record}
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 记录一个阶段从 startNanos 到现在的耗时
+     */
+    public static void record(Stage stage, long startNanos) {
+        recorder.record(stage, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 管线写出的帧数
+     */
+    public static void framesProcessed(long count) {
+        recorder.framesProcessed(count);
+    }
+
+    /**
+     * 读取、处理或写出失败的帧数
+     */
+    public static void framesFailed(long count) {
+        recorder.framesFailed(count);
+    }
+}
@@ -0,0 +1,352 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 流式帧处理管线：读取线程 → 并行处理 → 按顺序写出
+ * 管线只持有固定数量的可复用帧槽，读取线程拿不到空闲槽时会阻塞（背压），
+ * 因此峰值内存只取决于队列深度，与视频长度无关
+ * 处理完的帧放入按帧序号排序的 ReorderBuffer，下一帧一完成就写出，编码与加密同时进行；
+ * 乱序的窗口就是帧槽数，任一帧失败时立即停止，不再等待前面的帧；
+ * 输出端可以按帧序号乱序写入时（IndexedFrameSink）由它自己排序，处理线程写出后立即归还帧槽，管线不再排序
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class FramePipeline {
+
+    /**
+     * 帧来源，每次把下一帧读入槽内已有的 Mat 中
+     */
+    @FunctionalInterface
+    public interface FrameSource {
+
+        /**
+         * @param inputs 槽内的输入帧，读取时直接复用
+         * @return 没有更多帧时返回 false
+         */
+        boolean read(Mat[] inputs) throws IOException;
+
+        /**
+         * @param index 输入帧的位置
+         * @return inputs[index] 放入的是否是 FrameStream 共享的只读帧，这样的帧属于流，由流关闭时释放，帧槽不释放
+         */
+        default boolean shared(int index) {
+            return false;
+        }
+    }
+
+    /**
+     * 帧处理逻辑，把结果写入槽内的输出帧
+     */
+    @FunctionalInterface
+    public interface FrameProcessor {
+
+        /**
+         * @param frameIndex 帧序号，从 0 开始（分段处理时从该段的第一帧开始），与写出顺序一致
+         * @param inputs 槽内的输入帧
+         * @param output 槽内的输出帧
+         */
+        void process(long frameIndex, Mat[] inputs, Mat output) throws Exception;
+    }
+
+    /**
+     * 可复用的帧槽，包含一组输入帧和一个输出帧
+     */
+    private static class FrameSlot {
+
+        private final Mat[] inputs;
+
+        // 帧槽自己创建的输入帧，共享的帧直接替换掉 inputs 中的引用，原来的帧仍由帧槽释放
+        private final Mat[] own;
+
+        private final Mat output = new Mat();
+
+        private long index;
+
+        private FrameSlot(int inputCount) {
+            inputs = new Mat[inputCount];
+            for (int i = 0; i < inputCount; i++) {
+                inputs[i] = new Mat();
+            }
+            own = inputs.clone();
+        }
+
+        private long bytes() {
+            long bytes = output.total() * output.elemSize();
+            for (Mat input : inputs) {
+                bytes += input.total() * input.elemSize();
+            }
+            return bytes;
+        }
+
+        /**
+         * 归还帧槽拥有的帧：与解码器交换进来的帧归帧槽所有，回到 FrameArena 的池中，其他的直接释放；
+         * 共享流放入的帧不归还，只释放被它替换下来的原有帧
+         */
+        private void release(FrameSource source) {
+            FrameArena arena = FrameArena.shared();
+            for (int i = 0; i < inputs.length; i++) {
+                arena.release(source.shared(i) ? own[i] : inputs[i]);
+            }
+            arena.release(output);
+        }
+    }
+
+    /**
+     * 一次运行的在途帧和帧槽内存，供监控统计
+     */
+    private static class RunState {
+
+        private final ReorderBuffer<?> reorder;
+
+        private final int slots;
+
+        // 第一帧写出后按帧槽中各帧的实际大小估算
+        private volatile long slotBytes;
+
+        private RunState(ReorderBuffer<?> reorder, int slots) {
+            this.reorder = reorder;
+            this.slots = slots;
+        }
+    }
+
+    private static final Set<RunState> RUNS = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 默认队列深度，即同时在途的帧数
+     */
+    public static final int DEFAULT_QUEUE_DEPTH = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * 写出线程检查取消标记的间隔
+     */
+    private static final long CANCEL_CHECK_MILLIS = 100;
+
+    /**
+     * 失败或取消后等待读取线程和在途帧停下的最长时间
+     */
+    private static final long STOP_MILLIS = 5000;
+
+    /**
+     * 运行管线，直到帧来源读完、任一帧处理失败或任务被取消
+     * @param source 帧来源，在独立的读取线程中调用
+     * @param processor 帧处理逻辑，在任务的线程池中并行调用
+     * @param sink 帧输出端，在调用线程中按帧序调用；IndexedFrameSink 在处理线程中处理完一帧后直接按帧序号调用
+     * @param inputCount 每个帧槽的输入帧数量
+     * @param job 任务上下文，提供线程池、帧槽数量和取消标记
+     * @return 写出的帧数
+     * @throws IOException 读取、处理或写出失败时抛出，管线立即停止，不会产生缺帧的视频
+     * @throws CancellationException 任务被取消时抛出
+     */
+    public static long run(FrameSource source, FrameProcessor processor, FrameSink sink,
+                           int inputCount, FrameJob job)
+            throws IOException {
+        return run(source, processor, sink, inputCount, job, 0);
+    }
+
+    /**
+     * 运行管线，帧序号从 firstIndex 开始，用于分段处理时只处理视频中间的一段
+     * @param firstIndex 第一帧的帧序号，传给 FrameProcessor
+     * @see #run(FrameSource, FrameProcessor, FrameSink, int, FrameJob)
+     */
+    public static long run(FrameSource source, FrameProcessor processor, FrameSink sink,
+                           int inputCount, FrameJob job, long firstIndex)
+            throws IOException {
+
+        int queueDepth = job.getQueueDepth();
+        BlockingQueue<FrameSlot> freeSlots = new ArrayBlockingQueue<>(queueDepth);
+        List<FrameSlot> slots = new ArrayList<>(queueDepth);
+        for (int i = 0; i < queueDepth; i++) {
+            slots.add(new FrameSlot(inputCount));
+        }
+        freeSlots.addAll(slots);
+
+        // 在途帧数不会超过槽数，序号 n + 槽数 拿到空闲槽之前序号 n 一定已经取出或由输出端写出
+        ReorderBuffer<FrameSlot> reorder = new ReorderBuffer<>(queueDepth);
+        RunState state = new RunState(reorder, queueDepth);
+        RUNS.add(state);
+        IndexedFrameSink indexedSink = sink instanceof IndexedFrameSink ? (IndexedFrameSink) sink : null;
+
+        Thread reader = new Thread(() -> {
+            long nextIndex = firstIndex;
+            try {
+                while (!job.isCancelled()) {
+                    FrameSlot slot = freeSlots.take();
+                    if (!source.read(slot.inputs)) {
+                        freeSlots.add(slot);
+                        break;
+                    }
+                    slot.index = nextIndex++;
+                    reorder.begin();
+                    try {
+                        job.getExecutorService().execute(() -> {
+                            try {
+                                processor.process(slot.index, slot.inputs, slot.output);
+                                if (indexedSink != null) {
+                                    // 输出端可以乱序写入时直接写出并归还帧槽，不必等前面的帧处理完
+                                    indexedSink.write(slot.index - firstIndex, slot.output);
+                                    if (state.slotBytes == 0) {
+                                        state.slotBytes = slot.bytes();
+                                    }
+                                    FrameMetrics.framesProcessed(1);
+                                    reorder.complete();
+                                    freeSlots.add(slot);
+                                } else {
+                                    reorder.put(slot.index - firstIndex, slot);
+                                }
+                            } catch (Throwable e) {
+                                reorder.fail(e);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // 线程池已关闭，这一帧不会被处理
+                        reorder.fail(e);
+                        return;
+                    }
+                }
+            } catch (InterruptedException | InterruptedIOException e) {
+                // 写出端已经停止，直接退出
+                return;
+            } catch (Exception e) {
+                reorder.failed(e);
+                return;
+            }
+            reorder.finish(nextIndex - firstIndex);
+        }, "frame-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long writtenFrames = 0;
+        boolean completed = false;
+        try {
+            while (true) {
+                FrameSlot slot;
+                try {
+                    slot = reorder.take(CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    job.throwIfCancelled();
+                    continue;
+                }
+                if (slot == null) {
+                    job.throwIfCancelled();
+                    // 可以乱序写入的输出端不经过这里，帧数按处理线程写出的帧计算，进度由输出端自己报告
+                    writtenFrames += reorder.completed();
+                    break;
+                }
+                if (writtenFrames == 0) {
+                    state.slotBytes = slot.bytes();
+                }
+                long start = FrameMetrics.start();
+                try {
+                    sink.write(slot.output);
+                } catch (IOException e) {
+                    FrameMetrics.framesFailed(1);
+                    throw e;
+                }
+                FrameMetrics.record(FrameMetrics.Stage.ENCODE, start);
+                writtenFrames++;
+                job.frameProcessed();
+                FrameMetrics.framesProcessed(1);
+                freeSlots.add(slot);
+            }
+            completed = true;
+        } catch (ExecutionException e) {
+            FrameMetrics.framesFailed(1);
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("帧处理失败", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("帧处理被中断");
+        } finally {
+            RUNS.remove(state);
+            if (!completed) {
+                // 失败或取消时不再等输出端写完剩余的帧，等待写入的处理线程也会尽快失败
+                sink.abort();
+            }
+            reader.interrupt();
+            // 失败或取消时先等读取线程和已提交的帧停下，之后帧槽不再被使用，可以全部归还；
+            // 等待超时时仍在使用的槽交给 GC 回收
+            if (completed || awaitStop(reader, reorder)) {
+                for (FrameSlot slot : slots) {
+                    slot.release(source);
+                }
+            }
+        }
+
+        return writtenFrames;
+    }
+
+    /**
+     * 等待读取线程退出、已提交的帧处理完，最多等待 STOP_MILLIS
+     * 已提交的任务不取消，正在运行的处理仍会继续使用帧槽，只能等它结束
+     * @return 是否全部停下
+     */
+    private static boolean awaitStop(Thread reader, ReorderBuffer<FrameSlot> reorder) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STOP_MILLIS);
+        try {
+            reader.join(STOP_MILLIS);
+            if (reader.isAlive()) {
+                return false;
+            }
+            return reorder.awaitIdle(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return 正在运行的管线数
+     */
+    public static int activeRuns() {
+        return RUNS.size();
+    }
+
+    /**
+     * @return 所有管线已读取但尚未写出的帧数
+     */
+    public static int framesInFlight() {
+        int frames = 0;
+        for (RunState state : RUNS) {
+            frames += state.reorder.size();
+        }
+        return frames;
+    }
+
+    /**
+     * @return 所有管线已处理完、但在等待前面的帧写出的帧数，持续偏高说明个别帧处理得慢
+     */
+    public static int framesWaiting() {
+        int frames = 0;
+        for (RunState state : RUNS) {
+            frames += state.reorder.waiting();
+        }
+        return frames;
+    }
+
+    /**
+     * @return 所有管线的帧槽占用的内存估计（字节），不含解码器提前解码的帧
+     */
+    public static long bufferedBytes() {
+        long bytes = 0;
+        for (RunState state : RUNS) {
+            bytes += state.slotBytes * state.slots;
+        }
+        return bytes;
+    }
+}
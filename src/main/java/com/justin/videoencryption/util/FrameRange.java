@@ -0,0 +1,90 @@
+package com.justin.videoencryption.util;
+
+/**
+ * 解密时选取的帧：从 start 开始（含）到 end 为止（不含），每隔 stride 帧取一帧
+ * 只需要预览或抽查时不必解密整段视频
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class FrameRange {
+
+    /**
+     * 整段视频
+     */
+    public static final FrameRange ALL = new FrameRange(0, -1, 1);
+
+    private final long start;
+
+    private final long end;
+
+    private final long stride;
+
+    private FrameRange(long start, long end, long stride) {
+        this.start = start;
+        this.end = end;
+        this.stride = stride;
+    }
+
+    /**
+     * @param start 起始帧序号（含），从 0 开始
+     * @param end 结束帧序号（不含），-1 表示到视频结尾
+     * @param stride 取帧间隔，1 表示连续的每一帧
+     */
+    public static FrameRange of(long start, long end, long stride) {
+        if (start < 0 || stride < 1 || (end >= 0 && end <= start)) {
+            throw new IllegalArgumentException("帧范围无效：start=" + start + " end=" + end + " stride=" + stride);
+        }
+        return new FrameRange(start, end, stride);
+    }
+
+    /**
+     * 在整段视频中均匀选取 count 帧，用于预览；帧数未知时取开头的 count 帧
+     * @param frameCount 视频帧数，未知时为 -1
+     * @param count 选取的帧数
+     */
+    public static FrameRange evenly(long frameCount, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("预览帧数必须大于 0：" + count);
+        }
+        if (frameCount <= count) {
+            return of(0, count, 1);
+        }
+        long stride = frameCount / count;
+        return of(0, stride * count, stride);
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getStride() {
+        return stride;
+    }
+
+    public boolean isAll() {
+        return start == 0 && end < 0 && stride == 1;
+    }
+
+    /**
+     * 选取的帧数，用于进度显示
+     * @param frameCount 视频帧数，未知时为 -1
+     * @return 帧数，无法确定时返回 -1
+     */
+    public long count(long frameCount) {
+        long last = end < 0 ? frameCount : frameCount < 0 ? end : Math.min(end, frameCount);
+        if (last < 0) {
+            return -1;
+        }
+        return last <= start ? 0 : (last - start + stride - 1) / stride;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + (end < 0 ? "结尾" : String.valueOf(end)) + ") 间隔 " + stride;
+    }
+}
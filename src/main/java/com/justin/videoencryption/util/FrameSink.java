@@ -0,0 +1,29 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.Mat;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 帧输出端，按顺序接收处理后的视频帧
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public interface FrameSink extends Closeable {
+
+    /**
+     * 写出一帧，调用返回后 frame 会被管线复用，实现类不能持有它的引用
+     * @param frame 处理后的视频帧
+     * @throws IOException
+     */
+    void write(Mat frame) throws IOException;
+
+    /**
+     * 管线失败或取消时调用：放弃还没有完成的输出，例如直接终止编码进程，不再等它写完文件；
+     * 之后调用方仍会调用 close 做清理
+     */
+    default void abort() {
+    }
+}
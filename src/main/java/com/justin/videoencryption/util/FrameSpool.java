@@ -0,0 +1,366 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 加密帧与编码之间的中转文件：处理线程把第 i 帧的 BGR 数据直接写入内存映射文件中它的位置，
+ * 先完成的帧不需要等待前面的帧；编码线程按帧序读出，交给下游的输出端（例如 FFmpeg）
+ * 文件是固定大小的环：开头是 HEADER_BYTES 字节的索引头部，之后是 ringFrames 个帧位置，第 i 帧写在第 i % ringFrames 个位置，
+ * 编码线程读出之前同一位置上一轮的帧不会被覆盖，写得太快的处理线程在这里等待（背压）；
+ * 环的大小不超过 maxBytes，也不超过视频的总帧数，创建时检查工作目录所在磁盘的剩余空间
+ * 索引头部：魔数(4) 版本(4) 宽(4) 高(4) 帧大小(4) 环的帧数(4) 已连续写入的帧数(8) 已交给下游的帧数(8)，
+ * 两个计数随写入和读出更新，进程异常退出后可以据此查看中转进行到哪里
+ * 任务进度按交给下游的帧数计算，而不是写入中转文件的帧数；管线失败或取消时不再交出剩余的帧，直接放弃下游的输出
+ * 只在一次输出中使用，关闭时删除
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class FrameSpool implements IndexedFrameSink {
+
+    /**
+     * 索引头部的字节数，帧数据从这里开始，按页对齐
+     */
+    public static final int HEADER_BYTES = 4096;
+
+    private static final int MAGIC = 0x56465350;
+
+    private static final int VERSION = 1;
+
+    private static final int READY_OFFSET = 24;
+
+    private static final int CONSUMED_OFFSET = 32;
+
+    /**
+     * 每个映射窗口的大小上限，单个 MappedByteBuffer 不能超过 2GB
+     */
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    /**
+     * 处理线程等待环中空位时检查取消标记的间隔
+     */
+    private static final long WAIT_MILLIS = 100;
+
+    private static final Logger log = LoggerFactory.getLogger(FrameSpool.class);
+
+    private final Path path;
+
+    private final FrameSink delegate;
+
+    private final long maxBytes;
+
+    private final long expectedFrames;
+
+    private final FrameJob job;
+
+    private final FileChannel channel;
+
+    private final Thread encoder;
+
+    private MappedByteBuffer header;
+
+    // 环的映射窗口，第一帧写入时全部映射
+    private final List<MappedByteBuffer> windows = new ArrayList<>();
+
+    // 已写入但还不连续的帧
+    private final BitSet written = new BitSet();
+
+    private int rows;
+
+    private int cols;
+
+    private int frameSize;
+
+    private int ringFrames;
+
+    private int windowFrames;
+
+    // 从第 0 帧开始连续写入的帧数，编码线程只读取这之前的帧
+    private long ready;
+
+    // 已交给下游的帧数，第 consumed + ringFrames 帧及以后的帧要等它前进才能写入
+    private long consumed;
+
+    // 按顺序写出时的下一帧
+    private long nextIndex;
+
+    private boolean closed;
+
+    private boolean aborted;
+
+    private Throwable failure;
+
+    /**
+     * @param path 中转文件，已存在时覆盖，关闭时删除
+     * @param delegate 下游的输出端，在编码线程中按帧序调用，关闭时一起关闭
+     * @param maxBytes 环中帧数据的大小上限，至少容纳一帧
+     * @param expectedFrames 视频的总帧数，未知时为 -1；已知时环不超过总帧数
+     * @param job 任务上下文，按交给下游的帧报告进度，取消时编码线程不再读出剩余的帧
+     */
+    public FrameSpool(Path path, FrameSink delegate, long maxBytes, long expectedFrames, FrameJob job)
+            throws IOException {
+        this.path = path;
+        this.delegate = delegate;
+        this.maxBytes = maxBytes;
+        this.expectedFrames = expectedFrames;
+        this.job = job;
+        // 上一次异常退出留下的中转文件直接覆盖
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.encoder = new Thread(this::encode, "frame-spool");
+        this.encoder.setDaemon(true);
+        this.encoder.start();
+    }
+
+    /**
+     * 按顺序写出下一帧
+     */
+    @Override
+    public void write(Mat frame) throws IOException {
+        long index;
+        synchronized (this) {
+            index = nextIndex++;
+        }
+        write(index, frame);
+    }
+
+    @Override
+    public void write(long frameIndex, Mat frame) throws IOException {
+        if (frame.type() != CvType.CV_8UC3) {
+            throw new IOException("只支持 8 位 BGR 帧");
+        }
+        MappedByteBuffer window;
+        int position;
+        synchronized (this) {
+            checkState();
+            if (frameSize == 0) {
+                map(frame.rows(), frame.cols());
+            } else if (frame.rows() != rows || frame.cols() != cols) {
+                throw new IOException("帧尺寸不一致：" + frame.cols() + "x" + frame.rows()
+                        + "，应为 " + cols + "x" + rows);
+            }
+            // 同一位置上一轮的帧还没有交给下游时等待
+            while (frameIndex >= consumed + ringFrames) {
+                job.throwIfCancelled();
+                try {
+                    wait(WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待中转文件空位时被中断");
+                }
+                checkState();
+            }
+            int slot = (int) (frameIndex % ringFrames);
+            window = windows.get(slot / windowFrames);
+            position = (slot % windowFrames) * frameSize;
+        }
+
+        // 拷贝在调用线程中进行，多个处理线程写入不同的位置，互不等待
+        byte[] buffer = FrameBuffers.get(0, frameSize);
+        frame.get(0, 0, buffer);
+        window.put(position, buffer, 0, frameSize);
+
+        synchronized (this) {
+            written.set((int) (frameIndex - ready));
+            if (frameIndex == ready) {
+                int advance = written.nextClearBit(0);
+                shift(advance);
+                ready += advance;
+                header.putLong(READY_OFFSET, ready);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 第一帧写入时确定帧大小和环的帧数，检查磁盘空间，映射整个文件并写入索引头部
+     */
+    private void map(int rows, int cols) throws IOException {
+        int frameSize = rows * cols * 3;
+        long frames = Math.max(1, maxBytes / frameSize);
+        if (expectedFrames > 0) {
+            frames = Math.min(frames, expectedFrames);
+        }
+        // 每个窗口都是整数个帧，窗口数不超过 int 范围
+        int ringFrames = (int) Math.min(frames, Integer.MAX_VALUE);
+        long ringBytes = (long) ringFrames * frameSize;
+        long usable = Files.getFileStore(path.toAbsolutePath().getParent()).getUsableSpace();
+        if (usable < HEADER_BYTES + ringBytes) {
+            throw new IOException("中转文件需要 " + (HEADER_BYTES + ringBytes) + " 字节，工作目录所在磁盘只剩 "
+                    + usable + " 字节，可以调小 video.output.spool-max-size 或关闭中转");
+        }
+
+        this.rows = rows;
+        this.cols = cols;
+        this.frameSize = frameSize;
+        this.ringFrames = ringFrames;
+        this.windowFrames = (int) Math.max(1, Math.min(ringFrames, WINDOW_BYTES / frameSize));
+        // 读写映射超出文件大小时文件自动增长，没有写入的部分不占用磁盘
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        for (long first = 0; first < ringFrames; first += windowFrames) {
+            long count = Math.min(windowFrames, ringFrames - first);
+            windows.add(channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + first * frameSize,
+                    count * frameSize));
+        }
+        header.putInt(0, MAGIC)
+                .putInt(4, VERSION)
+                .putInt(8, cols)
+                .putInt(12, rows)
+                .putInt(16, frameSize)
+                .putInt(20, ringFrames)
+                .putLong(READY_OFFSET, 0)
+                .putLong(CONSUMED_OFFSET, 0);
+    }
+
+    /**
+     * 已写入但还不连续的帧左移 count 位，下标始终相对于 ready
+     */
+    private void shift(int count) {
+        BitSet remaining = written.get(count, Math.max(count, written.length()));
+        written.clear();
+        written.or(remaining);
+    }
+
+    private void checkState() throws IOException {
+        if (failure != null) {
+            throw new IOException("编码失败", failure);
+        }
+        if (aborted) {
+            throw new IOException("中转已放弃");
+        }
+        if (closed) {
+            throw new IOException("中转文件已关闭");
+        }
+    }
+
+    /**
+     * 编码线程：按帧序读出连续写入的帧交给下游，关闭后读完已连续写入的帧再退出，放弃或取消时立即退出
+     */
+    private void encode() {
+        Mat frame = new Mat();
+        byte[] buffer = new byte[0];
+        long next = 0;
+        try {
+            while (true) {
+                MappedByteBuffer window;
+                int position;
+                synchronized (this) {
+                    while (next == ready && !closed && !aborted) {
+                        wait();
+                    }
+                    if (next == ready || aborted || job.isCancelled()) {
+                        return;
+                    }
+                    int slot = (int) (next % ringFrames);
+                    window = windows.get(slot / windowFrames);
+                    position = (slot % windowFrames) * frameSize;
+                    if (buffer.length != frameSize) {
+                        buffer = new byte[frameSize];
+                        frame.create(rows, cols, CvType.CV_8UC3);
+                    }
+                }
+                // 这一帧交给下游之前，它的位置不会被下一轮覆盖
+                window.get(position, buffer, 0, frameSize);
+                frame.put(0, 0, buffer);
+                long start = FrameMetrics.start();
+                delegate.write(frame);
+                FrameMetrics.record(FrameMetrics.Stage.ENCODE, start);
+                next++;
+                synchronized (this) {
+                    consumed = next;
+                    header.putLong(CONSUMED_OFFSET, consumed);
+                    notifyAll();
+                }
+                job.frameProcessed();
+            }
+        } catch (Throwable e) {
+            synchronized (this) {
+                failure = e;
+                // 等待空位的处理线程立即失败
+                notifyAll();
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * 放弃中转：还没有交给下游的帧不再交出，等待空位的处理线程立即失败，close 时放弃下游的输出
+     */
+    @Override
+    public void abort() {
+        synchronized (this) {
+            aborted = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * 等待编码线程读完已写入的帧，然后关闭下游的输出端并删除中转文件；放弃后不再等待剩余的帧
+     * @throws IOException 编码线程或下游关闭失败时抛出
+     */
+    @Override
+    public void close() throws IOException {
+        boolean abandon;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            abandon = aborted;
+            notifyAll();
+        }
+        try {
+            encoder.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            encoder.interrupt();
+            abandon = true;
+            throw new InterruptedIOException("等待编码线程时被中断");
+        } finally {
+            synchronized (this) {
+                windows.clear();
+                header = null;
+            }
+            channel.close();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // Windows 上映射解除之前不能删除，交给工作目录清理
+                log.warn("中转文件暂时无法删除：{}，{}", path, e.getMessage());
+            }
+            if (abandon) {
+                delegate.abort();
+            }
+            closeDelegate();
+        }
+    }
+
+    private void closeDelegate() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            Throwable failure;
+            synchronized (this) {
+                failure = this.failure;
+            }
+            if (failure != null) {
+                throw failure instanceof IOException ? (IOException) failure : new IOException("编码失败", failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+
+/**
+ * 按顺序提供一路视频的帧，读到结尾后可以从头循环
+ * 实现类有两种：边解码边提供（FrameDecoder）和预先解码缓存在内存中（ScaledFrameCache）
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public interface FrameStream extends AutoCloseable {
+
+    /**
+     * 取下一帧，放入 frames[index]
+     * @param frames 调用方的帧数组
+     * @param index 要替换的位置
+     * @return 没有更多帧时返回 false
+     * @throws IOException 解码失败或等待时被中断
+     */
+    boolean next(Mat[] frames, int index) throws IOException;
+
+    /**
+     * @return 最近一次 next 取到的帧是否是视频循环回开头后的第一帧
+     */
+    boolean wrapped();
+
+    /**
+     * @return 最近一次 next 取到的帧在本轮播放中的时间戳（毫秒），每次循环回开头后从 0 重新计算
+     */
+    double timestamp();
+
+    /**
+     * @return 一帧的时长（毫秒），按容器记录的帧率计算
+     */
+    double frameMillis();
+
+    /**
+     * @return next 放入的帧是否是共享的只读帧：为 true 时帧在流关闭前一直有效，调用方可以直接引用但不能修改；
+     *         为 false 时原来的 Mat 会被流回收复用，调用方需要在下一次 next 之前用完或复制
+     */
+    boolean shared();
+
+    @Override
+    void close();
+}
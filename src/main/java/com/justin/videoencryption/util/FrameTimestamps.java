@@ -0,0 +1,50 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * 把 VideoCapture 给出的时间戳整理为从 0 开始、严格递增的毫秒数
+ * 容器没有时间戳或时间戳不递增时，按帧率推算
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+class FrameTimestamps {
+
+    private final double frameMillis;
+
+    private double first = Double.NaN;
+
+    private double previous = Double.NaN;
+
+    FrameTimestamps(double frameMillis) {
+        this.frameMillis = frameMillis;
+    }
+
+    /**
+     * 视频倒回开头后调用，下一帧的时间戳重新从 0 开始
+     */
+    void rewind() {
+        previous = Double.NaN;
+    }
+
+    /**
+     * @param capture 刚读取一帧的视频
+     * @return 这一帧在本轮播放中的时间戳（毫秒）
+     */
+    double next(VideoCapture capture) {
+        double timestamp = capture.get(Videoio.CAP_PROP_POS_MSEC);
+        if (Double.isNaN(first)) {
+            first = timestamp;
+        }
+        timestamp -= first;
+        if (Double.isNaN(previous)) {
+            timestamp = 0;
+        } else if (!(timestamp > previous)) {
+            timestamp = previous + frameMillis;
+        }
+        previous = timestamp;
+        return timestamp;
+    }
+}
@@ -0,0 +1,24 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+
+/**
+ * 可以按帧序号乱序写入的帧输出端
+ * FramePipeline 遇到这种输出端时，由处理线程在处理完一帧后直接写出，不必等前面的帧写完；
+ * 写入后帧还没有真正输出，任务进度由输出端在交出每一帧后通过 FrameJob.frameProcessed 报告，管线不再计数
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public interface IndexedFrameSink extends FrameSink {
+
+    /**
+     * 写出第 frameIndex 帧，可以被多个线程同时调用，调用返回后 frame 会被管线复用
+     * @param frameIndex 帧序号，从 0 开始，每个序号只写一次
+     * @param frame 处理后的视频帧
+     * @throws IOException
+     */
+    void write(long frameIndex, Mat frame) throws IOException;
+}
@@ -0,0 +1,41 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * 缩放涉密视频帧时使用的插值方式
+ * 涉密帧只保留每个字节的高 3 位，插值质量的差别在解密结果中不明显，可以按速度选择
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public enum Interpolation {
+
+    /**
+     * 最近邻，最快，放大时有锯齿
+     */
+    NEAREST(Imgproc.INTER_NEAREST),
+
+    /**
+     * 双线性，OpenCV 默认
+     */
+    LINEAR(Imgproc.INTER_LINEAR),
+
+    /**
+     * 区域平均，缩小时质量最好、没有摩尔纹，放大时与双线性接近
+     */
+    AREA(Imgproc.INTER_AREA);
+
+    private final int flag;
+
+    Interpolation(int flag) {
+        this.flag = flag;
+    }
+
+    /**
+     * @return Imgproc.resize 使用的插值参数
+     */
+    public int getFlag() {
+        return flag;
+    }
+}
@@ -0,0 +1,165 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * 嵌入第一帧的参数头部，记录 LsbLayout，解密时据此选择提取方式
+ * 头部共 HEADER_BYTES 字节，逐位写入第一帧前 CARRIER_BYTES 个字节的最低位（与嵌入位数无关，解密时不需要预先知道参数）：
+ * 魔数(4) 版本(1) 嵌入方式(1) B/G/R 位数(3) 涉密文件长度(8) 扩展名(8) 嵌入区域 x/y/宽/高(各 2) 保留(11) CRC32(4)
+ * 嵌入区域的宽和高为 0 表示整帧
+ * 没有有效头部的视频按 LsbLayout.DEFAULT 解密
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class LsbHeader {
+
+    /**
+     * 头部字节数
+     */
+    public static final int HEADER_BYTES = 48;
+
+    /**
+     * 头部在第一帧中占用的字节数，每个字节的最低位存放头部的一位；是 3 的倍数，正好是整数个像素
+     */
+    public static final int CARRIER_BYTES = HEADER_BYTES * 8;
+
+    private static final int MAGIC = 0x564C5342;
+
+    private static final byte VERSION = 1;
+
+    private static final int EXTENSION_BYTES = 8;
+
+    private static final int REGION_OFFSET = 25;
+
+    private static final int CHECKSUM_OFFSET = HEADER_BYTES - 4;
+
+    /**
+     * 把头部写入第一帧像素字节的最低位，只修改前 CARRIER_BYTES 个字节
+     * 逐像素嵌入时这些字节的其余嵌入位仍是涉密数据，解密后只有最低一位不准确
+     * @param layout 嵌入参数
+     * @param frameData 第一帧的像素字节
+     * @param length 像素字节数
+     */
+    public static void write(LsbLayout layout, byte[] frameData, int length) {
+        if (length < CARRIER_BYTES) {
+            throw new IllegalArgumentException("视频帧太小，放不下参数头部");
+        }
+        byte[] header = encode(layout);
+        for (int i = 0; i < CARRIER_BYTES; i++) {
+            int bit = (header[i >> 3] >> (7 - (i & 7))) & 1;
+            frameData[i] = (byte) ((frameData[i] & 0xFE) | bit);
+        }
+    }
+
+    /**
+     * 从第一帧的像素字节读取头部
+     * @return 嵌入参数，没有有效头部时返回 null
+     */
+    public static LsbLayout read(byte[] frameData, int length) {
+        if (length < CARRIER_BYTES) {
+            return null;
+        }
+        byte[] header = new byte[HEADER_BYTES];
+        for (int i = 0; i < CARRIER_BYTES; i++) {
+            header[i >> 3] |= (byte) ((frameData[i] & 1) << (7 - (i & 7)));
+        }
+        return decode(header);
+    }
+
+    /**
+     * 读取视频第一帧的头部，之后倒回开头
+     * @param capture 已打开的视频
+     * @return 嵌入参数，没有有效头部时返回 LsbLayout.DEFAULT
+     */
+    public static LsbLayout read(VideoCapture capture) {
+        Mat frame = new Mat();
+        try {
+            if (!capture.read(frame)) {
+                return LsbLayout.DEFAULT;
+            }
+            int length = (int) (frame.total() * frame.channels());
+            byte[] frameData = FrameBuffers.get(0, length);
+            frame.get(0, 0, frameData);
+            LsbLayout layout = read(frameData, length);
+            return layout != null ? layout : LsbLayout.DEFAULT;
+        } finally {
+            frame.release();
+            capture.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+        }
+    }
+
+    /**
+     * 把嵌入参数编码为 HEADER_BYTES 字节的头部，也用于把参数传给处理分段的 worker 节点
+     */
+    public static byte[] encode(LsbLayout layout) {
+        byte[] extension = layout.getExtension().getBytes(StandardCharsets.US_ASCII);
+        if (extension.length > EXTENSION_BYTES) {
+            throw new IllegalArgumentException("扩展名太长：" + layout.getExtension());
+        }
+        int[] channelBits = layout.getChannelBits();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES);
+        buffer.putInt(MAGIC)
+                .put(VERSION)
+                .put((byte) layout.getMode().ordinal())
+                .put((byte) channelBits[0])
+                .put((byte) channelBits[1])
+                .put((byte) channelBits[2])
+                .putLong(layout.getPayloadLength())
+                .put(extension)
+                .position(REGION_OFFSET);
+        Rect region = layout.getRegion();
+        if (region != null) {
+            buffer.putShort((short) region.x)
+                    .putShort((short) region.y)
+                    .putShort((short) region.width)
+                    .putShort((short) region.height);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, CHECKSUM_OFFSET);
+        buffer.putInt(CHECKSUM_OFFSET, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * @return 嵌入参数，头部无效（魔数、版本或 CRC 不符）时返回 null
+     */
+    public static LsbLayout decode(byte[] header) {
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        CRC32 crc = new CRC32();
+        crc.update(header, 0, CHECKSUM_OFFSET);
+        if (buffer.getInt() != MAGIC || buffer.getInt(CHECKSUM_OFFSET) != (int) crc.getValue()
+                || buffer.get() != VERSION) {
+            return null;
+        }
+        int mode = buffer.get();
+        if (mode < 0 || mode >= EmbeddingMode.values().length) {
+            return null;
+        }
+        int[] channelBits = {buffer.get(), buffer.get(), buffer.get()};
+        long payloadLength = buffer.getLong();
+        byte[] extension = new byte[EXTENSION_BYTES];
+        buffer.get(extension);
+        int extensionLength = 0;
+        while (extensionLength < EXTENSION_BYTES && extension[extensionLength] != 0) {
+            extensionLength++;
+        }
+        Rect region = new Rect(Short.toUnsignedInt(buffer.getShort()), Short.toUnsignedInt(buffer.getShort()),
+                Short.toUnsignedInt(buffer.getShort()), Short.toUnsignedInt(buffer.getShort()));
+        try {
+            return EmbeddingMode.values()[mode] == EmbeddingMode.PACKED
+                    ? LsbLayout.packed(channelBits, payloadLength,
+                            new String(extension, 0, extensionLength, StandardCharsets.US_ASCII))
+                    : LsbLayout.pixel(channelBits, region.area() > 0 ? region : null);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.justin.videoencryption.util;
+
+/**
+ * LSB 字节内核，对交错存储的像素字节逐字节加密或解密
+ * 通过系统属性 video.lsb.kernel 选择实现：
+ * scalar 为普通循环；vector 使用 JDK Vector API；auto（默认）在 jdk.incubator.vector 模块可用时使用 vector
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public interface LsbKernel {
+
+    /**
+     * 选择内核实现的系统属性名
+     */
+    String PROPERTY = "video.lsb.kernel";
+
+    /**
+     * 默认每个字节嵌入的位数
+     */
+    int DEFAULT_BITS = 3;
+
+    /**
+     * 加密：encryptedData[i] = (originalData[i] & 0xF8) | (secretData[i] >> 5)
+     * encryptedData 可以与 originalData 是同一个数组
+     */
+    default void encrypt(byte[] originalData, byte[] secretData, byte[] encryptedData, int length) {
+        encrypt(originalData, secretData, encryptedData, length, DEFAULT_BITS);
+    }
+
+    /**
+     * 解密：secretData[i] = (encryptedData[i] & 0x07) << 5
+     * secretData 可以与 encryptedData 是同一个数组
+     */
+    default void decrypt(byte[] encryptedData, byte[] secretData, int length) {
+        decrypt(encryptedData, secretData, length, DEFAULT_BITS);
+    }
+
+    /**
+     * 每个字节嵌入 bits 位：原始字节的低 bits 位替换为涉密字节的高 bits 位
+     * @param bits 嵌入位数，1-4
+     */
+    void encrypt(byte[] originalData, byte[] secretData, byte[] encryptedData, int length, int bits);
+
+    /**
+     * 取出每个字节的低 bits 位，还原为涉密字节的高 bits 位
+     * @param bits 嵌入位数，1-4
+     */
+    void decrypt(byte[] encryptedData, byte[] secretData, int length, int bits);
+
+    /**
+     * @return 内核名称
+     */
+    String name();
+
+    /**
+     * @return 按系统属性选出的内核，进程内只选择一次
+     */
+    static LsbKernel current() {
+        return LsbKernels.CURRENT;
+    }
+}
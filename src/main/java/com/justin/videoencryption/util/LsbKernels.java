@@ -0,0 +1,68 @@
+package com.justin.videoencryption.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LSB 字节内核的选择逻辑
+ * Vector API 实现通过反射加载，JVM 未启用 jdk.incubator.vector 模块时不会触碰相关类，自动回退到普通循环
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class LsbKernels {
+
+    private static final Logger log = LoggerFactory.getLogger(LsbKernels.class);
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final String VECTOR_KERNEL = "com.justin.videoencryption.util.VectorLsbKernel";
+
+    static final LsbKernel CURRENT = select(System.getProperty(LsbKernel.PROPERTY, "auto"));
+
+    /**
+     * 按名称选择内核
+     * @param name scalar、vector 或 auto
+     * @return 内核实现，vector 不可用时返回 scalar
+     */
+    public static LsbKernel select(String name) {
+        if ("scalar".equalsIgnoreCase(name)) {
+            return ScalarLsbKernel.INSTANCE;
+        }
+
+        if (!"vector".equalsIgnoreCase(name) && !"auto".equalsIgnoreCase(name)) {
+            throw new IllegalArgumentException("未知的 LSB 内核：" + name);
+        }
+
+        LsbKernel vectorKernel = loadVectorKernel();
+        if (vectorKernel != null) {
+            return vectorKernel;
+        }
+
+        if ("vector".equalsIgnoreCase(name)) {
+            log.warn("Vector API 不可用（需要 --add-modules {}），使用 scalar 内核", VECTOR_MODULE);
+        }
+        return ScalarLsbKernel.INSTANCE;
+    }
+
+    /**
+     * @return 所有可用的内核，供对比测试和基准测试使用
+     */
+    public static LsbKernel[] available() {
+        LsbKernel vectorKernel = loadVectorKernel();
+        return vectorKernel == null
+                ? new LsbKernel[]{ScalarLsbKernel.INSTANCE}
+                : new LsbKernel[]{ScalarLsbKernel.INSTANCE, vectorKernel};
+    }
+
+    private static LsbKernel loadVectorKernel() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return (LsbKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
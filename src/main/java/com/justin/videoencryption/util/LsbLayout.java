@@ -0,0 +1,193 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.Rect;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 一段加密视频的嵌入参数：嵌入方式、每个通道（B、G、R）的嵌入位数，
+ * 逐像素嵌入时可以只使用载体的一个区域，打包嵌入时还有涉密文件的长度和扩展名
+ * 加密时由 LsbHeader 写入第一帧，解密时从第一帧读出
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class LsbLayout {
+
+    /**
+     * 每个通道最多嵌入的位数，再多载体画面会明显失真
+     */
+    public static final int MAX_BITS = 4;
+
+    /**
+     * 默认参数：逐像素嵌入，每个通道 3 位；没有头部的旧视频也按此解密
+     */
+    public static final LsbLayout DEFAULT = pixel(new int[]{LsbKernel.DEFAULT_BITS, LsbKernel.DEFAULT_BITS,
+            LsbKernel.DEFAULT_BITS});
+
+    private final EmbeddingMode mode;
+
+    private final int[] channelBits;
+
+    private final long payloadLength;
+
+    private final String extension;
+
+    private final Rect region;
+
+    private LsbLayout(EmbeddingMode mode, int[] channelBits, long payloadLength, String extension, Rect region) {
+        if (channelBits.length != 3) {
+            throw new IllegalArgumentException("需要 B、G、R 三个通道的嵌入位数");
+        }
+        int total = 0;
+        for (int bits : channelBits) {
+            if (bits < 0 || bits > MAX_BITS) {
+                throw new IllegalArgumentException("每个通道的嵌入位数必须在 0-" + MAX_BITS + " 之间：" + bits);
+            }
+            total += bits;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("至少需要一个通道嵌入数据");
+        }
+        this.mode = mode;
+        this.channelBits = channelBits.clone();
+        this.payloadLength = payloadLength;
+        this.extension = extension;
+        this.region = region;
+    }
+
+    /**
+     * @param channelBits B、G、R 通道的嵌入位数，0-4，0 表示该通道不嵌入
+     */
+    public static LsbLayout pixel(int[] channelBits) {
+        return new LsbLayout(EmbeddingMode.PIXEL, channelBits, 0, "", null);
+    }
+
+    /**
+     * 逐像素嵌入到载体的一个区域，区域外的像素保持原样，涉密帧缩放到区域的尺寸
+     * @param channelBits B、G、R 通道的嵌入位数，0-4，0 表示该通道不嵌入
+     * @param region 载体中的区域，null 表示整帧
+     */
+    public static LsbLayout pixel(int[] channelBits, Rect region) {
+        if (region != null && (region.x < 0 || region.y < 0 || region.width <= 0 || region.height <= 0)) {
+            throw new IllegalArgumentException("嵌入区域无效：" + region);
+        }
+        return new LsbLayout(EmbeddingMode.PIXEL, channelBits, 0, "", region == null ? null : region.clone());
+    }
+
+    /**
+     * @param channelBits B、G、R 通道的嵌入位数，0-4，0 表示该通道不嵌入
+     * @param payloadLength 涉密文件的字节数
+     * @param extension 涉密文件的扩展名，不含点，解密时用来命名输出文件
+     */
+    public static LsbLayout packed(int[] channelBits, long payloadLength, String extension) {
+        return new LsbLayout(EmbeddingMode.PACKED, channelBits, payloadLength, extension, null);
+    }
+
+    public EmbeddingMode getMode() {
+        return mode;
+    }
+
+    public int[] getChannelBits() {
+        return channelBits.clone();
+    }
+
+    public long getPayloadLength() {
+        return payloadLength;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @return 逐像素嵌入使用的区域，整帧嵌入时返回 null
+     */
+    public Rect getRegion() {
+        return region == null ? null : region.clone();
+    }
+
+    /**
+     * @return 三个通道的嵌入位数相同时返回该位数，可以使用 LsbKernel 的向量实现；否则返回 -1
+     */
+    public int uniformBits() {
+        return channelBits[0] == channelBits[1] && channelBits[1] == channelBits[2] ? channelBits[0] : -1;
+    }
+
+    /**
+     * @return 覆盖所有嵌入位的掩码，包括头部使用的最低位，用于编码后校验
+     */
+    public int payloadMask() {
+        int maxBits = Math.max(channelBits[0], Math.max(channelBits[1], channelBits[2]));
+        return ((1 << maxBits) - 1) | 1;
+    }
+
+    /**
+     * 一帧能容纳的涉密文件字节数，只计整字节，第一帧扣除头部区域
+     * @param frameBytes 一帧的字节数（BGR 交错存储）
+     * @param firstFrame 是否第一帧
+     */
+    public long frameCapacity(int frameBytes, boolean firstFrame) {
+        int from = firstFrame ? LsbHeader.CARRIER_BYTES : 0;
+        long bits = 0;
+        for (int c = 0; c < 3; c++) {
+            // [from, frameBytes) 中属于通道 c 的字节数
+            long count = countChannel(frameBytes, c) - countChannel(from, c);
+            bits += count * channelBits[c];
+        }
+        return bits / 8;
+    }
+
+    /**
+     * 第 frameIndex 帧存放的涉密文件字节在文件中的起始位置
+     */
+    public long payloadOffset(long frameIndex, int frameBytes) {
+        if (frameIndex == 0) {
+            return 0;
+        }
+        return frameCapacity(frameBytes, true) + (frameIndex - 1) * frameCapacity(frameBytes, false);
+    }
+
+    /**
+     * 存放整个涉密文件需要的载体帧数
+     */
+    public long framesNeeded(int frameBytes) {
+        long first = frameCapacity(frameBytes, true);
+        if (payloadLength <= first) {
+            return 1;
+        }
+        long other = frameCapacity(frameBytes, false);
+        return other == 0 ? Long.MAX_VALUE : 1 + (payloadLength - first + other - 1) / other;
+    }
+
+    private static long countChannel(int bytes, int channel) {
+        return bytes <= channel ? 0 : (bytes - channel + 2) / 3;
+    }
+
+    @Override
+    public String toString() {
+        String bits = "B" + channelBits[0] + " G" + channelBits[1] + " R" + channelBits[2];
+        if (mode == EmbeddingMode.PACKED) {
+            return mode + " " + bits + " " + payloadLength + "字节 ." + extension;
+        }
+        return region == null ? mode + " " + bits
+                : mode + " " + bits + " 区域 " + region.width + "x" + region.height + "@" + region.x + "," + region.y;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LsbLayout)) {
+            return false;
+        }
+        LsbLayout other = (LsbLayout) o;
+        return mode == other.mode && Arrays.equals(channelBits, other.channelBits)
+                && payloadLength == other.payloadLength && extension.equals(other.extension)
+                && Objects.equals(region, other.region);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * mode.hashCode() + Arrays.hashCode(channelBits)) + Long.hashCode(payloadLength);
+    }
+}
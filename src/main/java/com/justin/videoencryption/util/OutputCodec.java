@@ -0,0 +1,66 @@
+package com.justin.videoencryption.util;
+
+import java.util.List;
+
+/**
+ * 加密视频的输出编码，FfmpegSink 按这里的参数调用 FFmpeg
+ * LSB 数据保存在像素的低 3 位，只有无损编码才能保留；MJPEG 仅用于对比，校验会失败
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public enum OutputCodec {
+
+    /**
+     * H.264 RGB 无损（libx264rgb -qp 0），体积较小、编码较快，mp4 容器，播放器兼容性最好
+     */
+    X264_QP0("mp4", true, List.of("-c:v", "libx264rgb", "-qp", "0", "-preset", "ultrafast")),
+
+    /**
+     * FFV1 无损，全部为关键帧，体积与 x264 接近、可以精确定位任意帧，mkv 容器
+     */
+    FFV1("mkv", true, List.of("-c:v", "ffv1", "-level", "3", "-g", "1", "-slices", "16", "-pix_fmt", "bgr0")),
+
+    /**
+     * MJPEG 最高质量，仍然是有损压缩，只用于对比
+     */
+    MJPEG_Q100("mkv", false, List.of("-c:v", "mjpeg", "-q:v", "1", "-pix_fmt", "yuvj444p")),
+
+    /**
+     * 不压缩的 BGR 原始帧，编码最快但体积最大，mkv 容器
+     */
+    RAW("mkv", true, List.of("-c:v", "rawvideo", "-pix_fmt", "bgr24"));
+
+    private final String extension;
+
+    private final boolean lossless;
+
+    private final List<String> ffmpegArgs;
+
+    OutputCodec(String extension, boolean lossless, List<String> ffmpegArgs) {
+        this.extension = extension;
+        this.lossless = lossless;
+        this.ffmpegArgs = ffmpegArgs;
+    }
+
+    /**
+     * @return 输出文件扩展名（不含点）
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @return 是否无损，有损编码无法保留 LSB 数据
+     */
+    public boolean isLossless() {
+        return lossless;
+    }
+
+    /**
+     * @return FFmpeg 的视频编码参数
+     */
+    public List<String> getFfmpegArgs() {
+        return ffmpegArgs;
+    }
+}
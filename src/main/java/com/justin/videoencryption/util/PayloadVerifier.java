@@ -0,0 +1,135 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 编码后校验：写出时记录抽样帧嵌入位（默认低 3 位）的校验和，编码完成后解码这些帧比对，
+ * 确认输出编码保留了嵌入的数据，不需要重新处理整段视频
+ * 作为 FrameSink 包在真正的输出端外面使用
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class PayloadVerifier implements FrameSink {
+
+    private static final Logger log = LoggerFactory.getLogger(PayloadVerifier.class);
+
+    private final FrameSink delegate;
+
+    private final long stride;
+
+    private final int samples;
+
+    private final byte mask;
+
+    // 抽样帧序号 → 嵌入位的 CRC32，按帧序保存
+    private final Map<Long, Long> checksums = new LinkedHashMap<>();
+
+    private long frameIndex;
+
+    /**
+     * @param delegate 真正的输出端
+     * @param totalFrames 预计总帧数，用来均匀抽样；未知时传 -1，只校验开头的帧
+     * @param samples 抽样帧数
+     */
+    public PayloadVerifier(FrameSink delegate, long totalFrames, int samples) {
+        this(delegate, totalFrames, samples, 0x07);
+    }
+
+    /**
+     * @param delegate 真正的输出端
+     * @param totalFrames 预计总帧数，用来均匀抽样；未知时传 -1，只校验开头的帧
+     * @param samples 抽样帧数
+     * @param mask 参与校验的位，通常取 LsbLayout.payloadMask()
+     */
+    public PayloadVerifier(FrameSink delegate, long totalFrames, int samples, int mask) {
+        this.delegate = delegate;
+        this.samples = samples;
+        this.mask = (byte) mask;
+        this.stride = samples > 0 && totalFrames > samples ? totalFrames / samples : 1;
+    }
+
+    @Override
+    public void write(Mat frame) throws IOException {
+        if (frameIndex % stride == 0 && checksums.size() < samples) {
+            checksums.put(frameIndex, checksum(frame));
+        }
+        delegate.write(frame);
+        frameIndex++;
+    }
+
+    @Override
+    public void abort() {
+        delegate.abort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * 解码输出视频中的抽样帧并比对嵌入位，在 close 之后调用
+     * 从头顺序读取：抽样帧之间的帧只 grab 不取出，不用 CAP_PROP_POS_FRAMES 定位，
+     * 长 GOP 的 libx264 输出定位不一定精确到帧，会把正确的编码误判为失败
+     * @param outputVideoPath 编码完成的视频
+     * @throws IOException 视频无法打开，或任一抽样帧的嵌入数据与写出时不一致
+     */
+    public void verify(Path outputVideoPath) throws IOException {
+        VideoCapture capture = VideoUtil.openCapture(outputVideoPath);
+        Mat frame = new Mat();
+        try {
+            int mismatches = 0;
+            long next = 0;
+            boolean ended = false;
+            for (Map.Entry<Long, Long> entry : checksums.entrySet()) {
+                long index = entry.getKey();
+                // 跳过抽样帧之前的帧，只解码不转换成 Mat
+                while (!ended && next < index) {
+                    ended = !capture.grab();
+                    next++;
+                }
+                if (ended || !capture.read(frame)) {
+                    // 输出比写出的帧少，剩下的抽样帧都算失败
+                    ended = true;
+                    mismatches++;
+                } else if (checksum(frame) != entry.getValue()) {
+                    mismatches++;
+                }
+                next = index + 1;
+            }
+            if (mismatches > 0) {
+                throw new IOException("输出视频没有保留嵌入的数据：" + mismatches + "/" + checksums.size()
+                        + " 个抽样帧校验失败，请使用无损编码");
+            }
+            log.info("输出校验通过，抽样帧数: {}", checksums.size());
+        } finally {
+            frame.release();
+            capture.release();
+        }
+    }
+
+    /**
+     * 只对每个字节的嵌入位计算 CRC32
+     */
+    private long checksum(Mat frame) {
+        int length = (int) (frame.total() * frame.channels());
+        byte[] buffer = FrameBuffers.get(1, length);
+        frame.get(0, 0, buffer);
+        for (int i = 0; i < length; i++) {
+            buffer[i] &= mask;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer, 0, length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,319 @@
+package com.justin.videoencryption.util;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * 无损的原始帧文件：每帧 宽×高×3 字节的 BGR 数据按帧序连续存放，第 i 帧位于 i × 帧大小 处，
+ * 读取时按窗口内存映射，不需要解码；帧率、尺寸和逐帧时间戳保存在同目录的 JSON 中
+ * 文件写完后才改名为正式的文件名，目录中存在正式文件时内容一定完整
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class RawFrameStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RawFrameStore.class);
+
+    /**
+     * 帧数据文件名
+     */
+    public static final String FRAMES_FILE = "frames.raw";
+
+    /**
+     * 帧信息文件名
+     */
+    public static final String META_FILE = "frames.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * 每个映射窗口的大小上限，单个 MappedByteBuffer 不能超过 2GB
+     */
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    /**
+     * 帧信息
+     */
+    @Data
+    public static class Meta {
+
+        private int width;
+
+        private int height;
+
+        private double fps;
+
+        private long frameCount;
+
+        /**
+         * 每帧的时间戳（毫秒），与解码时 FrameStream.timestamp() 一致
+         */
+        private double[] timestamps;
+    }
+
+    private final Path framesPath;
+
+    private final Meta meta;
+
+    private final int frameSize;
+
+    private final int windowFrames;
+
+    private final MappedByteBuffer[] windows;
+
+    private RawFrameStore(Path framesPath, Meta meta) {
+        this.framesPath = framesPath;
+        this.meta = meta;
+        this.frameSize = meta.width * meta.height * 3;
+        this.windowFrames = (int) Math.max(1, WINDOW_BYTES / frameSize);
+        this.windows = new MappedByteBuffer[(int) ((meta.frameCount + windowFrames - 1) / windowFrames)];
+    }
+
+    /**
+     * 打开目录中的原始帧文件
+     * @return 原始帧文件，不存在、信息无法读取或文件大小与信息不一致时返回 null
+     */
+    public static RawFrameStore open(Path directory) {
+        Path framesPath = directory.resolve(FRAMES_FILE);
+        Path metaPath = directory.resolve(META_FILE);
+        if (!Files.isRegularFile(framesPath) || !Files.isRegularFile(metaPath)) {
+            return null;
+        }
+        try {
+            Meta meta = MAPPER.readValue(metaPath.toFile(), Meta.class);
+            long frameSize = (long) meta.width * meta.height * 3;
+            if (frameSize <= 0 || frameSize > Integer.MAX_VALUE || meta.frameCount <= 0
+                    || meta.timestamps == null || meta.timestamps.length != meta.frameCount
+                    || Files.size(framesPath) != frameSize * meta.frameCount) {
+                return null;
+            }
+            return new RawFrameStore(framesPath, meta);
+        } catch (IOException e) {
+            log.warn("原始帧文件无法读取：{}，{}", directory, e.getMessage());
+            return null;
+        }
+    }
+
+    public Meta getMeta() {
+        return meta;
+    }
+
+    /**
+     * @return 每帧的字节数
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * 读取一帧
+     * @param index 帧序号
+     * @param frame 目标帧，尺寸或类型不符时会重新分配
+     * @param buffer 中转缓冲区，长度至少为一帧
+     */
+    public void read(long index, Mat frame, byte[] buffer) throws IOException {
+        if (index < 0 || index >= meta.frameCount) {
+            throw new IOException("帧序号超出范围：" + index);
+        }
+        MappedByteBuffer window = window((int) (index / windowFrames));
+        window.get((int) (index % windowFrames) * frameSize, buffer, 0, frameSize);
+        frame.create(meta.height, meta.width, CvType.CV_8UC3);
+        frame.put(0, 0, buffer);
+    }
+
+    private synchronized MappedByteBuffer window(int window) throws IOException {
+        if (windows[window] == null) {
+            long position = (long) window * windowFrames * frameSize;
+            long size = Math.min((long) windowFrames * frameSize, meta.frameCount * frameSize - position);
+            try (FileChannel channel = FileChannel.open(framesPath, StandardOpenOption.READ)) {
+                // 映射在通道关闭后仍然有效
+                windows[window] = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            }
+        }
+        return windows[window];
+    }
+
+    /**
+     * 按顺序读取的帧来源，可以替代解码器使用
+     * @param loop 读到结尾后是否从头循环
+     */
+    public FrameStream stream(boolean loop) {
+        return new StoredStream(loop);
+    }
+
+    private class StoredStream implements FrameStream {
+
+        private final boolean loop;
+
+        private final byte[] buffer = new byte[frameSize];
+
+        private long next;
+
+        private boolean wrapped;
+
+        private double timestamp;
+
+        private StoredStream(boolean loop) {
+            this.loop = loop;
+        }
+
+        @Override
+        public boolean next(Mat[] frames, int index) throws IOException {
+            wrapped = false;
+            if (next == meta.frameCount) {
+                if (!loop) {
+                    return false;
+                }
+                next = 0;
+                wrapped = true;
+            }
+            read(next, frames[index], buffer);
+            timestamp = meta.timestamps[(int) next];
+            next++;
+            return true;
+        }
+
+        @Override
+        public boolean wrapped() {
+            return wrapped;
+        }
+
+        @Override
+        public double timestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public double frameMillis() {
+            return 1000 / meta.fps;
+        }
+
+        @Override
+        public boolean shared() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 按顺序写出原始帧文件，commit 后才改名为正式的文件名
+     */
+    public static class Writer implements AutoCloseable {
+
+        private final Path directory;
+
+        private final Path tempFrames;
+
+        private final FileChannel channel;
+
+        private final Meta meta = new Meta();
+
+        private double[] timestamps = new double[1024];
+
+        private byte[] buffer = new byte[0];
+
+        private boolean finished;
+
+        /**
+         * @param directory 原始帧文件所在目录，不存在时自动创建
+         * @param fps 帧率
+         */
+        public Writer(Path directory, double fps) throws IOException {
+            Files.createDirectories(directory);
+            this.directory = directory;
+            this.tempFrames = directory.resolve(FRAMES_FILE + "." + UUID.randomUUID() + ".tmp");
+            this.channel = FileChannel.open(tempFrames, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            meta.fps = fps;
+        }
+
+        /**
+         * 追加一帧，所有帧的尺寸必须相同
+         * @param frame 8 位 BGR 帧
+         * @param timestamp 该帧的时间戳（毫秒）
+         */
+        public void write(Mat frame, double timestamp) throws IOException {
+            if (frame.type() != CvType.CV_8UC3) {
+                throw new IOException("只支持 8 位 BGR 帧");
+            }
+            if (meta.frameCount == 0) {
+                meta.width = frame.cols();
+                meta.height = frame.rows();
+                buffer = new byte[meta.width * meta.height * 3];
+            } else if (frame.cols() != meta.width || frame.rows() != meta.height) {
+                throw new IOException("帧尺寸不一致：" + frame.cols() + "x" + frame.rows());
+            }
+            frame.get(0, 0, buffer);
+            ByteBuffer data = ByteBuffer.wrap(buffer);
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            if (meta.frameCount == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, timestamps.length * 2);
+            }
+            timestamps[(int) meta.frameCount] = timestamp;
+            meta.frameCount++;
+        }
+
+        /**
+         * @return 已写出的字节数
+         */
+        public long size() {
+            return meta.frameCount * buffer.length;
+        }
+
+        /**
+         * 写出帧信息并把帧数据改名为正式的文件名；目录中已有完整的文件时保留原来的文件
+         * @return 是否写入了新的文件
+         */
+        public boolean commit() throws IOException {
+            finished = true;
+            channel.close();
+            if (meta.frameCount == 0 || RawFrameStore.open(directory) != null) {
+                Files.deleteIfExists(tempFrames);
+                return false;
+            }
+            meta.timestamps = Arrays.copyOf(timestamps, (int) meta.frameCount);
+            Path tempMeta = directory.resolve(META_FILE + "." + UUID.randomUUID() + ".tmp");
+            MAPPER.writeValue(tempMeta.toFile(), meta);
+            Files.move(tempFrames, directory.resolve(FRAMES_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempMeta, directory.resolve(META_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        }
+
+        /**
+         * 没有 commit 时删除临时文件
+         */
+        @Override
+        public void close() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            channel.close();
+            Files.deleteIfExists(tempFrames);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.justin.videoencryption.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 按序号排序的环形缓冲区，放在并行处理和按顺序写出之间
+ * 处理线程按任意顺序放入结果，写出线程按序号取出：下一个序号一完成就可以取出，不必等后面的帧；
+ * 已完成但排在未完成的帧后面的结果留在环中，环的容量就是乱序的窗口
+ * 任一序号失败时，写出线程立即收到异常，不再等待前面的帧
+ * 调用方保证同时在途的序号不超过容量，即序号 n + 容量 开始处理之前，序号 n 已经被取出，超出时 put 抛出异常
+ * 输出端自己按序号排序时（IndexedFrameSink）用 complete 代替 put，结果不经过环，只记录完成数和失败
+ * @param <T> 结果类型
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class ReorderBuffer<T> {
+
+    private final Object[] ring;
+
+    // 下一个要取出的序号
+    private long next;
+
+    // 序号总数，读取结束之前未知
+    private long end = Long.MAX_VALUE;
+
+    // 已开始处理但还没有放入结果的序号数
+    private int inFlight;
+
+    // 已放入但还没有取出的结果数
+    private int buffered;
+
+    // 用 complete 结束、不需要取出的序号数
+    private long completed;
+
+    private Throwable failure;
+
+    /**
+     * @param capacity 容量，即同时在途的序号数上限
+     */
+    public ReorderBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("容量必须大于 0");
+        }
+        this.ring = new Object[capacity];
+    }
+
+    /**
+     * 一个序号开始处理，之后必须调用 put 或 fail
+     */
+    public synchronized void begin() {
+        inFlight++;
+    }
+
+    /**
+     * 放入一个序号的结果
+     * @param sequence 序号，从 0 开始
+     * @throws IllegalStateException 序号已经取出、超出容量或已经放入过，放入会覆盖环中其他序号的结果
+     */
+    public synchronized void put(long sequence, T item) {
+        int index = (int) (sequence % ring.length);
+        if (sequence < next || sequence >= next + ring.length || ring[index] != null) {
+            throw new IllegalStateException("序号 " + sequence + " 不在可放入的范围 [" + next + ", "
+                    + (next + ring.length) + ") 内或已经放入");
+        }
+        ring[index] = item;
+        inFlight--;
+        buffered++;
+        notifyAll();
+    }
+
+    /**
+     * 一个序号已由输出端按序号直接写出，不需要排序和取出；同一个缓冲区中不能与 put 混用
+     */
+    public synchronized void complete() {
+        inFlight--;
+        completed++;
+        notifyAll();
+    }
+
+    /**
+     * 一个序号处理失败，写出线程的 take 立即抛出异常
+     * @param cause 失败原因，只保留第一个
+     */
+    public synchronized void fail(Throwable cause) {
+        inFlight--;
+        failed(cause);
+    }
+
+    /**
+     * 读取失败，没有对应的在途序号
+     */
+    public synchronized void failed(Throwable cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        notifyAll();
+    }
+
+    /**
+     * 读取结束，不会再有序号 count 及以后的结果
+     */
+    public synchronized void finish(long count) {
+        end = count;
+        notifyAll();
+    }
+
+    /**
+     * 取出下一个序号的结果
+     * @param timeout 最长等待时间
+     * @return 下一个结果；所有序号都已取出或完成时返回 null
+     * @throws ExecutionException 任一序号失败或读取失败时抛出，原因是第一次失败的异常
+     * @throws TimeoutException 超时时下一个序号仍未完成
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T take(long timeout, TimeUnit unit)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            if (next + completed == end) {
+                return null;
+            }
+            int index = (int) (next % ring.length);
+            T item = (T) ring[index];
+            if (item != null) {
+                ring[index] = null;
+                buffered--;
+                next++;
+                return item;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+    }
+
+    /**
+     * 等待所有已开始的序号放入结果或失败，用于失败或取消后确认处理线程不再使用结果
+     * @return 是否在超时前全部结束
+     */
+    public synchronized boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (inFlight > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * @return 用 complete 结束的序号数
+     */
+    public synchronized long completed() {
+        return completed;
+    }
+
+    /**
+     * @return 正在处理和已完成未取出的序号数
+     */
+    public synchronized int size() {
+        return inFlight + buffered;
+    }
+
+    /**
+     * @return 已完成但在等待前面的序号的结果数
+     */
+    public synchronized int waiting() {
+        // 下一个序号已完成时它马上会被取出，不算在等待中
+        return ring[(int) (next % ring.length)] != null ? buffered - 1 : buffered;
+    }
+}
@@ -0,0 +1,83 @@
+package com.justin.videoencryption.util;
+
+/**
+ * 普通循环实现的 LSB 字节内核，在任何 JVM 上都可用
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class ScalarLsbKernel implements LsbKernel {
+
+    public static final ScalarLsbKernel INSTANCE = new ScalarLsbKernel();
+
+    @Override
+    public void encrypt(byte[] originalData, byte[] secretData, byte[] encryptedData, int length, int bits) {
+        encrypt(originalData, secretData, encryptedData, 0, length, bits);
+    }
+
+    @Override
+    public void decrypt(byte[] encryptedData, byte[] secretData, int length, int bits) {
+        decrypt(encryptedData, secretData, 0, length, bits);
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    /**
+     * 加密 [from, to) 区间的字节，也用于向量内核处理尾部
+     */
+    static void encrypt(byte[] originalData, byte[] secretData, byte[] encryptedData, int from, int to, int bits) {
+        int keepMask = 0xFF << bits;
+        int shift = 8 - bits;
+        for (int i = from; i < to; i++) {
+            // 清除原始字节的低 bits 位，填入涉密字节的高 bits 位
+            encryptedData[i] = (byte) ((originalData[i] & keepMask) | ((secretData[i] & 0xFF) >> shift));
+        }
+    }
+
+    /**
+     * 解密 [from, to) 区间的字节，也用于向量内核处理尾部
+     */
+    static void decrypt(byte[] encryptedData, byte[] secretData, int from, int to, int bits) {
+        int payloadMask = (1 << bits) - 1;
+        int shift = 8 - bits;
+        for (int i = from; i < to; i++) {
+            // 取出低 bits 位，还原为涉密字节的高 bits 位
+            secretData[i] = (byte) ((encryptedData[i] & payloadMask) << shift);
+        }
+    }
+
+    /**
+     * 按通道分别设置嵌入位数的加密，第 i 个字节属于通道 i % 3（B、G、R），
+     * 位数为 0 的通道保持原样；各通道位数相同时应使用 LsbKernel，这里只有普通循环
+     * @param channelBits 每个通道的嵌入位数，0-4
+     */
+    public static void encrypt(byte[] originalData, byte[] secretData, byte[] encryptedData, int length,
+                               int[] channelBits) {
+        int channels = channelBits.length;
+        for (int c = 0; c < channels; c++) {
+            int keepMask = 0xFF << channelBits[c];
+            int shift = 8 - channelBits[c];
+            for (int i = c; i < length; i += channels) {
+                encryptedData[i] = (byte) ((originalData[i] & keepMask) | ((secretData[i] & 0xFF) >> shift));
+            }
+        }
+    }
+
+    /**
+     * 按通道分别设置嵌入位数的解密，位数为 0 的通道还原为 0
+     * @param channelBits 每个通道的嵌入位数，0-4
+     */
+    public static void decrypt(byte[] encryptedData, byte[] secretData, int length, int[] channelBits) {
+        int channels = channelBits.length;
+        for (int c = 0; c < channels; c++) {
+            int payloadMask = (1 << channelBits[c]) - 1;
+            int shift = 8 - channelBits[c];
+            for (int i = c; i < length; i += channels) {
+                secretData[i] = (byte) ((encryptedData[i] & payloadMask) << shift);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预先解码并缩放好的整段视频，循环播放时不再重复解码和缩放
+ * 用于需要循环的较短涉密视频：每帧只在载入时缩放一次，之后作为只读帧被所有处理线程共享
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class ScaledFrameCache implements FrameStream {
+
+    private final List<Mat> frames;
+
+    private final double[] timestamps;
+
+    private final double frameMillis;
+
+    private int position = -1;
+
+    private boolean wrapped;
+
+    private ScaledFrameCache(List<Mat> frames, double[] timestamps, double frameMillis) {
+        this.frames = frames;
+        this.timestamps = timestamps;
+        this.frameMillis = frameMillis;
+    }
+
+    /**
+     * 解码整段视频并缩放到目标尺寸
+     * 缩放后的总大小超过 maxBytes（或帧数未知）时放弃缓存，视频倒回开头，由调用方改为边解码边缩放
+     * @param capture 已打开的视频
+     * @param targetSize 目标尺寸
+     * @param interpolation 插值方式
+     * @param maxBytes 缓存大小上限
+     * @return 缓存，放弃缓存时返回 null
+     */
+    public static ScaledFrameCache load(VideoCapture capture, Size targetSize, Interpolation interpolation,
+                                        long maxBytes) {
+        VideoInfo info = VideoInfo.of(capture);
+        long frameBytes = (long) targetSize.width * (long) targetSize.height * 3;
+        if (info.getFrameCount() <= 0 || info.getFrameCount() * frameBytes > maxBytes) {
+            return null;
+        }
+
+        double frameMillis = 1000 / info.getFps();
+        FrameTimestamps clock = new FrameTimestamps(frameMillis);
+        List<Mat> frames = new ArrayList<>();
+        List<Double> timestamps = new ArrayList<>();
+        Mat raw = new Mat();
+        try {
+            long start = FrameMetrics.start();
+            while (capture.read(raw)) {
+                FrameMetrics.record(FrameMetrics.Stage.DECODE, start);
+                // 容器记录的帧数只是估计值，实际超出上限时放弃
+                if ((frames.size() + 1) * frameBytes > maxBytes) {
+                    frames.forEach(Mat::release);
+                    capture.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+                    return null;
+                }
+                Mat frame = new Mat();
+                start = FrameMetrics.start();
+                VideoUtil.resize(raw, frame, targetSize, interpolation.getFlag());
+                FrameMetrics.record(FrameMetrics.Stage.RESIZE, start);
+                frames.add(frame);
+                timestamps.add(clock.next(capture));
+                start = FrameMetrics.start();
+            }
+        } finally {
+            raw.release();
+        }
+        if (frames.isEmpty()) {
+            capture.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+            return null;
+        }
+
+        double[] times = new double[timestamps.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = timestamps.get(i);
+        }
+        return new ScaledFrameCache(frames, times, frameMillis);
+    }
+
+    /**
+     * 把下一帧的引用放入 frames[index]，读到结尾后从头循环
+     * 放入的是共享的只读帧，调用方不能修改
+     */
+    @Override
+    public boolean next(Mat[] frames, int index) {
+        position++;
+        wrapped = position == this.frames.size();
+        if (wrapped) {
+            position = 0;
+        }
+        frames[index] = this.frames.get(position);
+        return true;
+    }
+
+    @Override
+    public boolean wrapped() {
+        return wrapped;
+    }
+
+    @Override
+    public double timestamp() {
+        return timestamps[position];
+    }
+
+    @Override
+    public double frameMillis() {
+        return frameMillis;
+    }
+
+    @Override
+    public boolean shared() {
+        return true;
+    }
+
+    /**
+     * @return 缓存的帧数
+     */
+    public int size() {
+        return frames.size();
+    }
+
+    @Override
+    public void close() {
+        frames.forEach(Mat::release);
+    }
+}
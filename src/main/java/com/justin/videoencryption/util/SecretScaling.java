@@ -0,0 +1,36 @@
+package com.justin.videoencryption.util;
+
+/**
+ * 涉密视频帧的缩放方式：插值方式，以及循环播放时预先缩放并缓存整段视频的内存上限
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class SecretScaling {
+
+    /**
+     * 双线性插值，不缓存；与之前逐帧缩放的结果一致
+     */
+    public static final SecretScaling DEFAULT = new SecretScaling(Interpolation.LINEAR, 0);
+
+    private final Interpolation interpolation;
+
+    private final long cacheMaxBytes;
+
+    /**
+     * @param interpolation 插值方式
+     * @param cacheMaxBytes 缓存上限（字节），涉密视频需要循环且缩放后不超过上限时整段缓存，0 表示不缓存
+     */
+    public SecretScaling(Interpolation interpolation, long cacheMaxBytes) {
+        this.interpolation = interpolation;
+        this.cacheMaxBytes = cacheMaxBytes;
+    }
+
+    public Interpolation getInterpolation() {
+        return interpolation;
+    }
+
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+}
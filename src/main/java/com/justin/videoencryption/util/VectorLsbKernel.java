@@ -0,0 +1,55 @@
+package com.justin.videoencryption.util;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 使用 JDK Vector API 实现的 LSB 字节内核，一次处理一整条 SIMD 寄存器宽度的字节
+ * 只能通过 LsbKernels 反射加载，运行时需要 --add-modules jdk.incubator.vector
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class VectorLsbKernel implements LsbKernel {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public void encrypt(byte[] originalData, byte[] secretData, byte[] encryptedData, int length, int bits) {
+        byte keepMask = (byte) (0xFF << bits);
+        int shift = 8 - bits;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(length);
+        for (; i < upperBound; i += SPECIES.length()) {
+            ByteVector original = ByteVector.fromArray(SPECIES, originalData, i);
+            ByteVector secret = ByteVector.fromArray(SPECIES, secretData, i);
+            // 字节通道上的 LSHR 按无符号处理，等价于 (s & 0xFF) >> shift
+            original.and(keepMask)
+                    .or(secret.lanewise(VectorOperators.LSHR, shift))
+                    .intoArray(encryptedData, i);
+        }
+        // 剩余不足一个向量宽度的字节
+        ScalarLsbKernel.encrypt(originalData, secretData, encryptedData, i, length, bits);
+    }
+
+    @Override
+    public void decrypt(byte[] encryptedData, byte[] secretData, int length, int bits) {
+        // 左移 8 - bits 位后高位自然溢出，只留下原来的低 bits 位
+        int shift = 8 - bits;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(length);
+        for (; i < upperBound; i += SPECIES.length()) {
+            ByteVector.fromArray(SPECIES, encryptedData, i)
+                    .lanewise(VectorOperators.LSHL, shift)
+                    .intoArray(secretData, i);
+        }
+        // 剩余不足一个向量宽度的字节
+        ScalarLsbKernel.decrypt(encryptedData, secretData, i, length, bits);
+    }
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+}
@@ -0,0 +1,78 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * 一路视频流的元数据：帧率、帧数、分辨率
+ * 从 VideoCapture 的 CAP_PROP_* 读取，随任务一起传递，输出时沿用源视频的帧率
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class VideoInfo {
+
+    /**
+     * 容器没有记录帧率时使用的默认值
+     */
+    public static final double DEFAULT_FPS = 30;
+
+    private final double fps;
+
+    private final long frameCount;
+
+    private final int width;
+
+    private final int height;
+
+    public VideoInfo(double fps, long frameCount, int width, int height) {
+        this.fps = fps;
+        this.frameCount = frameCount;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * 读取已打开视频的元数据
+     * @param capture 已打开的视频
+     * @return 元数据，帧率未知时为 DEFAULT_FPS，帧数未知时为 -1
+     */
+    public static VideoInfo of(VideoCapture capture) {
+        double fps = capture.get(Videoio.CAP_PROP_FPS);
+        if (!(fps > 0) || Double.isInfinite(fps)) {
+            fps = DEFAULT_FPS;
+        }
+        return new VideoInfo(fps,
+                VideoUtil.frameCount(capture),
+                (int) capture.get(Videoio.CAP_PROP_FRAME_WIDTH),
+                (int) capture.get(Videoio.CAP_PROP_FRAME_HEIGHT));
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return 时长（毫秒），帧数未知时返回 -1
+     */
+    public double getDurationMillis() {
+        return frameCount < 0 ? -1 : frameCount * 1000 / fps;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " " + fps + "fps " + frameCount + "帧";
+    }
+}
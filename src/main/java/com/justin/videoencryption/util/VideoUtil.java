@@ -2,9 +2,12 @@ package com.justin.videoencryption.util;
 
 import nu.pattern.OpenCV;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
 import org.opencv.videoio.VideoCapture;
 import org.opencv.videoio.VideoWriter;
+import org.opencv.videoio.Videoio;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.BufferedReader;
@@ -28,6 +31,11 @@ import java.util.regex.Pattern;
  */
 public class VideoUtil {
 
+    /**
+     * 预览图每行的缩略图数量
+     */
+    private static final int PREVIEW_COLUMNS = 4;
+
     /**
      * 从视频文件提取帧
      * @param videoFile
@@ -36,16 +44,46 @@ public class VideoUtil {
      */
     public static List<Mat> getFrames(MultipartFile videoFile) throws IOException {
 
-        // 设置新的临时目录路径
-        String customTempDir = "F:\\my_custom_temp_dir";
-        File tempDir = new File(customTempDir);
-        if (!tempDir.exists()) {
-            tempDir.mkdirs(); // 创建目录
+        Path tempFile = saveToTempFile(videoFile);
+
+        List<Mat> frames = new ArrayList<>();
+        try {
+            // VideoCapture 是 OpenCV 提供的一个类，用于从视频文件中读取帧
+            VideoCapture capture = new VideoCapture(tempFile.toString());
+
+            if (!capture.isOpened()) {
+                System.out.println("视频无法打开！");
+                return frames;
+            }
+
+            // Mat 是 OpenCV 用来表示图像或视频帧的类
+            Mat frame = new Mat();
+            while (capture.read(frame)) {
+                // 使用 Mat.clone 来避免对原始帧的修改
+                frames.add(frame.clone());
+            }
+
+            capture.release();
+        } finally {
+            Files.deleteIfExists(tempFile);
         }
+
+        return frames;
+    }
+
+    /**
+     * 将上传的视频保存到系统临时目录（java.io.tmpdir）下的临时文件，由调用方负责删除
+     * 服务内部按任务使用 Workspace，这里只供 getFrames 这类一次性调用使用
+     * @param videoFile
+     * @return 临时文件路径
+     * @throws IOException
+     */
+    public static Path saveToTempFile(MultipartFile videoFile) throws IOException {
+
         // 将 MultipartFile 保存到临时文件
         // 因为 OpenCV 的 VideoCapture 类在读取视频文件时需要一个文件路径作为输入，
         // 而 MultipartFile 本身是一个内存中的文件对象，它没有直接的文件路径，因此需要先保存为一个实际存在的临时文件。
-        Path tempFile = Files.createTempFile(tempDir.toPath(),"video", ".mp4");
+        Path tempFile = Files.createTempFile("video", ".mp4");
         // 将videoFile保存到临时文件
 
         // System.out.println("临时文件路径 " + tempFile.toString());
@@ -57,25 +95,87 @@ public class VideoUtil {
             throw new RuntimeException(e);
         }
 
-        List<Mat> frames = new ArrayList<>();
-        // VideoCapture 是 OpenCV 提供的一个类，用于从视频文件中读取帧
-        VideoCapture capture = new VideoCapture(tempFile.toString());
+        return tempFile;
+    }
 
+    /**
+     * 打开视频文件用于逐帧读取
+     * @param videoPath
+     * @return 已打开的 VideoCapture，用完需要 release
+     * @throws IOException 视频无法打开时抛出
+     */
+    public static VideoCapture openCapture(Path videoPath) throws IOException {
+        VideoCapture capture = new VideoCapture(videoPath.toString());
         if (!capture.isOpened()) {
-            System.out.println("视频无法打开！");
-            return frames;
+            throw new IOException("视频无法打开！" + videoPath);
         }
+        return capture;
+    }
 
-        // Mat 是 OpenCV 用来表示图像或视频帧的类
-        Mat frame = new Mat();
-        while (capture.read(frame)) {
-            // 使用 Mat.clone 来避免对原始帧的修改
-            frames.add(frame.clone());
+    /**
+     * 读取视频容器中记录的帧数，部分格式只是估计值
+     * @param capture
+     * @return 帧数，未知时返回 -1
+     */
+    public static long frameCount(VideoCapture capture) {
+        double count = capture.get(Videoio.CAP_PROP_FRAME_COUNT);
+        return count > 0 ? (long) count : -1;
+    }
+
+    /**
+     * 把帧缩放到指定尺寸，尺寸相同时直接复制
+     * @param source 原始帧
+     * @param target 缩放结果，与 source 不能是同一个 Mat
+     * @param size 目标尺寸
+     * @param interpolation Imgproc 的插值参数
+     */
+    public static void resize(Mat source, Mat target, Size size, int interpolation) {
+        if (source.cols() == (int) size.width && source.rows() == (int) size.height) {
+            source.copyTo(target);
+        } else {
+            Imgproc.resize(source, target, size, 0, 0, interpolation);
         }
+    }
 
-        capture.release();
+    /**
+     * 把若干帧缩成缩略图拼成一张预览图，每行最多 PREVIEW_COLUMNS 张，不足的位置留黑
+     * @param frames 尺寸相同的帧
+     * @param thumbnailWidth 每张缩略图的宽度，高度按比例计算；不超过原始宽度
+     * @return 预览图，frames 为空时返回空 Mat
+     */
+    public static Mat contactSheet(List<Mat> frames, int thumbnailWidth) {
+        if (frames.isEmpty()) {
+            return new Mat();
+        }
+        Mat first = frames.get(0);
+        int width = Math.min(thumbnailWidth, first.cols());
+        int height = Math.max(1, (int) Math.round((double) first.rows() * width / first.cols()));
+        int columns = Math.min(PREVIEW_COLUMNS, frames.size());
+        int rows = (frames.size() + columns - 1) / columns;
+
+        Mat sheet = Mat.zeros(rows * height, columns * width, first.type());
+        Size size = new Size(width, height);
+        for (int i = 0; i < frames.size(); i++) {
+            Mat cell = sheet.submat(new Rect((i % columns) * width, (i / columns) * height, width, height));
+            try {
+                resize(frames.get(i), cell, size, Imgproc.INTER_AREA);
+            } finally {
+                // cell 只是指向 sheet 中一块的 Mat 头，释放它不影响 sheet
+                cell.release();
+            }
+        }
+        return sheet;
+    }
 
-        return frames;
+    /**
+     * 将视频倒回开头并读取第一帧，用于循环播放较短的视频
+     * @param capture
+     * @param frame 读取到的第一帧
+     * @return 视频为空时返回 false
+     */
+    public static boolean rewind(VideoCapture capture, Mat frame) {
+        capture.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+        return capture.read(frame);
     }
 
     /**
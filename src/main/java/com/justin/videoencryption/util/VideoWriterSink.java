@@ -0,0 +1,53 @@
+package com.justin.videoencryption.util;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * 基于 OpenCV VideoWriter 的帧输出端，收到第一帧时按其分辨率打开视频文件
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class VideoWriterSink implements FrameSink {
+
+    private static final Logger log = LoggerFactory.getLogger(VideoWriterSink.class);
+
+    private final String outputVideoPath;
+
+    private final double fps;
+
+    private VideoWriter videoWriter;
+
+    public VideoWriterSink(String outputVideoPath, double fps) {
+        this.outputVideoPath = outputVideoPath;
+        this.fps = fps;
+    }
+
+    @Override
+    public void write(Mat frame) throws IOException {
+        if (videoWriter == null) {
+            videoWriter = new VideoWriter(outputVideoPath,
+                                            VideoWriter.fourcc('H', '2', '6', '4'),
+                                            fps,
+                                            new Size(frame.cols(), frame.rows()));
+            if (!videoWriter.isOpened()) {
+                throw new IOException("无法创建视频文件：" + outputVideoPath);
+            }
+            log.info("开始生成视频");
+        }
+        videoWriter.write(frame);
+    }
+
+    @Override
+    public void close() {
+        if (videoWriter != null) {
+            videoWriter.release();
+        }
+    }
+}
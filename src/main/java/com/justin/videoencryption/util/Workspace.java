@@ -0,0 +1,79 @@
+package com.justin.videoencryption.util;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 单个任务的临时工作目录
+ * 上传的视频只落盘一次，帧解码和音频提取使用同一个路径；中间文件和结果也都放在这里，
+ * 任务结束后 close 会删除整个目录，多个任务之间互不干扰
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+public class Workspace implements Closeable {
+
+    private final Path directory;
+
+    private Workspace(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 在根目录下创建一个新的工作目录
+     * @param root 根目录，不存在时自动创建
+     * @return 工作目录
+     * @throws IOException
+     */
+    public static Workspace create(Path root) throws IOException {
+        Files.createDirectories(root);
+        return new Workspace(Files.createTempDirectory(root, "job-"));
+    }
+
+    /**
+     * 使用已有的工作目录，用于进程重启后继续未完成的任务
+     * @param directory 已存在的工作目录
+     * @return 工作目录
+     */
+    public static Workspace open(Path directory) {
+        return new Workspace(directory);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param fileName 文件名
+     * @return 工作目录下的文件路径
+     */
+    public Path resolve(String fileName) {
+        return directory.resolve(fileName);
+    }
+
+    /**
+     * 将上传的文件保存到工作目录
+     * 因为 OpenCV 的 VideoCapture 和 FFmpeg 都需要一个文件路径作为输入
+     * @param file 上传的文件
+     * @param fileName 保存的文件名
+     * @return 保存后的路径
+     * @throws IOException
+     */
+    public Path spool(MultipartFile file, String fileName) throws IOException {
+        Path target = resolve(fileName);
+        file.transferTo(target);
+        return target;
+    }
+
+    /**
+     * 删除整个工作目录，可以重复调用
+     */
+    @Override
+    public void close() throws IOException {
+        FileUtil.deleteDirectory(directory);
+    }
+}
@@ -0,0 +1,138 @@
+package com.justin.videoencryption.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ChunkManifest 的切分、保存和读取，以及中断后按清单继续处理
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+class ChunkManifestTest {
+
+    private static final VideoInfo INFO = new VideoInfo(25, 1000, 64, 48);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void createSplitsIntoFixedChunks() {
+        ChunkManifest manifest = create(1000, 300);
+        List<ChunkManifest.Chunk> chunks = manifest.getChunks();
+        assertEquals(4, chunks.size());
+        assertEquals(900, chunks.get(3).getFirstFrame());
+        // 最后一段只有剩余的帧
+        assertEquals(100, chunks.get(3).getFrameCount());
+        assertEquals(36000, chunks.get(3).getStartMillis(), 1e-6);
+        assertEquals("chunk-00003.mkv", chunks.get(3).getSegment());
+        assertEquals(0, manifest.framesDone());
+        assertThrows(IllegalArgumentException.class, () -> create(1000, 0));
+    }
+
+    @Test
+    void savedManifestLoadsBack() throws IOException {
+        Path file = directory.resolve(ChunkManifest.FILE_NAME);
+        ChunkManifest manifest = create(1000, 300);
+        manifest.save(file);
+        manifest.complete(manifest.getChunks().get(1), 300, file);
+
+        ChunkManifest loaded = ChunkManifest.load(file);
+        assertNotNull(loaded);
+        assertTrue(loaded.matches(create(1000, 300)));
+        assertTrue(loaded.getChunks().get(1).isDone());
+        assertEquals(300, loaded.getChunks().get(1).getFramesWritten());
+        assertEquals(300, loaded.framesDone());
+        assertFalse(Files.exists(directory.resolve(ChunkManifest.FILE_NAME + ".tmp")));
+    }
+
+    @Test
+    void changedParametersDoNotMatch() {
+        ChunkManifest manifest = create(1000, 300);
+        assertFalse(manifest.matches(null));
+        assertFalse(manifest.matches(create(1000, 200)));
+        assertFalse(manifest.matches(create(999, 300)));
+        assertFalse(manifest.matches(ChunkManifest.create("encrypt", "FFV1", "PIXEL B2 G2 R2", INFO,
+                1000, 300, "mkv")));
+    }
+
+    @Test
+    void unreadableManifestIsIgnored() throws IOException {
+        Path file = directory.resolve(ChunkManifest.FILE_NAME);
+        assertNull(ChunkManifest.load(file));
+        Files.writeString(file, "{\"chunks\": [");
+        assertNull(ChunkManifest.load(file));
+    }
+
+    @Test
+    void resumesAfterPartialRun() throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // 第一次运行到第 2 段时失败，其余的段中已完成的记录在清单里
+            Set<Integer> firstRun = ConcurrentHashMap.newKeySet();
+            assertThrows(IOException.class, () -> ChunkRunner.run(create(1000, 300), directory, 1, 1,
+                    (chunk, segment) -> {
+                        if (chunk.getIndex() == 2) {
+                            throw new IOException("编码失败");
+                        }
+                        firstRun.add(chunk.getIndex());
+                        Files.writeString(segment, "segment " + chunk.getIndex());
+                        return chunk.getFrameCount();
+                    }, new FrameJob(executor, 4)));
+
+            ChunkManifest reloaded = ChunkManifest.load(directory.resolve(ChunkManifest.FILE_NAME));
+            assertNotNull(reloaded);
+            assertTrue(reloaded.matches(create(1000, 300)));
+            Set<Integer> done = reloaded.getChunks().stream().filter(ChunkManifest.Chunk::isDone)
+                    .map(ChunkManifest.Chunk::getIndex).collect(Collectors.toSet());
+            assertEquals(firstRun, done);
+            assertFalse(done.contains(2));
+
+            // 已完成但分段文件丢失的段也要重做
+            int lost = done.iterator().next();
+            Files.delete(directory.resolve(reloaded.getChunks().get(lost).getSegment()));
+
+            Set<Integer> secondRun = ConcurrentHashMap.newKeySet();
+            FrameJob job = new FrameJob(executor, 4);
+            List<Path> segments = ChunkRunner.run(reloaded, directory, 2, 1, (chunk, segment) -> {
+                secondRun.add(chunk.getIndex());
+                Files.writeString(segment, "segment " + chunk.getIndex());
+                return chunk.getFrameCount();
+            }, job);
+
+            Set<Integer> expected = reloaded.getChunks().stream().map(ChunkManifest.Chunk::getIndex)
+                    .filter(index -> !done.contains(index) || index == lost).collect(Collectors.toSet());
+            assertEquals(expected, secondRun);
+            assertEquals(4, segments.size());
+            assertEquals(1000, reloaded.framesDone());
+            // 进度只计剩余的帧
+            assertEquals(expected.stream().mapToLong(index -> reloaded.getChunks().get(index).getFrameCount()).sum(),
+                    job.getTotalFrames());
+            assertTrue(ChunkManifest.load(directory.resolve(ChunkManifest.FILE_NAME)).getChunks().stream()
+                    .allMatch(ChunkManifest.Chunk::isDone));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ChunkManifest create(long totalFrames, int chunkFrames) {
+        return ChunkManifest.create("encrypt", "FFV1", "PIXEL B3 G3 R3", INFO, totalFrames, chunkFrames, "mkv");
+    }
+}
@@ -0,0 +1,87 @@
+package com.justin.videoencryption.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * DownloadUtil 的 Range 处理：只有可以续传的文件（cleanup 为 null）才返回部分内容
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+class DownloadUtilTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rangeIsHonoredWithoutCleanup() throws Exception {
+        Path file = file("0123456789");
+        HttpHeaders request = new HttpHeaders();
+        request.set(HttpHeaders.RANGE, "bytes=2-5");
+
+        ResponseEntity<StreamingResponseBody> response = DownloadUtil.stream(file, "out.mp4", request, null);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertEquals("bytes 2-5/10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getHeaders().getContentLength());
+        assertEquals("2345", body(response));
+    }
+
+    @Test
+    void unsatisfiableRangeWithoutCleanup() throws Exception {
+        Path file = file("0123456789");
+        HttpHeaders request = new HttpHeaders();
+        request.set(HttpHeaders.RANGE, "bytes=20-");
+
+        ResponseEntity<StreamingResponseBody> response = DownloadUtil.stream(file, "out.mp4", request, null);
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void rangeIsIgnoredForRecomputedFiles() throws Exception {
+        Path file = file("0123456789");
+        HttpHeaders request = new HttpHeaders();
+        request.set(HttpHeaders.RANGE, "bytes=2-5");
+        AtomicBoolean cleaned = new AtomicBoolean();
+
+        // 传输后删除的文件不能续传，返回整个文件，也不声明 Accept-Ranges
+        ResponseEntity<StreamingResponseBody> response = DownloadUtil.stream(file, "out.mp4", request,
+                () -> cleaned.set(true));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(10, response.getHeaders().getContentLength());
+        assertFalse(cleaned.get());
+        assertEquals("0123456789", body(response));
+        assertTrue(cleaned.get());
+    }
+
+    private Path file(String content) throws Exception {
+        Path file = directory.resolve("video.mp4");
+        Files.writeString(file, content, StandardCharsets.US_ASCII);
+        return file;
+    }
+
+    private static String body(ResponseEntity<StreamingResponseBody> response) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+        return output.toString(StandardCharsets.US_ASCII);
+    }
+}
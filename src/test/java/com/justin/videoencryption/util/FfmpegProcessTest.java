@@ -0,0 +1,61 @@
+package com.justin.videoencryption.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * FfmpegProcess 的名额预留，不启动 FFmpeg
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+class FfmpegProcessTest {
+
+    @AfterEach
+    void restore() {
+        FfmpegProcess.configure(0, FfmpegProcess.DEFAULT_ACQUIRE_TIMEOUT, Duration.ZERO);
+    }
+
+    @Test
+    void batchLargerThanLimitFailsFast() {
+        FfmpegProcess.configure(2, Duration.ofMinutes(10), Duration.ZERO);
+        long start = System.nanoTime();
+        assertThrows(IOException.class, () -> FfmpegProcess.reserve(3));
+        // 不等待名额
+        assertEquals(0, Duration.ofNanos(System.nanoTime() - start).toSeconds());
+    }
+
+    @Test
+    void batchWaitsForAllSlotsAtOnce() throws IOException {
+        FfmpegProcess.configure(3, Duration.ofMillis(100), Duration.ZERO);
+        try (FfmpegProcess.Slots first = FfmpegProcess.reserve(2)) {
+            assertEquals(2, first.getCount());
+            // 只剩一个名额，第二个批次不会先占住它再等待
+            assertThrows(IOException.class, () -> FfmpegProcess.reserve(2));
+            try (FfmpegProcess.Slots single = FfmpegProcess.reserve(1)) {
+                assertEquals(1, single.getCount());
+            }
+        }
+        // 全部归还后可以一次拿到所有名额
+        try (FfmpegProcess.Slots all = FfmpegProcess.reserve(3)) {
+            assertEquals(0, FfmpegProcess.waiting());
+        }
+    }
+
+    @Test
+    void closingTwiceReleasesOnce() throws IOException {
+        FfmpegProcess.configure(2, Duration.ofMillis(100), Duration.ZERO);
+        FfmpegProcess.Slots slots = FfmpegProcess.reserve(2);
+        slots.close();
+        slots.close();
+        try (FfmpegProcess.Slots all = FfmpegProcess.reserve(2)) {
+            assertThrows(IOException.class, () -> FfmpegProcess.reserve(1));
+        }
+    }
+}
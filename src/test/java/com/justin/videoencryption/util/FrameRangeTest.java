@@ -0,0 +1,75 @@
+package com.justin.videoencryption.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FrameRange 的帧数计算和参数校验
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+class FrameRangeTest {
+
+    @Test
+    void strideSelectsEveryNthFrame() {
+        // 10, 13, ..., 97
+        assertEquals(30, FrameRange.of(10, -1, 3).count(100));
+        // 0, 5, ..., 45，结束帧不含
+        assertEquals(10, FrameRange.of(0, 50, 5).count(100));
+        // 0, 5, ..., 50
+        assertEquals(11, FrameRange.of(0, 51, 5).count(100));
+        assertEquals(1, FrameRange.of(7, 8, 1000).count(100));
+    }
+
+    @Test
+    void endPastVideoIsClampedToFrameCount() {
+        assertEquals(50, FrameRange.of(50, 200, 1).count(100));
+        // 50, 60, 70, 80, 90
+        assertEquals(5, FrameRange.of(50, 200, 10).count(100));
+        assertEquals(0, FrameRange.of(150, 200, 1).count(100));
+        assertEquals(0, FrameRange.of(100, -1, 2).count(100));
+    }
+
+    @Test
+    void openEndRunsToEndOfVideo() {
+        assertEquals(100, FrameRange.ALL.count(100));
+        assertEquals(40, FrameRange.of(20, -1, 2).count(100));
+        // 帧数未知时无法确定，除非指定了结束帧
+        assertEquals(-1, FrameRange.of(20, -1, 2).count(-1));
+        assertEquals(15, FrameRange.of(0, 30, 2).count(-1));
+    }
+
+    @Test
+    void isAllOnlyForWholeVideo() {
+        assertTrue(FrameRange.ALL.isAll());
+        assertTrue(FrameRange.of(0, -1, 1).isAll());
+        assertFalse(FrameRange.of(0, -1, 2).isAll());
+        assertFalse(FrameRange.of(1, -1, 1).isAll());
+        assertFalse(FrameRange.of(0, 100, 1).isAll());
+    }
+
+    @Test
+    void evenlySpreadsOverVideo() {
+        FrameRange range = FrameRange.evenly(1000, 8);
+        assertEquals(125, range.getStride());
+        assertEquals(8, range.count(1000));
+
+        // 视频比预览帧数短或帧数未知时取开头的帧
+        assertEquals(5, FrameRange.evenly(5, 8).count(5));
+        assertEquals(8, FrameRange.evenly(-1, 8).count(-1));
+        assertThrows(IllegalArgumentException.class, () -> FrameRange.evenly(1000, 0));
+    }
+
+    @Test
+    void invalidRangesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> FrameRange.of(-1, -1, 1));
+        assertThrows(IllegalArgumentException.class, () -> FrameRange.of(0, -1, 0));
+        assertThrows(IllegalArgumentException.class, () -> FrameRange.of(10, 10, 1));
+        assertThrows(IllegalArgumentException.class, () -> FrameRange.of(10, 5, 1));
+    }
+}
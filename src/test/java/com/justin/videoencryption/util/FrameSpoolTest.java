@@ -0,0 +1,229 @@
+package com.justin.videoencryption.util;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FrameSpool 的乱序写入、环的循环使用、背压、索引头部和放弃
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+class FrameSpoolTest {
+
+    private static final int ROWS = 4;
+
+    private static final int COLS = 6;
+
+    private static final int FRAME_BYTES = ROWS * COLS * 3;
+
+    @TempDir
+    Path directory;
+
+    private ExecutorService executor;
+
+    private FrameJob job;
+
+    @BeforeAll
+    static void loadOpenCv() {
+        OpenCV.loadLocally();
+    }
+
+    @BeforeEach
+    void createJob() {
+        executor = Executors.newFixedThreadPool(4);
+        job = new FrameJob(executor, 4);
+    }
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void outOfOrderWritesAreEncodedInOrder() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        Path path = directory.resolve("out.frames.raw");
+        job.start(8);
+        try (FrameSpool spool = new FrameSpool(path, sink, 1L << 20, 8, job)) {
+            for (int index : new int[]{3, 1, 7, 0, 2, 6, 5, 4}) {
+                spool.write(index, frame(index));
+            }
+        }
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7), sink.frames);
+        // 进度按交给下游的帧计算
+        assertEquals(8, job.getProcessedFrames());
+        assertTrue(sink.closed);
+        assertFalse(Files.exists(path));
+    }
+
+    @Test
+    void ringWrapsAroundWithConcurrentWriters() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        Path path = directory.resolve("out.frames.raw");
+        int frames = 50;
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < frames; i++) {
+            order.add(i);
+        }
+        // 在窗口内打乱顺序，保证每一帧都能拿到空位
+        Random random = new Random(7);
+        for (int first = 0; first < frames; first += 3) {
+            Collections.shuffle(order.subList(first, Math.min(frames, first + 3)), random);
+        }
+
+        // 环只有 3 帧，50 帧要循环使用十几轮
+        try (FrameSpool spool = new FrameSpool(path, sink, 3L * FRAME_BYTES, frames, job)) {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int index : order) {
+                writes.add(executor.submit(() -> {
+                    spool.write(index, frame(index));
+                    return null;
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(FrameSpool.HEADER_BYTES + 3L * FRAME_BYTES, Files.size(path));
+            ByteBuffer header = readHeader(path);
+            assertEquals(0x56465350, header.getInt(0));
+            assertEquals(COLS, header.getInt(8));
+            assertEquals(ROWS, header.getInt(12));
+            assertEquals(FRAME_BYTES, header.getInt(16));
+            assertEquals(3, header.getInt(20));
+            assertEquals(frames, header.getLong(24));
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < frames; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, sink.frames);
+    }
+
+    @Test
+    void writerWaitsForEncoderWhenRingIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void write(Mat frame) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                super.write(frame);
+            }
+        };
+        Path path = directory.resolve("out.frames.raw");
+        try (FrameSpool spool = new FrameSpool(path, sink, 2L * FRAME_BYTES, 10, job)) {
+            spool.write(0, frame(0));
+            spool.write(1, frame(1));
+            // 第 2 帧和第 0 帧在同一个位置，第 0 帧交给下游之前不能写入
+            Future<?> blocked = executor.submit(() -> {
+                spool.write(2, frame(2));
+                return null;
+            });
+            Thread.sleep(200);
+            assertFalse(blocked.isDone());
+            release.countDown();
+            blocked.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(List.of(0, 1, 2), sink.frames);
+    }
+
+    @Test
+    void abortSkipsRemainingFramesAndAbortsDelegate() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void write(Mat frame) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                super.write(frame);
+            }
+        };
+        Path path = directory.resolve("out.frames.raw");
+        FrameSpool spool = new FrameSpool(path, sink, 1L << 20, 10, job);
+        for (int i = 0; i < 5; i++) {
+            spool.write(i, frame(i));
+        }
+        spool.abort();
+        assertThrows(IOException.class, () -> spool.write(5, frame(5)));
+        release.countDown();
+        spool.close();
+        // 已经在交给下游的那一帧之后不再交出
+        assertTrue(sink.frames.size() <= 1);
+        assertTrue(sink.aborted);
+        assertTrue(sink.closed);
+        assertFalse(Files.exists(path));
+    }
+
+    private static Mat frame(int index) {
+        return new Mat(ROWS, COLS, CvType.CV_8UC3, new Scalar(index, index, index));
+    }
+
+    private static ByteBuffer readHeader(Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FrameSpool.HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(path)) {
+            channel.read(header, 0);
+        }
+        return header;
+    }
+
+    /**
+     * 记录收到的帧（第一个字节就是帧序号）
+     */
+    private static class RecordingSink implements FrameSink {
+
+        final List<Integer> frames = Collections.synchronizedList(new ArrayList<>());
+
+        volatile boolean aborted;
+
+        volatile boolean closed;
+
+        @Override
+        public void write(Mat frame) throws IOException {
+            frames.add((int) frame.get(0, 0)[0]);
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
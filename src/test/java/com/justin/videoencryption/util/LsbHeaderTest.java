@@ -0,0 +1,138 @@
+package com.justin.videoencryption.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.opencv.core.Rect;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 打包嵌入的完整往返：BitPacker 写入涉密字节、LsbHeader 写入参数头部，再按头部读出的 LsbLayout 还原
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+class LsbHeaderTest {
+
+    // 64x48 的 BGR 帧
+    private static final int FRAME_BYTES = 64 * 48 * 3;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4})
+    void packedRoundTrip(int bits) {
+        roundTrip(new int[]{bits, bits, bits}, 5000 + bits);
+    }
+
+    @Test
+    void packedRoundTripWithUnevenChannels() {
+        // 不嵌入的通道被跳过，各通道位数不同时字节流跨通道拆分
+        roundTrip(new int[]{0, 3, 1}, 4321);
+        roundTrip(new int[]{4, 0, 0}, 777);
+    }
+
+    @Test
+    void pixelLayoutRoundTrip() {
+        LsbLayout layout = LsbLayout.pixel(new int[]{2, 3, 4}, new Rect(16, 8, 32, 24));
+        byte[] frame = random(FRAME_BYTES, 1);
+        LsbHeader.write(layout, frame, FRAME_BYTES);
+        assertEquals(layout, LsbHeader.read(frame, FRAME_BYTES));
+        assertEquals(layout, LsbHeader.decode(LsbHeader.encode(layout)));
+    }
+
+    @Test
+    void corruptedHeaderIsRejected() {
+        LsbLayout layout = LsbLayout.packed(new int[]{3, 3, 3}, 1234, "zip");
+        byte[] frame = random(FRAME_BYTES, 2);
+        LsbHeader.write(layout, frame, FRAME_BYTES);
+
+        // 长度字段所在的一位被改动，CRC 不符
+        frame[10 * 8] ^= 1;
+        assertNull(LsbHeader.read(frame, FRAME_BYTES));
+
+        byte[] header = LsbHeader.encode(layout);
+        header[0] ^= 0x40;
+        assertNull(LsbHeader.decode(header));
+    }
+
+    @Test
+    void frameWithoutHeaderIsRejected() {
+        // 普通视频帧的最低位是随机的，不会恰好组成有效头部
+        assertNull(LsbHeader.read(random(FRAME_BYTES, 3), FRAME_BYTES));
+    }
+
+    @Test
+    void shortFrameIsRejected() {
+        LsbLayout layout = LsbLayout.packed(new int[]{3, 3, 3}, 10, "txt");
+        byte[] frame = new byte[LsbHeader.CARRIER_BYTES - 3];
+        assertThrows(IllegalArgumentException.class, () -> LsbHeader.write(layout, frame, frame.length));
+        assertNull(LsbHeader.read(frame, frame.length));
+
+        // 头部完整写入后只交出前面一部分字节
+        byte[] full = new byte[FRAME_BYTES];
+        LsbHeader.write(layout, full, FRAME_BYTES);
+        assertNull(LsbHeader.read(full, LsbHeader.CARRIER_BYTES - 1));
+        assertEquals(layout, LsbHeader.read(full, LsbHeader.CARRIER_BYTES));
+    }
+
+    /**
+     * 按 EncryptUtil.embedPayload 和 DecryptUtil 的方式嵌入和提取，涉密文件跨越多帧
+     */
+    private static void roundTrip(int[] channelBits, int payloadLength) {
+        byte[] payload = random(payloadLength, payloadLength);
+        LsbLayout layout = LsbLayout.packed(channelBits, payloadLength, "bin");
+        int frames = (int) layout.framesNeeded(FRAME_BYTES);
+        byte[][] carriers = new byte[frames + 1][];
+        byte[][] originals = new byte[frames + 1][];
+
+        for (int frameIndex = 0; frameIndex <= frames; frameIndex++) {
+            byte[] carrier = random(FRAME_BYTES, 100 + frameIndex);
+            originals[frameIndex] = carrier.clone();
+            int offset = (int) layout.payloadOffset(frameIndex, FRAME_BYTES);
+            int count = (int) Math.min(layout.frameCapacity(FRAME_BYTES, frameIndex == 0),
+                    Math.max(0, payloadLength - offset));
+            if (frameIndex == 0) {
+                LsbHeader.write(layout, carrier, FRAME_BYTES);
+                BitPacker.pack(payload, offset, count, carrier, LsbHeader.CARRIER_BYTES, channelBits);
+            } else if (count > 0) {
+                BitPacker.pack(payload, offset, count, carrier, 0, channelBits);
+            }
+            carriers[frameIndex] = carrier;
+        }
+
+        LsbLayout parsed = LsbHeader.read(carriers[0], FRAME_BYTES);
+        assertEquals(layout, parsed);
+
+        byte[] extracted = new byte[payloadLength];
+        for (int frameIndex = 0; frameIndex < frames; frameIndex++) {
+            int offset = (int) parsed.payloadOffset(frameIndex, FRAME_BYTES);
+            int count = (int) Math.min(parsed.frameCapacity(FRAME_BYTES, frameIndex == 0), payloadLength - offset);
+            BitPacker.unpack(carriers[frameIndex], frameIndex == 0 ? LsbHeader.CARRIER_BYTES : 0,
+                    extracted, offset, count, parsed.getChannelBits());
+        }
+        assertArrayEquals(payload, extracted, Arrays.toString(channelBits));
+
+        // 只有嵌入位被改动，写完涉密文件之后的帧保持原样
+        for (int frameIndex = 0; frameIndex <= frames; frameIndex++) {
+            for (int i = 0; i < FRAME_BYTES; i++) {
+                int keep = 0xFF << channelBits[i % 3] & 0xFF & (i < LsbHeader.CARRIER_BYTES && frameIndex == 0
+                        ? 0xFE : 0xFF);
+                assertEquals(originals[frameIndex][i] & keep, carriers[frameIndex][i] & keep,
+                        "frame " + frameIndex + " byte " + i);
+            }
+        }
+        assertArrayEquals(originals[frames], carriers[frames]);
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,101 @@
+package com.justin.videoencryption.util;
+
+import jdk.incubator.vector.ByteVector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * VectorLsbKernel 与 ScalarLsbKernel 的输出必须逐字节相同，包括不足一个向量宽度的尾部
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+class LsbKernelTest {
+
+    private static final int VECTOR_BYTES = ByteVector.SPECIES_PREFERRED.length();
+
+    private final LsbKernel scalar = ScalarLsbKernel.INSTANCE;
+
+    private final LsbKernel vector = new VectorLsbKernel();
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4})
+    void encryptMatchesScalar(int bits) {
+        for (int length : lengths()) {
+            byte[] original = random(length, bits);
+            byte[] secret = random(length, bits + 100);
+            byte[] expected = new byte[length];
+            byte[] actual = new byte[length];
+            scalar.encrypt(original, secret, expected, length, bits);
+            vector.encrypt(original, secret, actual, length, bits);
+            assertArrayEquals(expected, actual, "bits=" + bits + ", length=" + length);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4})
+    void decryptMatchesScalar(int bits) {
+        for (int length : lengths()) {
+            byte[] encrypted = random(length, bits);
+            byte[] expected = new byte[length];
+            byte[] actual = new byte[length];
+            scalar.decrypt(encrypted, expected, length, bits);
+            vector.decrypt(encrypted, actual, length, bits);
+            assertArrayEquals(expected, actual, "bits=" + bits + ", length=" + length);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4})
+    void inPlaceMatchesScalar(int bits) {
+        // 加密结果写回原始数组、解密结果写回加密数组，都是 EncryptUtil 和 DecryptUtil 的用法
+        for (int length : lengths()) {
+            byte[] secret = random(length, bits + 100);
+            byte[] expected = random(length, bits);
+            byte[] actual = expected.clone();
+            scalar.encrypt(expected, secret, expected, length, bits);
+            vector.encrypt(actual, secret, actual, length, bits);
+            assertArrayEquals(expected, actual, "encrypt bits=" + bits + ", length=" + length);
+
+            scalar.decrypt(expected, expected, length, bits);
+            vector.decrypt(actual, actual, length, bits);
+            assertArrayEquals(expected, actual, "decrypt bits=" + bits + ", length=" + length);
+        }
+    }
+
+    @Test
+    void onlyLengthBytesAreWritten() {
+        // 帧缓冲区按最大帧复用，length 之后的字节不能被改动
+        int length = VECTOR_BYTES * 2 + 5;
+        byte[] original = random(length + VECTOR_BYTES, 1);
+        byte[] secret = random(length + VECTOR_BYTES, 2);
+        byte[] encrypted = new byte[length + VECTOR_BYTES];
+        Arrays.fill(encrypted, (byte) 0x5A);
+        vector.encrypt(original, secret, encrypted, length, 3);
+
+        byte[] untouched = new byte[VECTOR_BYTES];
+        Arrays.fill(untouched, (byte) 0x5A);
+        assertArrayEquals(untouched, Arrays.copyOfRange(encrypted, length, encrypted.length));
+    }
+
+    /**
+     * 空数组、只有尾部、正好整数个向量、向量加尾部，以及一行 1080p 像素
+     */
+    private static int[] lengths() {
+        return IntStream.of(0, 1, VECTOR_BYTES - 1, VECTOR_BYTES, VECTOR_BYTES + 1,
+                3 * VECTOR_BYTES + 7, 1920 * 3 + 5).distinct().toArray();
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,84 @@
+package com.justin.videoencryption.util;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 区域嵌入：只有区域内的字节参与运算，区域外原样保留，按区域解密得到与字节内核相同的结果
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+class LsbRegionTest {
+
+    private static final Rect REGION = new Rect(5, 6, 10, 8);
+
+    private static final LsbLayout LAYOUT = LsbLayout.pixel(new int[]{2, 3, 1}, REGION);
+
+    @BeforeAll
+    static void loadOpenCv() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    void regionRoundTrip() throws Exception {
+        Mat original = random(24, 32, 1);
+        Mat secret = random(REGION.height, REGION.width, 2);
+        Mat encrypted = new Mat();
+        EncryptUtil.encryptFrameWithLSB(original, secret, encrypted, LAYOUT, false);
+
+        // 区域外的像素原样复制
+        byte[] originalRow = new byte[32 * 3];
+        byte[] encryptedRow = new byte[32 * 3];
+        for (int row = 0; row < 24; row++) {
+            original.get(row, 0, originalRow);
+            encrypted.get(row, 0, encryptedRow);
+            for (int col = 0; col < 32; col++) {
+                if (row >= REGION.y && row < REGION.y + REGION.height
+                        && col >= REGION.x && col < REGION.x + REGION.width) {
+                    continue;
+                }
+                for (int channel = 0; channel < 3; channel++) {
+                    int i = col * 3 + channel;
+                    assertEquals(originalRow[i], encryptedRow[i], "row=" + row + ", col=" + col);
+                }
+            }
+        }
+
+        // 按区域解密的结果与直接在字节上加密再解密相同
+        int length = REGION.width * REGION.height * 3;
+        byte[] expected = new byte[length];
+        byte[] secretData = new byte[length];
+        Mat originalRegion = original.submat(REGION);
+        originalRegion.get(0, 0, expected);
+        originalRegion.release();
+        secret.get(0, 0, secretData);
+        EncryptUtil.encryptBytesWithLSB(expected, secretData, expected, length, LAYOUT);
+        DecryptUtil.decryptBytesWithLSB(expected, expected, length, LAYOUT);
+
+        Mat decrypted = new Mat();
+        DecryptUtil.decryptFrameWithLSB(encrypted, decrypted, LAYOUT);
+        assertEquals(REGION.height, decrypted.rows());
+        assertEquals(REGION.width, decrypted.cols());
+        byte[] actual = new byte[length];
+        decrypted.get(0, 0, actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    private static Mat random(int rows, int cols, long seed) {
+        byte[] data = new byte[rows * cols * 3];
+        new Random(seed).nextBytes(data);
+        Mat mat = new Mat(rows, cols, CvType.CV_8UC3);
+        mat.put(0, 0, data);
+        return mat;
+    }
+}
@@ -0,0 +1,160 @@
+package com.justin.videoencryption.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ReorderBuffer 的按序取出、失败、结束和容量检查
+ * @author 小杜
+ * @version 1.0
+ * @since 1.0
+ */
+class ReorderBufferTest {
+
+    @Test
+    void outOfOrderPutsAreTakenInSequence() throws Exception {
+        ReorderBuffer<String> buffer = new ReorderBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            buffer.begin();
+        }
+        buffer.put(2, "c");
+        buffer.put(3, "d");
+        buffer.put(1, "b");
+        // 序号 0 还没完成，后面的都在等它
+        assertEquals(3, buffer.waiting());
+        assertThrows(TimeoutException.class, () -> buffer.take(10, TimeUnit.MILLISECONDS));
+
+        buffer.put(0, "a");
+        assertEquals("a", buffer.take(1, TimeUnit.SECONDS));
+        assertEquals("b", buffer.take(1, TimeUnit.SECONDS));
+        assertEquals("c", buffer.take(1, TimeUnit.SECONDS));
+        assertEquals("d", buffer.take(1, TimeUnit.SECONDS));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void ringIsReusedAfterTake() throws Exception {
+        ReorderBuffer<Integer> buffer = new ReorderBuffer<>(2);
+        for (int i = 0; i < 10; i++) {
+            buffer.begin();
+            buffer.put(i, i);
+            assertEquals(i, buffer.take(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void failureIsReportedWithoutWaitingForEarlierSequences() {
+        ReorderBuffer<String> buffer = new ReorderBuffer<>(4);
+        buffer.begin();
+        buffer.begin();
+        IOException cause = new IOException("第 1 帧失败");
+        // 序号 0 仍在处理，序号 1 的失败立即交给写出线程
+        buffer.fail(cause);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> buffer.take(1, TimeUnit.SECONDS));
+        assertEquals(cause, e.getCause());
+
+        // 只保留第一个失败
+        buffer.failed(new IOException("读取失败"));
+        e = assertThrows(ExecutionException.class, () -> buffer.take(1, TimeUnit.SECONDS));
+        assertEquals(cause, e.getCause());
+    }
+
+    @Test
+    void finishEndsAfterLastSequence() throws Exception {
+        ReorderBuffer<String> buffer = new ReorderBuffer<>(4);
+        buffer.begin();
+        buffer.begin();
+        buffer.put(1, "b");
+        buffer.put(0, "a");
+        buffer.finish(2);
+        assertEquals("a", buffer.take(1, TimeUnit.SECONDS));
+        assertEquals("b", buffer.take(1, TimeUnit.SECONDS));
+        assertNull(buffer.take(1, TimeUnit.SECONDS));
+
+        // 没有任何帧
+        ReorderBuffer<String> empty = new ReorderBuffer<>(4);
+        empty.finish(0);
+        assertNull(empty.take(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void finishWakesWaitingTake() throws Exception {
+        ReorderBuffer<String> buffer = new ReorderBuffer<>(4);
+        Thread reader = new Thread(() -> buffer.finish(0));
+        reader.start();
+        assertNull(buffer.take(5, TimeUnit.SECONDS));
+        reader.join();
+    }
+
+    @Test
+    void completedSequencesEndWithoutTake() throws Exception {
+        ReorderBuffer<String> buffer = new ReorderBuffer<>(2);
+        // 输出端自己排序时序号不经过环，在途数不受容量限制
+        for (int i = 0; i < 5; i++) {
+            buffer.begin();
+            buffer.complete();
+        }
+        buffer.finish(5);
+        assertNull(buffer.take(1, TimeUnit.SECONDS));
+        assertEquals(5, buffer.completed());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void awaitIdleWaitsForInFlightSequences() throws Exception {
+        ReorderBuffer<String> buffer = new ReorderBuffer<>(4);
+        buffer.begin();
+        buffer.begin();
+        assertFalse(buffer.awaitIdle(10, TimeUnit.MILLISECONDS));
+
+        buffer.put(0, "a");
+        assertFalse(buffer.awaitIdle(10, TimeUnit.MILLISECONDS));
+
+        CountDownLatch started = new CountDownLatch(1);
+        Thread worker = new Thread(() -> {
+            started.countDown();
+            buffer.fail(new IOException("失败"));
+        });
+        worker.start();
+        started.await();
+        // 失败的序号也算结束，已放入未取出的结果不算在途
+        assertTrue(buffer.awaitIdle(5, TimeUnit.SECONDS));
+        worker.join();
+    }
+
+    @Test
+    void putOutsideWindowIsRejected() throws Exception {
+        ReorderBuffer<String> buffer = new ReorderBuffer<>(2);
+        buffer.begin();
+        buffer.begin();
+        buffer.begin();
+        // 序号 2 与序号 0 在环中的位置相同，序号 0 还没取出时放入会覆盖它
+        assertThrows(IllegalStateException.class, () -> buffer.put(2, "c"));
+        buffer.put(0, "a");
+        // 同一序号放入两次
+        assertThrows(IllegalStateException.class, () -> buffer.put(0, "a"));
+        assertEquals("a", buffer.take(1, TimeUnit.SECONDS));
+        // 已经取出的序号
+        assertThrows(IllegalStateException.class, () -> buffer.put(0, "a"));
+        buffer.put(2, "c");
+        buffer.put(1, "b");
+        assertEquals("b", buffer.take(1, TimeUnit.SECONDS));
+        assertEquals("c", buffer.take(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new ReorderBuffer<>(0));
+    }
+}